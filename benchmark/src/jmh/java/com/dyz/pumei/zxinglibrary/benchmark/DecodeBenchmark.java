@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.benchmark;
+
+import com.dyz.pumei.zxinglibrary.camera.frames.SyntheticFrameRenderer;
+import com.dyz.pumei.zxinglibrary.engine.DecodeFormats;
+import com.dyz.pumei.zxinglibrary.engine.DecodeHints;
+import com.dyz.pumei.zxinglibrary.engine.ScanEngine;
+import com.dyz.pumei.zxinglibrary.engine.ScanResult;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes synthetic preview frames the way {@code DecodeHandler} does: crop the luminance plane to
+ * the framing rectangle, binarize it with {@link HybridBinarizer}, and run a
+ * {@link com.google.zxing.MultiFormatReader} set up with {@code DecodeThread}'s default formats.
+ *
+ * Throughput mode gives frames per millisecond, sample mode the latency distribution including
+ * p0.99, and the gc profiler configured in build.gradle the bytes allocated per frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+  // Several frames with different noise, so that the branch predictor can't learn a single frame
+  private static final int FRAMES = 4;
+
+  private static final Map<BarcodeFormat,String> CONTENTS = new EnumMap<>(BarcodeFormat.class);
+  static {
+    CONTENTS.put(BarcodeFormat.QR_CODE, "https://github.com/zxing/zxing/wiki/Scanning-From-Intents");
+    CONTENTS.put(BarcodeFormat.DATA_MATRIX, "DATAMATRIX-0123456789");
+    CONTENTS.put(BarcodeFormat.EAN_13, "5901234123457");
+    // All digits, so that it packs two to a symbol and keeps modules two pixels wide at 640x480
+    CONTENTS.put(BarcodeFormat.CODE_128, "0123456789012345");
+  }
+
+  @Param({"640x480", "1280x720", "1920x1080"})
+  public String resolution;
+
+  /**
+   * Where the decoder looks: "framing" is the framing rectangle CameraManager would pick, 5/8 of
+   * each dimension, and "full" the whole frame.
+   */
+  @Param({"framing", "full"})
+  public String crop;
+
+  /**
+   * Standard deviation of the noise added to each luminance value.
+   */
+  @Param({"0", "8", "24"})
+  public int noise;
+
+  /**
+   * "NONE" is a frame without a barcode, as most preview frames are, which every reader fails on.
+   */
+  @Param({"QR_CODE", "DATA_MATRIX", "EAN_13", "CODE_128", "NONE"})
+  public String format;
+
+  private ScanEngine engine;
+  private byte[][] frames;
+  private int dataWidth;
+  private int dataHeight;
+  private int left;
+  private int top;
+  private int width;
+  private int height;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    int separator = resolution.indexOf('x');
+    dataWidth = Integer.parseInt(resolution.substring(0, separator));
+    dataHeight = Integer.parseInt(resolution.substring(separator + 1));
+    if ("full".equals(crop)) {
+      width = dataWidth;
+      height = dataHeight;
+    } else {
+      width = Math.max(240, Math.min(5 * dataWidth / 8, 1200));
+      height = Math.max(240, Math.min(5 * dataHeight / 8, 675));
+    }
+    left = (dataWidth - width) / 2;
+    top = (dataHeight - height) / 2;
+
+    SyntheticFrameRenderer renderer = new SyntheticFrameRenderer(dataWidth, dataHeight, 0L);
+    if (!"NONE".equals(format)) {
+      BarcodeFormat barcodeFormat = BarcodeFormat.valueOf(format);
+      renderer.setBarcode(barcodeFormat, CONTENTS.get(barcodeFormat));
+      // About the size a user fills the framing rectangle with; 1D codes as wide as the rectangle
+      boolean square = barcodeFormat == BarcodeFormat.QR_CODE || barcodeFormat == BarcodeFormat.DATA_MATRIX;
+      renderer.setCodeSize(square ? 0.375f : 0.625f);
+    }
+    renderer.setNoise(noise);
+    frames = new byte[FRAMES][];
+    for (int i = 0; i < FRAMES; i++) {
+      frames[i] = renderer.newFrame();
+      renderer.render(frames[i]);
+    }
+    engine = new ScanEngine(DecodeHints.build(DecodeFormats.DEFAULT_FORMATS, null, null));
+  }
+
+  private byte[] nextFrame() {
+    byte[] frame = frames[next];
+    next = (next + 1) % FRAMES;
+    return frame;
+  }
+
+  /**
+   * The whole decode of one frame.
+   */
+  @Benchmark
+  public ScanResult decode() {
+    return engine.decode(nextFrame(), dataWidth, dataHeight, left, top, width, height);
+  }
+
+  /**
+   * Only the luminance source and binarization, to tell how much of {@link #decode()} is spent
+   * before any reader runs.
+   */
+  @Benchmark
+  public BitMatrix binarize() throws NotFoundException {
+    PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(
+        nextFrame(), dataWidth, dataHeight, left, top, width, height, false);
+    return new BinaryBitmap(new HybridBinarizer(source)).getBlackMatrix();
+  }
+
+}
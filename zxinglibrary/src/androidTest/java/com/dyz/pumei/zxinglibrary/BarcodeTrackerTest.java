@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import android.graphics.Rect;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.zxing.ResultPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BarcodeTracker}. An instrumentation test only because crops are {@link Rect}s.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class BarcodeTrackerTest {
+
+  private static final Rect FRAMING_RECT = new Rect(100, 100, 500, 400);
+  // Crop around a 20x20 region centred on (300, 250), at the smallest crop size
+  private static final Rect SMALL_CROP = new Rect(252, 202, 348, 298);
+
+  private BarcodeTracker tracker;
+  private Rect crop;
+
+  @Before
+  public void setUp() {
+    tracker = new BarcodeTracker();
+    crop = new Rect();
+  }
+
+  private void addSmallRegion() {
+    tracker.addPoint(290.0f, 240.0f);
+    tracker.addPoint(310.0f, 260.0f);
+  }
+
+  @Test
+  public void testNothingTracked() {
+    for (int i = 0; i < 3; i++) {
+      assertFalse(tracker.nextCrop(FRAMING_RECT, crop));
+      assertEquals(FRAMING_RECT, crop);
+    }
+    assertEquals(0L, tracker.getTrackedFrameCount());
+  }
+
+  @Test
+  public void testTrackedCrop() {
+    addSmallRegion();
+    assertTrue(tracker.nextCrop(FRAMING_RECT, crop));
+    assertEquals(SMALL_CROP, crop);
+    assertEquals(1L, tracker.getTrackedFrameCount());
+  }
+
+  @Test
+  public void testResultPoints() {
+    tracker.addPoints(new ResultPoint[] {new ResultPoint(10.0f, 10.0f), null, new ResultPoint(30.0f, 30.0f)},
+                      280, 230);
+    tracker.addPoints(null, 0, 0);
+    assertTrue(tracker.nextCrop(FRAMING_RECT, crop));
+    assertEquals(SMALL_CROP, crop);
+  }
+
+  @Test
+  public void testFullFramesAndLosingTrack() {
+    addSmallRegion();
+    // Frames 1 to 11 are tracked without new points, but for every eighth frame, which is decoded in
+    // full; tracking stops once more than ten frames in a row have no points
+    for (int frame = 1; frame <= 11; frame++) {
+      assertEquals("Frame " + frame, frame % 8 != 0, tracker.nextCrop(FRAMING_RECT, crop));
+    }
+    assertFalse(tracker.nextCrop(FRAMING_RECT, crop));
+    assertEquals(FRAMING_RECT, crop);
+    assertEquals(10L, tracker.getTrackedFrameCount());
+  }
+
+  @Test
+  public void testCropSizeIsSticky() {
+    addSmallRegion();
+    tracker.nextCrop(FRAMING_RECT, crop);
+    // A 60x60 region needs 124 pixels with padding, so the crop steps up to 128
+    tracker.addPoint(270.0f, 220.0f);
+    tracker.addPoint(330.0f, 280.0f);
+    assertTrue(tracker.nextCrop(FRAMING_RECT, crop));
+    assertEquals(128, crop.width());
+    assertEquals(128, crop.height());
+    for (int i = 0; i < 4; i++) {
+      // The region shrinks back, but not by enough to give up the bigger crop
+      addSmallRegion();
+      assertTrue(tracker.nextCrop(FRAMING_RECT, crop));
+      assertEquals(128, crop.width());
+      assertEquals(128, crop.height());
+      assertTrue(FRAMING_RECT.contains(crop));
+    }
+  }
+
+  @Test
+  public void testCropClampedToFramingRect() {
+    tracker.addPoint(105.0f, 105.0f);
+    assertTrue(tracker.nextCrop(FRAMING_RECT, crop));
+    assertEquals(new Rect(100, 100, 196, 196), crop);
+  }
+
+  @Test
+  public void testLargeRegionDecodedInFull() {
+    tracker.addPoint(110.0f, 110.0f);
+    tracker.addPoint(490.0f, 390.0f);
+    assertFalse(tracker.nextCrop(FRAMING_RECT, crop));
+    assertEquals(FRAMING_RECT, crop);
+  }
+
+  @Test
+  public void testReset() {
+    addSmallRegion();
+    tracker.reset();
+    assertFalse(tracker.nextCrop(FRAMING_RECT, crop));
+    addSmallRegion();
+    tracker.nextCrop(FRAMING_RECT, crop);
+    tracker.reset();
+    assertFalse(tracker.nextCrop(FRAMING_RECT, crop));
+    assertEquals(FRAMING_RECT, crop);
+  }
+
+}
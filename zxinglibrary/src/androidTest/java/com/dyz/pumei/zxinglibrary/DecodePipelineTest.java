@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.dyz.pumei.zxinglibrary.camera.ReplayFrameSource;
+import com.dyz.pumei.zxinglibrary.camera.SimulatedFrameSource;
+import com.dyz.pumei.zxinglibrary.camera.SyntheticFrameSource;
+import com.dyz.pumei.zxinglibrary.camera.frames.FrameRecording;
+import com.dyz.pumei.zxinglibrary.camera.frames.MappedFrameRecorder;
+import com.dyz.pumei.zxinglibrary.camera.frames.SyntheticFrameRenderer;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the whole decode pipeline, {@link DecodeThreadPool} and its workers included, on frames from
+ * a {@link SimulatedFrameSource} instead of the camera: frames drawn by a
+ * {@link SyntheticFrameRenderer}, and a {@link FrameRecording} played back.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class DecodePipelineTest {
+
+  private static final String CONTENTS = "https://github.com/zxing/zxing/wiki/Scanning-From-Intents";
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final int WORKERS = 2;
+  private static final long TIMEOUT_SECONDS = 30L;
+
+  private static final ResultPointCallback NO_POINTS = new ResultPointCallback() {
+    @Override
+    public void foundPossibleResultPoint(ResultPoint point) {
+    }
+  };
+
+  private Context context;
+  private HandlerThread resultThread;
+  private Handler resultHandler;
+  private BlockingQueue<DecodeResult> results;
+  private AtomicInteger failures;
+  private volatile DecodeThreadPool pool;
+  private SimulatedFrameSource frameSource;
+  private File recording;
+
+  @Before
+  public void setUp() {
+    context = InstrumentationRegistry.getTargetContext();
+    // Every scanning preference at its default, whatever an earlier run left behind
+    PreferenceManager.getDefaultSharedPreferences(context).edit().clear().commit();
+    results = new LinkedBlockingQueue<>();
+    failures = new AtomicInteger();
+    resultThread = new HandlerThread("DecodePipelineTest");
+    resultThread.start();
+    // Does what CaptureActivityHandler does with each outcome
+    resultHandler = new Handler(resultThread.getLooper()) {
+      @Override
+      public void handleMessage(Message message) {
+        if (message.what == R.id.decode_succeeded) {
+          results.add((DecodeResult) message.obj);
+        } else if (message.what == R.id.decode_failed) {
+          failures.incrementAndGet();
+          pool.requestDecode();
+        }
+      }
+    };
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (frameSource != null) {
+      frameSource.stopPreview();
+    }
+    if (pool != null) {
+      pool.quitSynchronously();
+    }
+    resultThread.quit();
+    if (frameSource instanceof ReplayFrameSource) {
+      ((ReplayFrameSource) frameSource).close();
+    }
+    if (recording != null) {
+      recording.delete();
+    }
+  }
+
+  @Test
+  public void testStreamedSyntheticFrames() throws InterruptedException {
+    SyntheticFrameRenderer renderer = new SyntheticFrameRenderer(WIDTH, HEIGHT, 1L);
+    renderer.setBarcode(BarcodeFormat.QR_CODE, CONTENTS);
+    renderer.setNoise(6.0f);
+    SyntheticFrameSource source = new SyntheticFrameSource(renderer, 0.0f, 0L);
+    start(source, true);
+
+    assertFound(BarcodeFormat.QR_CODE);
+    assertTrue(source.getDeliveredFrameCount() > 0);
+  }
+
+  @Test
+  public void testRequestedSyntheticFrames() throws InterruptedException {
+    SyntheticFrameRenderer renderer = new SyntheticFrameRenderer(WIDTH, HEIGHT, 2L);
+    renderer.setNoise(6.0f);
+    // Played like a camera, dropping frames that come while every worker is busy
+    SyntheticFrameSource source = new SyntheticFrameSource(renderer, 30.0f, 0L);
+    start(source, false);
+
+    // Nothing to find yet, so workers keep failing and asking for more
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    while (failures.get() < 2 * WORKERS && System.nanoTime() < deadline) {
+      Thread.sleep(10L);
+    }
+    assertTrue(failures.get() >= 2 * WORKERS);
+    assertNull(results.poll());
+
+    renderer.setBarcode(BarcodeFormat.CODE_128, "0123456789012345");
+    renderer.setCodeSize(0.625f);
+    Result result = assertFound(BarcodeFormat.CODE_128);
+    assertEquals("0123456789012345", result.getText());
+  }
+
+  @Test
+  public void testReplayedRecording() throws IOException, InterruptedException {
+    recording = new File(context.getCacheDir(), "DecodePipelineTest.zxfr");
+    SyntheticFrameRenderer renderer = new SyntheticFrameRenderer(WIDTH, HEIGHT, 3L);
+    renderer.setNoise(6.0f);
+    byte[] frame = renderer.newFrame();
+    long frameNanos = TimeUnit.MILLISECONDS.toNanos(33L);
+    int frames = 20;
+    try (MappedFrameRecorder recorder = new MappedFrameRecorder(recording, 32L * 1024 * 1024)) {
+      for (int i = 0; i < frames; i++) {
+        if (i == frames / 2) {
+          // The barcode comes into view half way through
+          renderer.setBarcode(BarcodeFormat.QR_CODE, CONTENTS);
+        }
+        renderer.render(frame);
+        assertTrue(recorder.record(frame, WIDTH, HEIGHT, i * frameNanos, null,
+            FrameRecording.OUTCOME_NOT_FOUND));
+      }
+    }
+    // At full speed, so no frame is dropped
+    ReplayFrameSource source = ReplayFrameSource.open(recording, false);
+    start(source, true);
+
+    assertFound(BarcodeFormat.QR_CODE);
+    assertTrue(source.awaitEnd(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(0L, source.getDroppedFrameCount());
+    assertTrue(source.getDeliveredFrameCount() > frames / 2);
+  }
+
+  /**
+   * Starts decoding the way {@link CaptureActivityHandler} does.
+   */
+  private void start(SimulatedFrameSource source, boolean streaming) {
+    frameSource = source;
+    pool = new DecodeThreadPool(context, resultHandler, null, null, null, null, NO_POINTS, WORKERS,
+        ScheduledFormatReader.DEFAULT_RARE_FORMAT_INTERVAL, DecodeBudget.DEFAULT_FRAME_BUDGET_MS,
+        null, source);
+    pool.start();
+    source.setPreviewBufferCount(pool.size() + 2);
+    source.startPreview();
+    if (streaming) {
+      pool.startStreaming();
+    } else {
+      pool.requestDecode();
+    }
+  }
+
+  private Result assertFound(BarcodeFormat format) throws InterruptedException {
+    DecodeResult decodeResult = results.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertNotNull("Nothing found", decodeResult);
+    assertEquals(1, decodeResult.getResults().length);
+    Result result = decodeResult.getResults()[0];
+    assertEquals(format, result.getBarcodeFormat());
+    if (format == BarcodeFormat.QR_CODE) {
+      assertEquals(CONTENTS, result.getText());
+    }
+    assertNotNull(decodeResult.getThumbnail());
+    return result;
+  }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link CameraManager} against a {@link FakeCameraBackend}: frames requested one at a time,
+ * recycled buffers, streaming through a {@link FrameMailbox}, and giving frames back.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class CameraManagerTest {
+
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final int ROW_STRIDE = 80;
+  private static final int FRAME = 1;
+  private static final long TIMEOUT_MS = 2000L;
+
+  private FakeCameraBackend backend;
+  private CameraManager cameraManager;
+  private HandlerThread receiverThread;
+  private Handler receiver;
+  private BlockingQueue<Message> frames;
+
+  @Before
+  public void setUp() throws IOException {
+    backend = new FakeCameraBackend(WIDTH, HEIGHT);
+    cameraManager = new CameraManager(backend);
+    cameraManager.openDriver(null);
+    frames = new LinkedBlockingQueue<>();
+    receiverThread = new HandlerThread("CameraManagerTest");
+    receiverThread.start();
+    receiver = new Handler(receiverThread.getLooper()) {
+      @Override
+      public void handleMessage(Message message) {
+        // The original is recycled once this returns
+        frames.add(Message.obtain(message));
+      }
+    };
+  }
+
+  @After
+  public void tearDown() {
+    cameraManager.stopPreview();
+    cameraManager.closeDriver();
+    receiverThread.quit();
+  }
+
+  @Test
+  public void testGeometry() {
+    assertTrue(cameraManager.isOpen());
+    CameraGeometry geometry = cameraManager.getGeometry();
+    assertNotNull(geometry);
+    Rect framingRect = cameraManager.getFramingRectInPreview();
+    assertNotNull(framingRect);
+    assertTrue(new Rect(0, 0, WIDTH, HEIGHT).contains(framingRect));
+    cameraManager.closeDriver();
+    assertFalse(cameraManager.isOpen());
+    assertNull(cameraManager.getGeometry());
+    assertNull(cameraManager.getFramingRectInPreview());
+  }
+
+  @Test
+  public void testOpenFailure() {
+    cameraManager.closeDriver();
+    backend.setOpenFailure(new IOException("no camera"));
+    try {
+      cameraManager.openDriver(null);
+      fail("Opened anyway");
+    } catch (IOException ioe) {
+      // good
+    }
+    assertFalse(cameraManager.isOpen());
+  }
+
+  @Test
+  public void testRequestedFrames() throws InterruptedException {
+    cameraManager.startPreview();
+    assertFalse(backend.isRecyclingFrames());
+    // Nobody asked
+    assertFalse(backend.pushFrame(frame(1, ROW_STRIDE), ROW_STRIDE));
+
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    byte[] sent = frame(2, ROW_STRIDE);
+    assertTrue(backend.pushFrame(sent, ROW_STRIDE));
+    Message message = nextFrame();
+    assertEquals(FRAME, message.what);
+    assertEquals(ROW_STRIDE, message.arg1);
+    assertEquals(HEIGHT, message.arg2);
+    byte[] received = (byte[]) message.obj;
+    assertArrayEquals(sent, received);
+    assertNotSame(sent, received);
+    // One frame per request
+    assertFalse(backend.pushFrame(frame(3, ROW_STRIDE), ROW_STRIDE));
+
+    // Handing back a frame that isn't from a pool does nothing
+    cameraManager.releasePreviewBuffer(received);
+
+    // Two requests at once get a frame each, in turn
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    assertTrue(backend.pushFrame(frame(4, ROW_STRIDE), ROW_STRIDE));
+    assertTrue(backend.pushFrame(frame(5, ROW_STRIDE), ROW_STRIDE));
+    assertArrayEquals(frame(4, ROW_STRIDE), (byte[]) nextFrame().obj);
+    assertArrayEquals(frame(5, ROW_STRIDE), (byte[]) nextFrame().obj);
+    assertFalse(backend.pushFrame(frame(6, ROW_STRIDE), ROW_STRIDE));
+    assertEquals(3, backend.getDeliveredFrameCount());
+  }
+
+  @Test
+  public void testRecycledFrames() throws InterruptedException {
+    cameraManager.setPreviewBufferCount(2);
+    cameraManager.startPreview();
+    assertTrue(backend.isRecyclingFrames());
+    // Nobody asked, so the buffer goes straight back to be filled again
+    assertTrue(backend.pushFrame(frame(1, WIDTH)));
+    assertNull(frames.poll(100L, TimeUnit.MILLISECONDS));
+
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    assertTrue(backend.pushFrame(frame(2, WIDTH)));
+    byte[] first = (byte[]) nextFrame().obj;
+    assertArrayEquals(frame(2, WIDTH), first);
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    assertTrue(backend.pushFrame(frame(3, WIDTH)));
+    byte[] second = (byte[]) nextFrame().obj;
+    assertNotSame(first, second);
+
+    // Both buffers are taken
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    assertFalse(backend.pushFrame(frame(4, WIDTH)));
+    // A buffer that isn't one of the pool's is ignored, even one of the same size
+    cameraManager.releasePreviewBuffer(new byte[first.length]);
+    assertFalse(backend.pushFrame(frame(4, WIDTH)));
+
+    cameraManager.releasePreviewBuffer(first);
+    assertTrue(backend.pushFrame(frame(5, WIDTH)));
+    byte[] third = (byte[]) nextFrame().obj;
+    assertSame(first, third);
+    assertArrayEquals(frame(5, WIDTH), third);
+  }
+
+  @Test
+  public void testStreaming() throws InterruptedException {
+    cameraManager.setPreviewBufferCount(3);
+    cameraManager.startPreview();
+    FrameMailbox mailbox = new FrameMailbox(FRAME);
+    cameraManager.startFrameStream(mailbox);
+    assertTrue(mailbox.isOpen());
+
+    assertTrue(backend.pushFrame(frame(1, WIDTH)));
+    assertTrue(backend.pushFrame(frame(2, WIDTH)));
+    assertEquals(2, mailbox.getPublishedFrameCount());
+    assertEquals(1, mailbox.getOverwrittenFrameCount());
+    FrameMailbox.Frame taken = mailbox.take();
+    assertEquals(WIDTH, taken.getWidth());
+    assertEquals(HEIGHT, taken.getHeight());
+    byte[] newest = taken.getData();
+    assertArrayEquals(frame(2, WIDTH), newest);
+    assertNull(mailbox.take());
+
+    // Replaced frames go back to be filled again, so frames keep coming while one is held
+    for (int i = 3; i < 10; i++) {
+      assertTrue(backend.pushFrame(frame(i, WIDTH)));
+    }
+    assertEquals(9, mailbox.getPublishedFrameCount());
+    assertEquals(7, mailbox.getOverwrittenFrameCount());
+    byte[] latest = mailbox.take().getData();
+    assertArrayEquals(frame(9, WIDTH), latest);
+    cameraManager.releasePreviewBuffer(latest);
+
+    // A waiting decoder is woken by the next frame
+    assertTrue(mailbox.await(receiver));
+    assertTrue(backend.pushFrame(frame(10, WIDTH)));
+    assertEquals(FRAME, nextFrame().what);
+    latest = mailbox.take().getData();
+    assertArrayEquals(frame(10, WIDTH), latest);
+    cameraManager.releasePreviewBuffer(latest);
+    assertTrue(backend.pushFrame(frame(11, WIDTH)));
+
+    cameraManager.releasePreviewBuffer(newest);
+    cameraManager.stopFrameStream();
+    assertFalse(mailbox.isOpen());
+
+    // Every buffer is back, including the frame taken and the one left in the mailbox
+    for (int i = 0; i < 3; i++) {
+      cameraManager.requestPreviewFrame(receiver, FRAME);
+      assertTrue(backend.pushFrame(frame(12 + i, WIDTH)));
+      nextFrame();
+    }
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    assertFalse(backend.pushFrame(frame(15, WIDTH)));
+  }
+
+  @Test
+  public void testStopPreview() throws InterruptedException {
+    cameraManager.setPreviewBufferCount(1);
+    cameraManager.startPreview();
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    assertTrue(backend.pushFrame(frame(1, WIDTH)));
+    byte[] held = (byte[]) nextFrame().obj;
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+
+    cameraManager.stopPreview();
+    assertFalse(backend.isPreviewing());
+    assertFalse(backend.pushFrame(frame(2, WIDTH)));
+    // Too late to give it back; the pool is gone
+    cameraManager.releasePreviewBuffer(held);
+
+    // The request made before stopping is forgotten, and the new pool has its own buffer
+    cameraManager.startPreview();
+    assertTrue(backend.pushFrame(frame(3, WIDTH)));
+    assertNull(frames.poll(100L, TimeUnit.MILLISECONDS));
+    cameraManager.requestPreviewFrame(receiver, FRAME);
+    assertTrue(backend.pushFrame(frame(4, WIDTH)));
+    byte[] fresh = (byte[]) nextFrame().obj;
+    assertNotSame(held, fresh);
+    assertArrayEquals(frame(4, WIDTH), fresh);
+  }
+
+  private Message nextFrame() throws InterruptedException {
+    Message message = frames.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertNotNull("No frame delivered", message);
+    return message;
+  }
+
+  /**
+   * @return a luminance plane whose every byte depends on {@code seed} and its position
+   */
+  private static byte[] frame(int seed, int rowStride) {
+    byte[] frame = new byte[rowStride * HEIGHT];
+    for (int i = 0; i < frame.length; i++) {
+      frame[i] = (byte) (seed * 31 + i);
+    }
+    return frame;
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import android.graphics.Bitmap;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A greyscale, half-size copy of the part of a preview frame in which a barcode was found. Copying
+ * the luminance bytes is all that happens on the decode thread; a {@link Bitmap} is only built if
+ * something actually wants to show the image, via {@link #toBitmap()}.
+ */
+public final class BarcodeThumbnail {
+
+  private static final int SCALE_FACTOR = 2;
+
+  private final byte[] luminances;
+  private final int width;
+  private final int height;
+  private final float scaleFactor;
+
+  private BarcodeThumbnail(byte[] luminances, int width, int height, float scaleFactor) {
+    this.luminances = luminances;
+    this.width = width;
+    this.height = height;
+    this.scaleFactor = scaleFactor;
+  }
+
+  /**
+   * Copies every other pixel of every other row out of {@code source}, so that the frame it reads
+   * from can be reused as soon as this returns.
+   */
+  static BarcodeThumbnail copyOf(LuminanceSource source) {
+    int width = source.getWidth() / SCALE_FACTOR;
+    int height = source.getHeight() / SCALE_FACTOR;
+    byte[] luminances = new byte[width * height];
+    byte[] row = null;
+    for (int y = 0; y < height; y++) {
+      row = source.getRow(y * SCALE_FACTOR, row);
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        luminances[offset + x] = row[x * SCALE_FACTOR];
+      }
+    }
+    return new BarcodeThumbnail(luminances, width, height, (float) width / source.getWidth());
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return amount by which the thumbnail was scaled from the frame the result points refer to
+   */
+  public float getScaleFactor() {
+    return scaleFactor;
+  }
+
+  /**
+   * @return a new mutable greyscale bitmap of the thumbnail, which may be drawn on
+   */
+  public Bitmap toBitmap() {
+    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    int[] pixels = new int[width];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        int grey = luminances[offset + x] & 0xff;
+        pixels[x] = 0xFF000000 | (grey * 0x00010101);
+      }
+      bitmap.setPixels(pixels, 0, width, 0, y, width, 1);
+    }
+    return bitmap;
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import android.graphics.Rect;
+
+import com.google.zxing.ResultPoint;
+
+/**
+ * Follows where barcodes seem to be from one frame to the next, using the points the readers report
+ * while decoding (finder patterns, guard patterns, ...) and the points of results, all in preview
+ * frame coordinates. While something is being tracked, decoding is limited to a padded crop around
+ * it rather than the whole framing rectangle, which is much quicker. Every few frames the whole
+ * framing rectangle is decoded anyway, and tracking is dropped when no points turn up for a while.
+ * Safe to share between decode threads.
+ */
+final class BarcodeTracker {
+
+  private static final int MIN_PADDING = 32;
+  private static final int MIN_CROP_SIZE = 96;
+  private static final int CROP_SIZE_STEP = 32;
+  // How far below the current crop size the needed size must fall before the crop shrinks
+  private static final int CROP_SIZE_HYSTERESIS = 2 * CROP_SIZE_STEP;
+  private static final int MAX_MISSED_FRAMES = 10;
+  private static final int FULL_FRAME_INTERVAL = 8;
+  private static final int MAX_CROP_AREA_PERCENT = 75;
+
+  private boolean hasNewPoints;
+  private int newLeft;
+  private int newTop;
+  private int newRight;
+  private int newBottom;
+  private boolean tracking;
+  private int regionLeft;
+  private int regionTop;
+  private int regionRight;
+  private int regionBottom;
+  private int cropWidth;
+  private int cropHeight;
+  private int missedFrames;
+  private int frames;
+  private long trackedFrames;
+
+  /**
+   * @param x horizontal position of a possible barcode point in the preview frame
+   * @param y vertical position of a possible barcode point in the preview frame
+   */
+  synchronized void addPoint(float x, float y) {
+    int px = (int) x;
+    int py = (int) y;
+    if (hasNewPoints) {
+      newLeft = Math.min(newLeft, px);
+      newTop = Math.min(newTop, py);
+      newRight = Math.max(newRight, px);
+      newBottom = Math.max(newBottom, py);
+    } else {
+      newLeft = px;
+      newTop = py;
+      newRight = px;
+      newBottom = py;
+      hasNewPoints = true;
+    }
+  }
+
+  /**
+   * @param points points of a result, relative to the crop it was decoded from
+   * @param cropLeft left edge of that crop in the preview frame
+   * @param cropTop top edge of that crop in the preview frame
+   */
+  synchronized void addPoints(ResultPoint[] points, int cropLeft, int cropTop) {
+    if (points != null) {
+      for (ResultPoint point : points) {
+        if (point != null) {
+          addPoint(cropLeft + point.getX(), cropTop + point.getY());
+        }
+      }
+    }
+  }
+
+  /**
+   * Decides what part of the next frame to decode, folding in the points found since last time.
+   *
+   * @param framingRect the framing rectangle in preview frame coordinates
+   * @param crop set to the part of the frame to decode
+   * @return true if {@code crop} is a tracked region smaller than the framing rectangle
+   */
+  synchronized boolean nextCrop(Rect framingRect, Rect crop) {
+    frames++;
+    if (hasNewPoints) {
+      if (tracking) {
+        // Always keep the new points, and let the old region shrink halfway towards them
+        regionLeft = Math.min(newLeft, (regionLeft + newLeft) / 2);
+        regionTop = Math.min(newTop, (regionTop + newTop) / 2);
+        regionRight = Math.max(newRight, (regionRight + newRight) / 2);
+        regionBottom = Math.max(newBottom, (regionBottom + newBottom) / 2);
+      } else {
+        regionLeft = newLeft;
+        regionTop = newTop;
+        regionRight = newRight;
+        regionBottom = newBottom;
+        tracking = true;
+      }
+      hasNewPoints = false;
+      missedFrames = 0;
+    } else if (tracking && ++missedFrames > MAX_MISSED_FRAMES) {
+      tracking = false;
+      cropWidth = 0;
+      cropHeight = 0;
+    }
+
+    if (!tracking || frames % FULL_FRAME_INTERVAL == 0) {
+      crop.set(framingRect);
+      return false;
+    }
+
+    int regionWidth = regionRight - regionLeft;
+    int regionHeight = regionBottom - regionTop;
+    int padding = Math.max(MIN_PADDING, Math.max(regionWidth, regionHeight) / 2);
+    // The size only changes in steps, and only shrinks once the barcode needs a good deal less, so
+    // that the luminance source and binarizer built for a crop size keep being reused
+    cropWidth = stickySize(Math.max(MIN_CROP_SIZE, regionWidth + 2 * padding), cropWidth);
+    cropHeight = stickySize(Math.max(MIN_CROP_SIZE, regionHeight + 2 * padding), cropHeight);
+    int framingWidth = framingRect.width();
+    int framingHeight = framingRect.height();
+    int width = Math.min(cropWidth, framingWidth);
+    int height = Math.min(cropHeight, framingHeight);
+    if (width * height * 100L > (long) framingWidth * framingHeight * MAX_CROP_AREA_PERCENT) {
+      // Not worth it
+      crop.set(framingRect);
+      return false;
+    }
+
+    int left = cap((regionLeft + regionRight - width) / 2, framingRect.left, framingRect.right - width);
+    int top = cap((regionTop + regionBottom - height) / 2, framingRect.top, framingRect.bottom - height);
+    crop.set(left, top, left + width, top + height);
+    trackedFrames++;
+    return true;
+  }
+
+  /**
+   * Forgets whatever was being tracked, so that the next frame is decoded in full.
+   */
+  synchronized void reset() {
+    hasNewPoints = false;
+    tracking = false;
+    missedFrames = 0;
+    cropWidth = 0;
+    cropHeight = 0;
+  }
+
+  /**
+   * @return number of frames decoded from a tracked crop rather than the whole framing rectangle
+   */
+  synchronized long getTrackedFrameCount() {
+    return trackedFrames;
+  }
+
+  /**
+   * @param needed smallest size that covers the region and its padding
+   * @param current size of the last tracked crop, or 0
+   * @return the size to use: {@code current} if it is big enough and not much too big, or else
+   *  {@code needed} rounded up to a step
+   */
+  private static int stickySize(int needed, int current) {
+    if (current > 0 && needed <= current && needed > current - CROP_SIZE_HYSTERESIS) {
+      return current;
+    }
+    return roundUp(needed);
+  }
+
+  private static int roundUp(int size) {
+    return (size + CROP_SIZE_STEP - 1) / CROP_SIZE_STEP * CROP_SIZE_STEP;
+  }
+
+  private static int cap(int value, int min, int max) {
+    return value < min ? min : value > max ? max : value;
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.Result;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the barcodes found on consecutive frames into one batch, when scanning for several
+ * barcodes at once. A sheet of labels seldom decodes completely in a single frame, so once the
+ * first barcode is found, later frames keep adding to the batch, each barcode once by format and
+ * text. The batch is complete when a few frames in a row add nothing new, or after a short while
+ * regardless. Shared by all decode threads.
+ */
+final class BatchCollector {
+
+  private static final int SETTLE_FRAMES = 3;
+  private static final long MAX_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(1000L);
+
+  private final Map<String,Result> batch;
+  private long batchStart;
+  private int quietFrames;
+  private long batchCount;
+
+  BatchCollector() {
+    batch = new LinkedHashMap<>();
+  }
+
+  /**
+   * Called once for every frame decoded, including frames that were skipped or had no barcode.
+   *
+   * @param found barcodes found on the frame
+   * @return the complete batch, in the order the barcodes were first found, or null if it isn't
+   *  complete yet
+   */
+  synchronized Result[] offer(Result[] found) {
+    boolean added = false;
+    for (Result result : found) {
+      String key = MultiBarcodeReader.keyOf(result);
+      if (!batch.containsKey(key)) {
+        if (batch.isEmpty()) {
+          batchStart = System.nanoTime();
+        }
+        batch.put(key, result);
+        added = true;
+      }
+    }
+    if (batch.isEmpty()) {
+      return null;
+    }
+    quietFrames = added ? 0 : quietFrames + 1;
+    if (quietFrames < SETTLE_FRAMES && System.nanoTime() - batchStart < MAX_BATCH_NANOS) {
+      return null;
+    }
+    Result[] results = batch.values().toArray(new Result[batch.size()]);
+    reset();
+    batchCount++;
+    return results;
+  }
+
+  /**
+   * Forgets a batch that has been started but not delivered.
+   */
+  synchronized void reset() {
+    batch.clear();
+    quietFrames = 0;
+  }
+
+  synchronized long getBatchCount() {
+    return batchCount;
+  }
+
+}
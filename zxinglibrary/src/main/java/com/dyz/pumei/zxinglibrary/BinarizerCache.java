@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Keeps the {@link RecyclableBinarizer}s for the last few luminance sources a reader has seen, so
+ * that switching between the whole framing rectangle, a tracked crop and their half-resolution
+ * copies doesn't mean new binarizer arrays on every switch. Not thread-safe.
+ */
+final class BinarizerCache {
+
+  private static final int CAPACITY = 4;
+
+  // Most recently used first
+  private final RecyclableBinarizer[] binarizers = new RecyclableBinarizer[CAPACITY];
+
+  /**
+   * @return a binarizer for {@code source}, reset for the frame it currently holds
+   */
+  RecyclableBinarizer get(LuminanceSource source) {
+    int found = CAPACITY - 1;
+    for (int i = 0; i < CAPACITY; i++) {
+      if (binarizers[i] != null && binarizers[i].getLuminanceSource() == source) {
+        found = i;
+        break;
+      }
+    }
+    RecyclableBinarizer binarizer = binarizers[found];
+    if (binarizer == null || binarizer.getLuminanceSource() != source) {
+      // Not cached; evict the least recently used
+      binarizer = new RecyclableBinarizer(source);
+    }
+    System.arraycopy(binarizers, 0, binarizers, 1, found);
+    binarizers[0] = binarizer;
+    binarizer.reset();
+    return binarizer;
+  }
+
+}
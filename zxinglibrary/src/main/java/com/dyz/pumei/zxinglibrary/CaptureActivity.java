@@ -47,7 +47,9 @@ import com.google.zxing.ResultPoint;
 import com.google.zxing.integration.android.IntentIntegrator;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -83,10 +85,19 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   private Collection<BarcodeFormat> decodeFormats;
   private Map<DecodeHintType,?> decodeHints;
   private String characterSet;
+  private int decodeThreadCount;
+  private int rareFormatInterval;
+  private int frameBudgetMs;
+  private RecentCodeCache recentCodes;
+  private final List<Result> bulkResults = new ArrayList<>();
   private HistoryManager historyManager;
   private BeepManager beepManager;
   private AmbientLightManager ambientLightManager;
 
+  HistoryManager getHistoryManager() {
+    return historyManager;
+  }
+
   ViewfinderView getViewfinderView() {
     return viewfinderView;
   }
@@ -190,6 +201,11 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     scanFromWebPageManager = null;
     decodeFormats = null;
     characterSet = null;
+    decodeThreadCount = DecodeThreadPool.getDefaultSize();
+    rareFormatInterval = ScheduledFormatReader.DEFAULT_RARE_FORMAT_INTERVAL;
+    frameBudgetMs = DecodeBudget.DEFAULT_FRAME_BUDGET_MS;
+    boolean bulkMode = false;
+    long bulkDedupWindowMs = BULK_MODE_SCAN_DELAY_MS;
 
     if (intent != null) {
 
@@ -218,6 +234,21 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
           }
         }
         
+        int threadCount = intent.getIntExtra(Intents.Scan.DECODE_THREAD_COUNT, 0);
+        if (threadCount > 0) {
+          decodeThreadCount = threadCount;
+        }
+
+        int formatInterval = intent.getIntExtra(Intents.Scan.RARE_FORMAT_INTERVAL, 0);
+        if (formatInterval > 0) {
+          rareFormatInterval = formatInterval;
+        }
+
+        frameBudgetMs = intent.getIntExtra(Intents.Scan.FRAME_BUDGET_MS, frameBudgetMs);
+
+        bulkMode = intent.getBooleanExtra(Intents.Scan.BULK_MODE, false);
+        bulkDedupWindowMs = intent.getLongExtra(Intents.Scan.BULK_DEDUP_WINDOW_MS, bulkDedupWindowMs);
+
         String customPromptMessage = intent.getStringExtra(Intents.Scan.PROMPT_MESSAGE);
         if (customPromptMessage != null) {
           statusView.setText(customPromptMessage);
@@ -228,6 +259,11 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
 
     }
 
+    if (source == IntentSource.NONE) {
+      bulkMode = prefs.getBoolean(PreferencesActivity.KEY_BULK_MODE, false);
+    }
+    recentCodes = bulkMode ? new RecentCodeCache(bulkDedupWindowMs) : null;
+
     SurfaceView surfaceView = (SurfaceView) findViewById(R.id.preview_view);
     SurfaceHolder surfaceHolder = surfaceView.getHolder();
     if (hasSurface) {
@@ -289,11 +325,17 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     switch (keyCode) {
       case KeyEvent.KEYCODE_BACK:
         if (source == IntentSource.NATIVE_APP_INTENT) {
-          setResult(RESULT_CANCELED);
+          if (bulkResults.isEmpty()) {
+            setResult(RESULT_CANCELED);
+          } else {
+            // Bulk mode: everything scanned so far goes back together
+            setResult(RESULT_OK, buildBatchIntent(bulkResults.toArray(new Result[bulkResults.size()])));
+          }
           finish();
           return true;
         }
-        if ((source == IntentSource.NONE || source == IntentSource.ZXING_LINK) && lastResult != null) {
+        if ((source == IntentSource.NONE || source == IntentSource.ZXING_LINK) && lastResult != null &&
+            recentCodes == null) {
           restartPreviewAfterDelay(0L);
           return true;
         }
@@ -351,7 +393,8 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         savedResultToShow = result;
       }
       if (savedResultToShow != null) {
-        Message message = Message.obtain(handler, R.id.decode_succeeded, savedResultToShow);
+        Message message = Message.obtain(handler, R.id.decode_succeeded,
+            new DecodeResult(savedResultToShow, null));
         handler.sendMessage(message);
       }
       savedResultToShow = null;
@@ -383,49 +426,144 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
    * A valid barcode has been found, so give an indication of success and show the results.
    *
    * @param rawResult The contents of the barcode.
-   * @param scaleFactor amount by which thumbnail was scaled
-   * @param barcode   A greyscale bitmap of the camera data which was decoded.
+   * @param thumbnail An image of the camera data which was decoded. Only turned into a bitmap if
+   *                  it is going to be shown.
    */
-  public void handleDecode(Result rawResult, Bitmap barcode, float scaleFactor) {
+  public void handleDecode(Result rawResult, BarcodeThumbnail thumbnail) {
     lastResult = rawResult;
     ResultHandler resultHandler = ResultHandlerFactory.makeResultHandler(this, rawResult);
 
-    boolean fromLiveScan = barcode != null;
+    boolean fromLiveScan = thumbnail != null;
     if (fromLiveScan) {
       historyManager.addHistoryItem(rawResult, resultHandler);
-      // Then not from history, so beep/vibrate and we have an image to draw on
+      // Then not from history, so beep/vibrate
       beepManager.playBeepSoundAndVibrate();
-      drawResultPoints(barcode, scaleFactor, rawResult);
+      if (recentCodes != null) {
+        handleBulkDecode(rawResult, resultHandler);
+        return;
+      }
     }
 
     switch (source) {
       case NATIVE_APP_INTENT:
       case PRODUCT_SEARCH_LINK:
-        handleDecodeExternally(rawResult, resultHandler, barcode);
+        handleDecodeExternally(rawResult, resultHandler, thumbnail);
         break;
       case ZXING_LINK:
         if (scanFromWebPageManager == null || !scanFromWebPageManager.isScanFromWebPage()) {
-          handleDecodeInternally(rawResult, resultHandler, barcode);
+          handleDecodeInternally(rawResult, resultHandler, thumbnail);
         } else {
-          handleDecodeExternally(rawResult, resultHandler, barcode);
+          handleDecodeExternally(rawResult, resultHandler, thumbnail);
         }
         break;
       case NONE:
-//        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-//        if (fromLiveScan && prefs.getBoolean(PreferencesActivity.KEY_BULK_MODE, false)) {
-//          Toast.makeText(getApplicationContext(),
-//                         getResources().getString(R.string.msg_bulk_mode_scanned) + " (" + rawResult.getText() + ')',
-//                         Toast.LENGTH_SHORT).show();
-//          maybeSetClipboard(resultHandler);
-//          // Wait a moment or else it will scan the same barcode continuously about 3 times
-//          restartPreviewAfterDelay(BULK_MODE_SCAN_DELAY_MS);
-//        } else {
-          handleDecodeInternally(rawResult, resultHandler, barcode);
-//        }
+        handleDecodeInternally(rawResult, resultHandler, thumbnail);
         break;
     }
   }
 
+  // Bulk mode: scanning carries on, so just acknowledge the barcode in the status line. Toasts would
+  // queue up faster than they can be shown.
+  private void handleBulkDecode(Result rawResult, ResultHandler resultHandler) {
+    if (source == IntentSource.NATIVE_APP_INTENT) {
+      bulkResults.add(rawResult);
+      statusView.setText(getString(R.string.msg_batch_scanned, bulkResults.size()));
+    } else {
+      statusView.setText(getString(R.string.msg_bulk_mode_scanned) + " (" + rawResult.getText() + ')');
+      maybeSetClipboard(resultHandler);
+    }
+  }
+
+  /**
+   * A batch of barcodes was found at once, when scanning for several barcodes. A single barcode is
+   * handled as usual; otherwise all of them go to history, and are shown or returned together.
+   *
+   * @param rawResults The contents of the barcodes, in the order they were found.
+   * @param thumbnail  A greyscale thumbnail of the frame the batch completed on.
+   */
+  public void handleDecode(Result[] rawResults, BarcodeThumbnail thumbnail) {
+    if (recentCodes != null && thumbnail != null) {
+      // Bulk mode: each barcode joins the running batch on its own
+      for (Result rawResult : rawResults) {
+        handleDecode(rawResult, thumbnail);
+      }
+      return;
+    }
+    boolean external = source == IntentSource.NATIVE_APP_INTENT;
+    boolean internal = source == IntentSource.NONE ||
+        (source == IntentSource.ZXING_LINK &&
+         (scanFromWebPageManager == null || !scanFromWebPageManager.isScanFromWebPage()));
+    if (rawResults.length == 1 || !(external || internal)) {
+      // Product search and web page replies only have room for one result
+      handleDecode(rawResults[0], thumbnail);
+      return;
+    }
+    lastResult = rawResults[0];
+
+    boolean fromLiveScan = thumbnail != null;
+    StringBuilder displayContents = new StringBuilder();
+    boolean contentsSecure = false;
+    for (Result rawResult : rawResults) {
+      ResultHandler resultHandler = ResultHandlerFactory.makeResultHandler(this, rawResult);
+      if (fromLiveScan) {
+        historyManager.addHistoryItem(rawResult, resultHandler);
+      }
+      if (displayContents.length() > 0) {
+        displayContents.append('\n');
+      }
+      displayContents.append(resultHandler.getDisplayContents());
+      contentsSecure |= resultHandler.areContentsSecure();
+    }
+    if (fromLiveScan) {
+      beepManager.playBeepSoundAndVibrate();
+    }
+    if (copyToClipboard && !contentsSecure) {
+      ClipboardInterface.setText(displayContents, this);
+    }
+
+    if (external) {
+      handleBatchExternally(rawResults, thumbnail);
+    } else {
+      showResultInternally(displayContents, Toast.LENGTH_LONG);
+    }
+  }
+
+  // Briefly show the barcodes, then return all of them to the app that asked for the scan.
+  private void handleBatchExternally(Result[] rawResults, BarcodeThumbnail thumbnail) {
+    if (thumbnail != null) {
+      Bitmap barcode = thumbnail.toBitmap();
+      for (Result rawResult : rawResults) {
+        drawResultPoints(barcode, thumbnail.getScaleFactor(), rawResult);
+      }
+      viewfinderView.drawResultBitmap(barcode);
+    }
+
+    long resultDurationMS = getIntent().getLongExtra(Intents.Scan.RESULT_DISPLAY_DURATION_MS,
+                                                     DEFAULT_INTENT_RESULT_DURATION_MS);
+    if (resultDurationMS > 0) {
+      statusView.setText(getString(R.string.msg_batch_scanned, rawResults.length));
+    }
+
+    sendReplyMessage(R.id.return_scan_result, buildBatchIntent(rawResults), resultDurationMS);
+  }
+
+  /**
+   * @return the reply to the app that asked for the scan, describing the first barcode as usual and
+   *  listing all of them
+   */
+  private Intent buildBatchIntent(Result[] rawResults) {
+    Intent intent = buildResultIntent(rawResults[0]);
+    String[] texts = new String[rawResults.length];
+    String[] formats = new String[rawResults.length];
+    for (int i = 0; i < rawResults.length; i++) {
+      texts[i] = rawResults[i].getText();
+      formats[i] = rawResults[i].getBarcodeFormat().toString();
+    }
+    intent.putExtra(Intents.Scan.RESULTS, texts);
+    intent.putExtra(Intents.Scan.RESULT_FORMATS, formats);
+    return intent;
+  }
+
   /**
    * Superimpose a line for 1D or dots for 2D to highlight the key features of the barcode.
    *
@@ -470,7 +608,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   }
 
   // Put up our own UI for how to handle the decoded contents.
-  private void handleDecodeInternally(Result rawResult, ResultHandler resultHandler, Bitmap barcode) {
+  private void handleDecodeInternally(Result rawResult, ResultHandler resultHandler, BarcodeThumbnail thumbnail) {
 
     maybeSetClipboard(resultHandler);
 
@@ -481,18 +619,24 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
 //      return;
 //    }
 
+    showResultInternally(resultHandler.getDisplayContents(), Toast.LENGTH_SHORT);
+  }
+
+  // Shows one barcode or a whole batch the same way. Scanning stays paused on the result, with
+  // lastResult set, until Back restarts it through restartPreviewAfterDelay(); in bulk mode results
+  // never get here, as scanning carries on.
+  private void showResultInternally(CharSequence displayContents, int toastDuration) {
     statusView.setVisibility(View.GONE);
     viewfinderView.setVisibility(View.GONE);
-
-    CharSequence displayContents = resultHandler.getDisplayContents();
-    Toast.makeText(this, displayContents, Toast.LENGTH_SHORT).show();
-
+    Toast.makeText(this, displayContents, toastDuration).show();
   }
 
   // Briefly show the contents of the barcode, then handle the result outside Barcode Scanner.
-  private void handleDecodeExternally(Result rawResult, ResultHandler resultHandler, Bitmap barcode) {
+  private void handleDecodeExternally(Result rawResult, ResultHandler resultHandler, BarcodeThumbnail thumbnail) {
 
-    if (barcode != null) {
+    if (thumbnail != null) {
+      Bitmap barcode = thumbnail.toBitmap();
+      drawResultPoints(barcode, thumbnail.getScaleFactor(), rawResult);
       viewfinderView.drawResultBitmap(barcode);
     }
 
@@ -516,40 +660,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
 
     switch (source) {
       case NATIVE_APP_INTENT:
-        // Hand back whatever action they requested - this can be changed to Intents.Scan.ACTION when
-        // the deprecated intent is retired.
-        Intent intent = new Intent(getIntent().getAction());
-        intent.addFlags(Intents.FLAG_NEW_DOC);
-        intent.putExtra(Intents.Scan.RESULT, rawResult.toString());
-        intent.putExtra(Intents.Scan.RESULT_FORMAT, rawResult.getBarcodeFormat().toString());
-        byte[] rawBytes = rawResult.getRawBytes();
-        if (rawBytes != null && rawBytes.length > 0) {
-          intent.putExtra(Intents.Scan.RESULT_BYTES, rawBytes);
-        }
-        Map<ResultMetadataType, ?> metadata = rawResult.getResultMetadata();
-        if (metadata != null) {
-          if (metadata.containsKey(ResultMetadataType.UPC_EAN_EXTENSION)) {
-            intent.putExtra(Intents.Scan.RESULT_UPC_EAN_EXTENSION,
-                metadata.get(ResultMetadataType.UPC_EAN_EXTENSION).toString());
-          }
-          Number orientation = (Number) metadata.get(ResultMetadataType.ORIENTATION);
-          if (orientation != null) {
-            intent.putExtra(Intents.Scan.RESULT_ORIENTATION, orientation.intValue());
-          }
-          String ecLevel = (String) metadata.get(ResultMetadataType.ERROR_CORRECTION_LEVEL);
-          if (ecLevel != null) {
-            intent.putExtra(Intents.Scan.RESULT_ERROR_CORRECTION_LEVEL, ecLevel);
-          }
-          @SuppressWarnings("unchecked")
-          Iterable<byte[]> byteSegments = (Iterable<byte[]>) metadata.get(ResultMetadataType.BYTE_SEGMENTS);
-          if (byteSegments != null) {
-            int i = 0;
-            for (byte[] byteSegment : byteSegments) {
-              intent.putExtra(Intents.Scan.RESULT_BYTE_SEGMENTS_PREFIX + i, byteSegment);
-              i++;
-            }
-          }
-        }
+        Intent intent = buildResultIntent(rawResult);
         sendReplyMessage(R.id.return_scan_result, intent, resultDurationMS);
         break;
 
@@ -572,6 +683,47 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     }
   }
 
+  /**
+   * @return the reply to the app that asked for the scan, describing one barcode
+   */
+  private Intent buildResultIntent(Result rawResult) {
+    // Hand back whatever action they requested - this can be changed to Intents.Scan.ACTION when
+    // the deprecated intent is retired.
+    Intent intent = new Intent(getIntent().getAction());
+    intent.addFlags(Intents.FLAG_NEW_DOC);
+    intent.putExtra(Intents.Scan.RESULT, rawResult.toString());
+    intent.putExtra(Intents.Scan.RESULT_FORMAT, rawResult.getBarcodeFormat().toString());
+    byte[] rawBytes = rawResult.getRawBytes();
+    if (rawBytes != null && rawBytes.length > 0) {
+      intent.putExtra(Intents.Scan.RESULT_BYTES, rawBytes);
+    }
+    Map<ResultMetadataType, ?> metadata = rawResult.getResultMetadata();
+    if (metadata != null) {
+      if (metadata.containsKey(ResultMetadataType.UPC_EAN_EXTENSION)) {
+        intent.putExtra(Intents.Scan.RESULT_UPC_EAN_EXTENSION,
+            metadata.get(ResultMetadataType.UPC_EAN_EXTENSION).toString());
+      }
+      Number orientation = (Number) metadata.get(ResultMetadataType.ORIENTATION);
+      if (orientation != null) {
+        intent.putExtra(Intents.Scan.RESULT_ORIENTATION, orientation.intValue());
+      }
+      String ecLevel = (String) metadata.get(ResultMetadataType.ERROR_CORRECTION_LEVEL);
+      if (ecLevel != null) {
+        intent.putExtra(Intents.Scan.RESULT_ERROR_CORRECTION_LEVEL, ecLevel);
+      }
+      @SuppressWarnings("unchecked")
+      Iterable<byte[]> byteSegments = (Iterable<byte[]>) metadata.get(ResultMetadataType.BYTE_SEGMENTS);
+      if (byteSegments != null) {
+        int i = 0;
+        for (byte[] byteSegment : byteSegments) {
+          intent.putExtra(Intents.Scan.RESULT_BYTE_SEGMENTS_PREFIX + i, byteSegment);
+          i++;
+        }
+      }
+    }
+    return intent;
+  }
+
   private void maybeSetClipboard(ResultHandler resultHandler) {
     if (copyToClipboard && !resultHandler.areContentsSecure()) {
       ClipboardInterface.setText(resultHandler.getDisplayContents(), this);
@@ -601,7 +753,8 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
       cameraManager.openDriver(surfaceHolder);
       // Creating the handler starts the preview, which can also throw a RuntimeException.
       if (handler == null) {
-        handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet, cameraManager);
+        handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet,
+            decodeThreadCount, rareFormatInterval, frameBudgetMs, recentCodes, cameraManager);
       }
       decodeOrStoreSavedBitmap(null, null);
     } catch (IOException ioe) {
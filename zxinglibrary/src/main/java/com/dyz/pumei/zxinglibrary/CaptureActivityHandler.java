@@ -17,28 +17,29 @@
 package com.dyz.pumei.zxinglibrary;
 
 import android.content.ActivityNotFoundException;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.BitmapFactory;
 import android.provider.Browser;
 
 import com.dyz.pumei.zxinglibrary.CaptureActivity;
-import com.dyz.pumei.zxinglibrary.camera.CameraManager;
+import com.dyz.pumei.zxinglibrary.camera.FrameSource;
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.Result;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.net.Uri;
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class handles all the messaging which comprises the state machine for capture.
@@ -50,9 +51,11 @@ public final class CaptureActivityHandler extends Handler {
   private static final String TAG = CaptureActivityHandler.class.getSimpleName();
 
   private final CaptureActivity activity;
-  private final DecodeThread decodeThread;
+  private final DecodeThreadPool decodeThreadPool;
+  private final boolean streamFrames;
+  private final boolean bulkMode;
   private State state;
-  private final CameraManager cameraManager;
+  private final FrameSource frameSource;
 
   private enum State {
     PREVIEW,
@@ -64,42 +67,69 @@ public final class CaptureActivityHandler extends Handler {
                          Collection<BarcodeFormat> decodeFormats,
                          Map<DecodeHintType,?> baseHints,
                          String characterSet,
-                         CameraManager cameraManager) {
+                         int decodeThreadCount,
+                         int rareFormatInterval,
+                         int frameBudgetMs,
+                         RecentCodeCache recentCodes,
+                         FrameSource frameSource) {
     this.activity = activity;
-    decodeThread = new DecodeThread(activity, decodeFormats, baseHints, characterSet,
-        new ViewfinderResultPointCallback(activity.getViewfinderView()));
-    decodeThread.start();
+    // Results come straight back here
+    decodeThreadPool = new DecodeThreadPool(activity, this, activity.getHistoryManager(),
+        decodeFormats, baseHints, characterSet,
+        new ViewfinderResultPointCallback(activity.getViewfinderView()), decodeThreadCount,
+        rareFormatInterval, frameBudgetMs, recentCodes, frameSource);
+    bulkMode = recentCodes != null;
+    decodeThreadPool.start();
     state = State.SUCCESS;
 
-    // Start ourselves capturing previews and decoding.
-    this.cameraManager = cameraManager;
-    cameraManager.startPreview();
+    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity);
+    streamFrames = prefs.getBoolean(PreferencesActivity.KEY_STREAM_FRAMES, true);
+
+    // Start ourselves capturing previews and decoding. Each worker may hold one frame, and the camera
+    // needs a couple of spare buffers to fill meanwhile.
+    this.frameSource = frameSource;
+    frameSource.setPreviewBufferCount(decodeThreadPool.size() + 2);
+    frameSource.startPreview();
     restartPreviewAndDecode();
   }
 
+  /**
+   * @return how sharp recent frames have been, or null if blurry frames aren't being skipped
+   */
+  public SharpnessFilter getSharpnessFilter() {
+    return decodeThreadPool.getSharpnessFilter();
+  }
+
   @Override
   public void handleMessage(Message message) {
     if (message.what == R.id.restart_preview) {
       restartPreviewAndDecode();
     } else if (message.what == R.id.decode_succeeded) {
-      state = State.SUCCESS;
-      Bundle bundle = message.getData();
-      Bitmap barcode = null;
-      float scaleFactor = 1.0f;
-      if (bundle != null) {
-        byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-        if (compressedBitmap != null) {
-          barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-          // Mutable copy:
-          barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
-        }
-        scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
+      if (state != State.PREVIEW) {
+        // Another worker got there first, or scanning has ended
+        return;
+      }
+      DecodeResult decodeResult = (DecodeResult) message.obj;
+      if (bulkMode) {
+        // Keep scanning; workers only report barcodes that haven't been in view recently
+        activity.handleDecode(decodeResult.getResults(), decodeResult.getThumbnail());
+        decodeThreadPool.resumeIdleWorkers();
+      } else {
+        state = State.SUCCESS;
+        decodeThreadPool.cancel();
+        frameSource.stopFrameStream();
+        activity.getViewfinderView().setDecoding(false);
+        activity.handleDecode(decodeResult.getResults(), decodeResult.getThumbnail());
+      }
+      // Messages are stamped with the uptime they were sent at
+      ScanMetrics.getInstance().recordNanos(ScanMetrics.RESULT_DISPATCH,
+          TimeUnit.MILLISECONDS.toNanos(SystemClock.uptimeMillis() - message.getWhen()));
+
+    } else if (message.what == R.id.decode_failed) {
+      // We're decoding as fast as possible, so when one decode fails, start another.
+      if (state == State.PREVIEW) {
+        decodeThreadPool.requestDecode();
       }
-      activity.handleDecode((Result) message.obj, barcode, scaleFactor);
-
-    } else if (message.what == R.id.decode_failed) {// We're decoding as fast as possible, so when one decode fails, start another.
-      state = State.PREVIEW;
-      cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
 
     } else if (message.what == R.id.return_scan_result) {
       activity.setResult(Activity.RESULT_OK, (Intent) message.obj);
@@ -143,15 +173,10 @@ public final class CaptureActivityHandler extends Handler {
 
   public void quitSynchronously() {
     state = State.DONE;
-    cameraManager.stopPreview();
-    Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
-    quit.sendToTarget();
-    try {
-      // Wait at most half a second; should be enough time, and onPause() will timeout quickly
-      decodeThread.join(500L);
-    } catch (InterruptedException e) {
-      // continue
-    }
+    activity.getViewfinderView().setDecoding(false);
+    frameSource.stopPreview();
+    // Waits at most half a second in total; should be enough time, and onPause() will timeout quickly
+    decodeThreadPool.quitSynchronously();
 
     // Be absolutely sure we don't send any queued up messages
     removeMessages(R.id.decode_succeeded);
@@ -161,7 +186,12 @@ public final class CaptureActivityHandler extends Handler {
   private void restartPreviewAndDecode() {
     if (state == State.SUCCESS) {
       state = State.PREVIEW;
-      cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+      if (streamFrames) {
+        decodeThreadPool.startStreaming();
+      } else {
+        decodeThreadPool.requestDecode();
+      }
+      activity.getViewfinderView().setDecoding(true);
       activity.drawViewfinder();
     }
   }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sits between one decode worker's readers and the shared {@link ResultPointCallback}. Readers
+ * report points relative to the crop they are decoding, which may be a tracked region rather than
+ * the whole framing rectangle; this shifts them so that the viewfinder gets points relative to the
+ * framing rectangle as before, and the {@link BarcodeTracker} gets points in the preview frame.
+ * Points found in a downsampled copy of the crop are scaled back up too.
+ */
+final class CropResultPointCallback implements ResultPointCallback {
+
+  private final ResultPointCallback delegate;
+  private final ViewfinderResultPointCallback viewfinderCallback;
+  private final BarcodeTracker tracker;
+  private volatile int cropLeft;
+  private volatile int cropTop;
+  private volatile int framingLeft;
+  private volatile int framingTop;
+  private volatile int scale = 1;
+  private volatile int frameId;
+  private final AtomicInteger pointCount = new AtomicInteger();
+
+  CropResultPointCallback(ResultPointCallback delegate, BarcodeTracker tracker) {
+    this.delegate = delegate;
+    viewfinderCallback = delegate instanceof ViewfinderResultPointCallback ?
+        (ViewfinderResultPointCallback) delegate : null;
+    this.tracker = tracker;
+  }
+
+  /**
+   * Called by the worker before it decodes a frame, so points can be told apart by frame.
+   */
+  void setFrameId(int frameId) {
+    this.frameId = frameId;
+  }
+
+  /**
+   * Called by the worker before it decodes a frame, with positions in the preview frame.
+   */
+  void setCrop(int cropLeft, int cropTop, int framingLeft, int framingTop) {
+    this.cropLeft = cropLeft;
+    this.cropTop = cropTop;
+    this.framingLeft = framingLeft;
+    this.framingTop = framingTop;
+  }
+
+  /**
+   * @param scale how many times smaller than the crop the image being decoded is
+   */
+  void setScale(int scale) {
+    this.scale = scale;
+  }
+
+  /**
+   * @return number of points reported so far, to tell whether a decode pass found any candidates
+   */
+  int getPointCount() {
+    return pointCount.get();
+  }
+
+  @Override
+  public void foundPossibleResultPoint(ResultPoint point) {
+    pointCount.incrementAndGet();
+    int left = cropLeft;
+    int top = cropTop;
+    int currentScale = scale;
+    float x = point.getX() * currentScale;
+    float y = point.getY() * currentScale;
+    if (tracker != null) {
+      tracker.addPoint(left + x, top + y);
+    }
+    if (viewfinderCallback != null) {
+      // Straight to the viewfinder's channel, without a new point per report
+      viewfinderCallback.foundPossibleResultPoint(x + left - framingLeft, y + top - framingTop, frameId);
+    } else if (delegate != null) {
+      int dx = left - framingLeft;
+      int dy = top - framingTop;
+      delegate.foundPossibleResultPoint(dx == 0 && dy == 0 && currentScale == 1 ?
+          point : new ResultPoint(x + dx, y + dy));
+    }
+  }
+
+}
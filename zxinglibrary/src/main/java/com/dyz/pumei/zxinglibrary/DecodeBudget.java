@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps each frame's decode inside a time budget, while still looking harder when it might pay off.
+ * Frames are normally decoded with the fast hints. A frame that looked promising, because it was
+ * sharp or the readers reported candidate points, but decoded to nothing is tried again with each
+ * escalation pass in turn, such as {@link com.google.zxing.DecodeHintType#PURE_BARCODE} and then
+ * {@link com.google.zxing.DecodeHintType#TRY_HARDER}, and following frames go straight to those until
+ * something is found, or until a run of frames gives no more reason to keep trying hard. Each pass is
+ * only started when its typical duration still fits before the frame's deadline.
+ * Not thread-safe: one instance belongs to one decode thread.
+ */
+final class DecodeBudget {
+
+  static final int DEFAULT_FRAME_BUDGET_MS = 40;
+
+  private static final int MAX_ESCALATED_MISSES = 10;
+
+  private final long budgetNanos;
+  private boolean escalated;
+  private int escalatedMisses;
+  private final long[] passNanos;
+  private long escalations;
+
+  /**
+   * @param passCount number of escalation passes whose durations are tracked
+   */
+  DecodeBudget(int frameBudgetMs, int passCount) {
+    budgetNanos = TimeUnit.MILLISECONDS.toNanos(frameBudgetMs);
+    passNanos = new long[passCount];
+  }
+
+  /**
+   * @return when a frame whose decoding started at {@code startNanos} should be done
+   */
+  long getDeadline(long startNanos) {
+    return startNanos + budgetNanos;
+  }
+
+  /**
+   * @return true if frames should currently be decoded the hard way from the start
+   */
+  boolean isEscalated() {
+    return escalated;
+  }
+
+  /**
+   * @return true if escalation pass {@code pass}, started now, would typically finish by
+   *  {@code deadlineNanos}
+   */
+  boolean canAffordPass(int pass, long deadlineNanos) {
+    return System.nanoTime() + passNanos[pass] <= deadlineNanos;
+  }
+
+  void passTook(int pass, long nanos) {
+    // Moving average, leaning on recent passes
+    long average = passNanos[pass];
+    passNanos[pass] = average == 0 ? nanos : (3 * average + nanos) / 4;
+  }
+
+  /**
+   * Called once per frame with the outcome.
+   */
+  void frameDone(boolean found, boolean promising) {
+    if (found) {
+      escalated = false;
+    } else if (promising) {
+      if (!escalated) {
+        escalations++;
+      }
+      escalated = true;
+      escalatedMisses = 0;
+    } else if (escalated && ++escalatedMisses > MAX_ESCALATED_MISSES) {
+      escalated = false;
+    }
+  }
+
+  long getEscalationCount() {
+    return escalations;
+  }
+
+  long getTypicalPassMs(int pass) {
+    return TimeUnit.NANOSECONDS.toMillis(passNanos[pass]);
+  }
+
+}
@@ -16,37 +16,120 @@
 
 package com.dyz.pumei.zxinglibrary;
 
-import android.graphics.Bitmap;
+import com.dyz.pumei.zxinglibrary.camera.FrameSource;
+import com.dyz.pumei.zxinglibrary.camera.FrameMailbox;
+import com.dyz.pumei.zxinglibrary.camera.RecyclableLuminanceSource;
+import com.dyz.pumei.zxinglibrary.camera.frames.FrameRecording;
+import com.dyz.pumei.zxinglibrary.camera.frames.MappedFrameRecorder;
+import com.dyz.pumei.zxinglibrary.engine.ScanEngine;
+import com.dyz.pumei.zxinglibrary.engine.ScanResult;
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.BarcodeFormat;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.ResultPointCallback;
 
-import android.os.Bundle;
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 final class DecodeHandler extends Handler {
 
   private static final String TAG = DecodeHandler.class.getSimpleName();
 
-  private final CaptureActivity activity;
-  private final MultiFormatReader multiFormatReader;
+  private static final String ALL_READERS = ScanMetrics.READER_PREFIX + "all";
+  private static final String PURE_READER = ScanMetrics.READER_PREFIX + "pure_barcode";
+  private static final String HARD_READER = ScanMetrics.READER_PREFIX + "try_harder";
+  private static final String MULTIPLE_READER = ScanMetrics.READER_PREFIX + "multiple";
+
+  // The formats whose readers take PURE_BARCODE as a shortcut past locating the barcode
+  private static final Set<BarcodeFormat> PURE_FORMATS =
+      EnumSet.of(BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX, BarcodeFormat.PDF_417);
+
+  private final DecodeThreadPool pool;
+  private final int index;
+  private final ScanEngine engine;
+  private final ParallelFormatReader parallelFormatReader;
+  private final ScheduledFormatReader scheduledFormatReader;
+  private final BinarizerCache binarizerCache;
+  private final BarcodeTracker tracker;
+  private final CropResultPointCallback resultPointCallback;
+  private final LuminancePyramid pyramid;
+  private final DecodeBudget budget;
+  // Cheapest first
+  private final MultiFormatReader[] escalationReaders;
+  private final String[] escalationNames;
+  private final BatchCollector batchCollector;
+  private final MultiBarcodeReader multiBarcodeReader;
+  private final Rect crop;
+  private final ScanMetrics metrics;
+  private final MappedFrameRecorder frameRecorder;
+  private final int[] recordedCrop;
+  private RecyclableLuminanceSource framingSource;
+  private RecyclableLuminanceSource trackedSource;
   private boolean running = true;
 
-  DecodeHandler(CaptureActivity activity, Map<DecodeHintType,Object> hints) {
-    multiFormatReader = new MultiFormatReader();
-    multiFormatReader.setHints(hints);
-    this.activity = activity;
+  DecodeHandler(DecodeThreadPool pool,
+                int index,
+                Map<DecodeHintType,Object> baseHints,
+                Executor readerExecutor) {
+    batchCollector = pool.getBatchCollector();
+    boolean multiple = batchCollector != null;
+    // Tracking, pyramid, budget and parallel readers all assume one barcode is being looked for
+    tracker = multiple ? null : pool.getBarcodeTracker();
+    resultPointCallback = new CropResultPointCallback(
+        (ResultPointCallback) baseHints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK), tracker);
+    Map<DecodeHintType,Object> hints = new EnumMap<>(baseHints);
+    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+    binarizerCache = new BinarizerCache();
+    pyramid = pool.isPyramidDecoding() && !multiple ? new LuminancePyramid() : null;
+    if (pool.getFrameBudgetMs() > 0 && !multiple && !hints.containsKey(DecodeHintType.TRY_HARDER)) {
+      MultiFormatReader pureReader = buildPureReader(hints);
+      Map<DecodeHintType,Object> hardHints = new EnumMap<>(hints);
+      hardHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+      MultiFormatReader hardReader = new MultiFormatReader();
+      hardReader.setHints(hardHints);
+      if (pureReader == null) {
+        escalationReaders = new MultiFormatReader[] {hardReader};
+        escalationNames = new String[] {HARD_READER};
+      } else {
+        escalationReaders = new MultiFormatReader[] {pureReader, hardReader};
+        escalationNames = new String[] {PURE_READER, HARD_READER};
+      }
+      budget = new DecodeBudget(pool.getFrameBudgetMs(), escalationReaders.length);
+    } else {
+      budget = null;
+      escalationReaders = null;
+      escalationNames = null;
+    }
+    crop = new Rect();
+    metrics = ScanMetrics.getInstance();
+    frameRecorder = pool.getFrameRecorder();
+    recordedCrop = new int[4];
+    engine = new ScanEngine(hints);
+    parallelFormatReader = readerExecutor == null || multiple ? null :
+        new ParallelFormatReader(hints, readerExecutor);
+    FormatStatistics formatStatistics = pool.getFormatStatistics();
+    scheduledFormatReader = formatStatistics == null || parallelFormatReader != null || multiple ? null :
+        new ScheduledFormatReader(hints, formatStatistics, pool.getRareFormatInterval());
+    multiBarcodeReader = multiple ? new MultiBarcodeReader(hints) : null;
+    this.pool = pool;
+    this.index = index;
   }
 
   @Override
@@ -55,46 +138,186 @@ final class DecodeHandler extends Handler {
       return;
     }
     if (message.what == R.id.decode) {
-      decode((byte[]) message.obj, message.arg1, message.arg2);
+      byte[] data = (byte[]) message.obj;
+      try {
+        if (pool.isCurrent(index)) {
+          // Messages are stamped with the uptime they were sent at
+          metrics.recordNanos(ScanMetrics.QUEUE_WAIT,
+              TimeUnit.MILLISECONDS.toNanos(SystemClock.uptimeMillis() - message.getWhen()));
+          decode(data, message.arg1, message.arg2, true);
+        } else {
+          // Another worker already found something since this frame was requested
+          pool.finish(index);
+        }
+      } finally {
+        releaseFrame(data);
+      }
+    } else if (message.what == R.id.decode_stream) {
+      decodeStream();
     } else if (message.what == R.id.quit) {
       running = false;
+      if (budget != null) {
+        StringBuilder passes = new StringBuilder();
+        for (int pass = 0; pass < escalationNames.length; pass++) {
+          passes.append(' ').append(escalationNames[pass]).append(": ")
+              .append(budget.getTypicalPassMs(pass)).append(" ms");
+        }
+        Log.d(TAG, "Tried harder " + budget.getEscalationCount() + " times, typically taking" + passes);
+      }
+      if (parallelFormatReader != null) {
+        parallelFormatReader.logTimings();
+      }
       Looper.myLooper().quit();
     }
   }
 
+  /**
+   * Keeps decoding the newest streamed frame until a barcode is found or the pool is cancelled.
+   * When no frame is waiting, returns to the looper until the mailbox messages this handler again.
+   */
+  private void decodeStream() {
+    FrameMailbox mailbox = pool.getFrameMailbox();
+    while (pool.isCurrent(index)) {
+      FrameMailbox.Frame frame = mailbox.take();
+      if (frame == null) {
+        if (mailbox.await(this)) {
+          return;
+        }
+        if (!mailbox.isOpen()) {
+          break;
+        }
+        continue;
+      }
+      metrics.recordNanos(ScanMetrics.QUEUE_WAIT, System.nanoTime() - frame.getPublishTime());
+      boolean found;
+      try {
+        found = decode(frame.getData(), frame.getWidth(), frame.getHeight(), false);
+      } finally {
+        releaseFrame(frame.getData());
+      }
+      if (found) {
+        return;
+      }
+    }
+    pool.finish(index);
+  }
+
+  /**
+   * Hands a frame back to the camera once no reader, including any parallel one still finishing up,
+   * refers to it anymore; the camera will write the next frame into it.
+   */
+  private void releaseFrame(byte[] data) {
+    if (parallelFormatReader != null) {
+      parallelFormatReader.awaitIdle();
+    }
+    pool.getFrameSource().releasePreviewBuffer(data);
+  }
+
   /**
    * Decode the data within the viewfinder rectangle, and time how long it took. For efficiency,
-   * reuse the same reader objects from one decode to the next.
+   * reuse the same reader, luminance source and binarizer from one decode to the next.
    *
    * @param data   The YUV preview frame.
    * @param width  The width of the preview frame.
    * @param height The height of the preview frame.
+   * @param reportFailure if false, a failed decode is not reported and this worker stays busy, as
+   *  when streaming
+   * @return true if a barcode, or a complete batch of them, was found, in which case this worker
+   *  is no longer busy
    */
-  private void decode(byte[] data, int width, int height) {
+  private boolean decode(byte[] data, int width, int height, boolean reportFailure) {
     long start = System.nanoTime();
     Result rawResult = null;
-    PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(data, width, height);
+    Result[] found = MultiBarcodeReader.NO_RESULTS;
+    resultPointCallback.setFrameId(pool.nextFrameId());
+    RecyclableLuminanceSource source = buildLuminanceSource(data, width, height);
+    boolean skipped = source == null;
+    metrics.recordNanos(ScanMetrics.LUMINANCE, System.nanoTime() - start);
+    SceneChangeDetector sceneChangeDetector = pool.getSceneChangeDetector();
     if (source != null) {
-      BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-      try {
-        rawResult = multiFormatReader.decodeWithState(bitmap);
-      } catch (ReaderException re) {
-        // continue
-      } finally {
-        multiFormatReader.reset();
+      SharpnessFilter sharpnessFilter = pool.getSharpnessFilter();
+      if (sceneChangeDetector != null && !sceneChangeDetector.shouldDecode(source)) {
+        // Nothing has changed since the last frame that failed to decode
+        skipped = true;
+      } else {
+        float sharpness = sharpnessFilter == null ? 0.0f : SharpnessFilter.score(source);
+        if (sharpnessFilter != null && !sharpnessFilter.accept(sharpness)) {
+          // Too blurry to be worth binarizing, let alone running every reader on
+          skipped = true;
+        } else if (multiBarcodeReader != null) {
+          long multipleStart = System.nanoTime();
+          found = multiBarcodeReader.decode(new BinaryBitmap(binarizerCache.get(source)));
+          metrics.recordNanos(MULTIPLE_READER, System.nanoTime() - multipleStart);
+        } else if (budget == null) {
+          rawResult = decodePyramid(source, Long.MAX_VALUE);
+        } else {
+          boolean sharp = sharpnessFilter != null && sharpnessFilter.isSharp(sharpness);
+          rawResult = decodeWithinBudget(source, sharp, budget.getDeadline(start));
+        }
+      }
+    }
+
+    Result[] batch = null;
+    if (batchCollector != null && source != null && pool.isCurrent(index)) {
+      // Frames without anything new count too, towards deciding that the batch is complete
+      batch = batchCollector.offer(found);
+      if (batch != null) {
+        rawResult = batch[0];
+      }
+    }
+    Result[] results = null;
+    if (rawResult != null) {
+      results = batch == null ? new Result[] {rawResult} : batch;
+      RecentCodeCache recentCodes = pool.getRecentCodes();
+      if (recentCodes != null) {
+        // In bulk mode, a barcode that has stayed in view since it was reported is nothing new
+        results = recentCodes.filter(results);
+        if (results.length == 0) {
+          results = null;
+          rawResult = null;
+        } else {
+          rawResult = results[0];
+        }
       }
     }
+    if (sceneChangeDetector != null && !skipped && rawResult == null) {
+      // Only a frame the readers failed on is worth not decoding again
+      sceneChangeDetector.setReference(source);
+    }
+    if (rawResult != null && tracker != null) {
+      tracker.addPoints(rawResult.getResultPoints(), crop.left, crop.top);
+    }
+    metrics.recordNanos(ScanMetrics.FRAME_DECODE, System.nanoTime() - start);
+    metrics.increment(rawResult == null ? ScanMetrics.DECODE_FAILURES : ScanMetrics.DECODE_SUCCESSES);
+    if (frameRecorder != null) {
+      record(data, width, height, start, rawResult != null, skipped);
+    }
+    if (rawResult == null && !reportFailure) {
+      return false;
+    }
+    if (!pool.finish(index)) {
+      return rawResult != null;
+    }
 
-    Handler handler = activity.getHandler();
+    Handler handler = pool.getResultHandler();
     if (rawResult != null) {
+      FormatStatistics formatStatistics = pool.getFormatStatistics();
+      if (formatStatistics != null) {
+        for (Result result : results) {
+          formatStatistics.record(result.getBarcodeFormat());
+        }
+      }
       // Don't log the barcode contents for security.
       long end = System.nanoTime();
-      Log.d(TAG, "Found barcode in " + TimeUnit.NANOSECONDS.toMillis(end - start) + " ms");
+      Log.d(TAG, "Found " + results.length + " barcode(s) in " +
+          TimeUnit.NANOSECONDS.toMillis(end - start) + " ms");
       if (handler != null) {
-        Message message = Message.obtain(handler, R.id.decode_succeeded, rawResult);
-        Bundle bundle = new Bundle();
-        bundleThumbnail(source, bundle);        
-        message.setData(bundle);
+        // The frame is about to be reused, so copy out what the thumbnail needs now
+        long thumbnailStart = System.nanoTime();
+        BarcodeThumbnail thumbnail = BarcodeThumbnail.copyOf(source);
+        metrics.recordNanos(ScanMetrics.THUMBNAIL, System.nanoTime() - thumbnailStart);
+        DecodeResult decodeResult = new DecodeResult(results, thumbnail);
+        Message message = Message.obtain(handler, R.id.decode_succeeded, decodeResult);
         message.sendToTarget();
       }
     } else {
@@ -103,17 +326,170 @@ final class DecodeHandler extends Handler {
         message.sendToTarget();
       }
     }
+    return rawResult != null;
+  }
+
+  /**
+   * Appends the frame to the recording, with the framing rectangle rather than any tracked crop,
+   * so that a replay decodes the same area every time.
+   */
+  private void record(byte[] data, int width, int height, long timestamp, boolean found, boolean skipped) {
+    Rect framingRect = pool.getFrameSource().getFramingRectInPreview();
+    int[] theCrop = null;
+    if (framingRect != null) {
+      theCrop = recordedCrop;
+      theCrop[0] = framingRect.left;
+      theCrop[1] = framingRect.top;
+      theCrop[2] = framingRect.right;
+      theCrop[3] = framingRect.bottom;
+    }
+    byte outcome;
+    if (found) {
+      outcome = FrameRecording.OUTCOME_FOUND;
+    } else if (skipped) {
+      outcome = FrameRecording.OUTCOME_SKIPPED;
+    } else {
+      outcome = FrameRecording.OUTCOME_NOT_FOUND;
+    }
+    frameRecorder.record(data, width, height, timestamp, theCrop, outcome);
+  }
+
+  /**
+   * Decodes the fast way, and then with each escalation pass in turn if the frame looks promising
+   * and there is time left; or straight away with the escalation passes while escalated. The
+   * deadline is checked before every pass, and before every reader within the fast pass.
+   */
+  private Result decodeWithinBudget(LuminanceSource source, boolean sharp, long deadline) {
+    int pointCount = resultPointCallback.getPointCount();
+    Result rawResult = null;
+    int hardestPass = escalationReaders.length - 1;
+    boolean escalatedFirst = budget.isEscalated() && budget.canAffordPass(hardestPass, deadline);
+    if (!escalatedFirst) {
+      rawResult = decodePyramid(source, deadline);
+    }
+    boolean promising = sharp || resultPointCallback.getPointCount() != pointCount;
+    if (rawResult == null && (escalatedFirst || promising)) {
+      // One bitmap for every pass, so that the black matrix is only computed once
+      BinaryBitmap bitmap = null;
+      for (int pass = 0; pass <= hardestPass && rawResult == null; pass++) {
+        if (!budget.canAffordPass(pass, deadline)) {
+          // Passes only get more expensive from here
+          break;
+        }
+        if (bitmap == null) {
+          bitmap = new BinaryBitmap(binarizerCache.get(source));
+        }
+        MultiFormatReader reader = escalationReaders[pass];
+        long passStart = System.nanoTime();
+        try {
+          rawResult = reader.decodeWithState(bitmap);
+        } catch (ReaderException re) {
+          // continue
+        } finally {
+          reader.reset();
+          long passNanos = System.nanoTime() - passStart;
+          budget.passTook(pass, passNanos);
+          metrics.recordNanos(escalationNames[pass], passNanos);
+        }
+      }
+    }
+    budget.frameDone(rawResult != null, promising);
+    return rawResult;
+  }
+
+  /**
+   * Tries half resolution first, if the pyramid is on and the crop is big enough, and full
+   * resolution only if that looked promising or is due anyway, and the deadline hasn't passed.
+   */
+  private Result decodePyramid(LuminanceSource source, long deadline) {
+    LuminanceSource downsampled = pyramid == null ? null : pyramid.downsample(source);
+    if (downsampled == null) {
+      return decodeSource(source, deadline);
+    }
+    int pointCount = resultPointCallback.getPointCount();
+    resultPointCallback.setScale(LuminancePyramid.SCALE);
+    Result rawResult;
+    try {
+      rawResult = decodeSource(downsampled, deadline);
+    } finally {
+      resultPointCallback.setScale(1);
+    }
+    if (rawResult != null) {
+      LuminancePyramid.scaleResultPoints(rawResult);
+      return rawResult;
+    }
+    boolean foundCandidates = resultPointCallback.getPointCount() != pointCount;
+    return pyramid.shouldEscalate(foundCandidates) && System.nanoTime() < deadline ?
+        decodeSource(source, deadline) : null;
   }
 
-  private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
-    int[] pixels = source.renderThumbnail();
-    int width = source.getThumbnailWidth();
-    int height = source.getThumbnailHeight();
-    Bitmap bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
-    ByteArrayOutputStream out = new ByteArrayOutputStream();    
-    bitmap.compress(Bitmap.CompressFormat.JPEG, 50, out);
-    bundle.putByteArray(DecodeThread.BARCODE_BITMAP, out.toByteArray());
-    bundle.putFloat(DecodeThread.BARCODE_SCALED_FACTOR, (float) width / source.getWidth());
+  /**
+   * Runs the readers over one image, with whichever strategy is enabled.
+   *
+   * @param deadline the scheduled readers stop starting new formats after this
+   */
+  private Result decodeSource(LuminanceSource source, long deadline) {
+    if (parallelFormatReader != null) {
+      return parallelFormatReader.decode(source);
+    }
+    BinaryBitmap bitmap = new BinaryBitmap(binarizerCache.get(source));
+    if (scheduledFormatReader != null) {
+      return scheduledFormatReader.decode(bitmap, deadline);
+    }
+    ScanResult scanResult = engine.decode(bitmap);
+    metrics.recordNanos(ALL_READERS, scanResult.getDecodeNanos());
+    return scanResult.getResult();
+  }
+
+  /**
+   * A barcode that fills a clean crop, such as one on a phone screen held up to the camera, can be
+   * read without the detectors, in a fraction of the time of a TRY_HARDER pass. That is what
+   * PURE_BARCODE does, for the 2D formats that support it; anything else in the crop makes it fail
+   * fast, so it is tried before the hard pass.
+   *
+   * @return a PURE_BARCODE reader for whichever of those formats are enabled, or null if none is
+   */
+  private static MultiFormatReader buildPureReader(Map<DecodeHintType,Object> hints) {
+    @SuppressWarnings("unchecked")
+    Collection<BarcodeFormat> formats = (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    Set<BarcodeFormat> pureFormats = EnumSet.copyOf(PURE_FORMATS);
+    if (formats != null && !formats.isEmpty()) {
+      pureFormats.retainAll(formats);
+    }
+    if (pureFormats.isEmpty()) {
+      return null;
+    }
+    Map<DecodeHintType,Object> pureHints = new EnumMap<>(hints);
+    pureHints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+    pureHints.put(DecodeHintType.POSSIBLE_FORMATS, pureFormats);
+    MultiFormatReader pureReader = new MultiFormatReader();
+    pureReader.setHints(pureHints);
+    return pureReader;
+  }
+
+  /**
+   * Crops the frame to the region the tracker is following, or else to the whole framing rectangle,
+   * and tells the result point callback which it is. A source is kept for each of the two.
+   *
+   * @return null if there is no framing rectangle yet
+   */
+  private RecyclableLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
+    FrameSource frameSource = pool.getFrameSource();
+    Rect framingRect = frameSource.getFramingRectInPreview();
+    if (framingRect == null) {
+      return null;
+    }
+    RecyclableLuminanceSource source;
+    if (tracker != null && tracker.nextCrop(framingRect, crop)) {
+      source = frameSource.buildLuminanceSource(data, width, height, crop, trackedSource);
+      trackedSource = source;
+    } else {
+      crop.set(framingRect);
+      source = frameSource.buildLuminanceSource(data, width, height, crop, framingSource);
+      framingSource = source;
+    }
+    resultPointCallback.setCrop(crop.left, crop.top, framingRect.left, framingRect.top);
+    return source;
   }
 
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.Result;
+
+/**
+ * What a decode thread hands to {@link CaptureActivityHandler} when it finds a barcode, or a batch
+ * of them.
+ */
+final class DecodeResult {
+
+  private final Result[] results;
+  private final BarcodeThumbnail thumbnail;
+
+  DecodeResult(Result result, BarcodeThumbnail thumbnail) {
+    this(new Result[] {result}, thumbnail);
+  }
+
+  DecodeResult(Result[] results, BarcodeThumbnail thumbnail) {
+    this.results = results;
+    this.thumbnail = thumbnail;
+  }
+
+  /**
+   * @return every barcode found, at least one
+   */
+  Result[] getResults() {
+    return results;
+  }
+
+  /**
+   * @return image of the barcode, or null if none could be made
+   */
+  BarcodeThumbnail getThumbnail() {
+    return thumbnail;
+  }
+
+}
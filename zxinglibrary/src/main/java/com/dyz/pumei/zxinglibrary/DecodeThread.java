@@ -16,17 +16,18 @@
 
 package com.dyz.pumei.zxinglibrary;
 
+import com.dyz.pumei.zxinglibrary.engine.DecodeHints;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.ResultPointCallback;
 
+import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 import android.preference.PreferenceManager;
 
 import java.util.Collection;
-import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -38,31 +39,28 @@ import java.util.concurrent.CountDownLatch;
  */
 final class DecodeThread extends Thread {
 
-  public static final String BARCODE_BITMAP = "barcode_bitmap";
-  public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
-
-  private final CaptureActivity activity;
+  private final DecodeThreadPool pool;
+  private final int index;
   private final Map<DecodeHintType,Object> hints;
   private Handler handler;
   private final CountDownLatch handlerInitLatch;
 
-  DecodeThread(CaptureActivity activity,
+  DecodeThread(Context context,
+               DecodeThreadPool pool,
+               int index,
                Collection<BarcodeFormat> decodeFormats,
                Map<DecodeHintType,?> baseHints,
                String characterSet,
                ResultPointCallback resultPointCallback) {
 
-    this.activity = activity;
+    super("DecodeThread-" + index);
+    this.pool = pool;
+    this.index = index;
     handlerInitLatch = new CountDownLatch(1);
 
-    hints = new EnumMap<>(DecodeHintType.class);
-    if (baseHints != null) {
-      hints.putAll(baseHints);
-    }
-
     // The prefs can't change while the thread is running, so pick them up once here.
     if (decodeFormats == null || decodeFormats.isEmpty()) {
-      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity);
+      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
       decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
 //      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_1D_PRODUCT, true)) {
         decodeFormats.addAll(DecodeFormatManager.PRODUCT_FORMATS);
@@ -83,11 +81,7 @@ final class DecodeThread extends Thread {
 //        decodeFormats.addAll(DecodeFormatManager.PDF417_FORMATS);
 //      }
     }
-    hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-
-    if (characterSet != null) {
-      hints.put(DecodeHintType.CHARACTER_SET, characterSet);
-    }
+    hints = DecodeHints.build(decodeFormats, baseHints, characterSet);
     hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
   }
 
@@ -103,8 +97,11 @@ final class DecodeThread extends Thread {
   @Override
   public void run() {
     Looper.prepare();
-    handler = new DecodeHandler(activity, hints);
+    handler = new DecodeHandler(pool, index, hints, pool.getReaderExecutor());
     handlerInitLatch.countDown();
+    if (index == 0) {
+      pool.loadFormatHistory();
+    }
     Looper.loop();
   }
 
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2008 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dyz.pumei.zxinglibrary;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Message;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.dyz.pumei.zxinglibrary.camera.FrameSource;
+import com.dyz.pumei.zxinglibrary.camera.FrameMailbox;
+import com.dyz.pumei.zxinglibrary.camera.RecyclableLuminanceSource;
+import com.dyz.pumei.zxinglibrary.camera.frames.MappedFrameRecorder;
+import com.dyz.pumei.zxinglibrary.history.HistoryManager;
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ResultPointCallback;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns several {@link DecodeThread}s so that more than one preview frame can be decoded at once.
+ * Each worker has its own {@link com.google.zxing.MultiFormatReader} and hint map. Frames are
+ * only requested for idle workers, and work that was requested before the last
+ * {@link #cancel()} is dropped rather than decoded or reported. When parallel readers are enabled,
+ * the pool also owns the threads on which each worker's {@link ParallelFormatReader} runs its
+ * format groups. Outcomes go to a {@link Handler} as {@code R.id.decode_succeeded} and
+ * {@code R.id.decode_failed} messages, so the pool runs the same with or without an activity.
+ */
+final class DecodeThreadPool {
+
+  private static final String TAG = DecodeThreadPool.class.getSimpleName();
+
+  private static final int MAX_DEFAULT_SIZE = 4;
+  private static final long QUIT_TIMEOUT_MS = 500L;
+  private static final long RECORDING_BUDGET_BYTES = 256L * 1024 * 1024;
+
+  private final DecodeThread[] threads;
+  private final boolean[] busy;
+  private final int[] requestGeneration;
+  private final FrameMailbox frameMailbox;
+  private final ExecutorService readerExecutor;
+  private final SharpnessFilter sharpnessFilter;
+  private final SceneChangeDetector sceneChangeDetector;
+  private final BarcodeTracker barcodeTracker;
+  private final FormatStatistics formatStatistics;
+  private final BatchCollector batchCollector;
+  private final RecentCodeCache recentCodes;
+  private final MappedFrameRecorder frameRecorder;
+  private final boolean pyramidDecoding;
+  private final int rareFormatInterval;
+  private final int frameBudgetMs;
+  private final HistoryManager historyManager;
+  private final Handler resultHandler;
+  private final FrameSource frameSource;
+  private final AtomicInteger frameIds;
+  private int generation;
+  private boolean streaming;
+
+  /**
+   * @param context where the preferences and the frame recording directory come from
+   * @param resultHandler receives the outcome of each decode
+   * @param historyManager seeds the format statistics, or null
+   */
+  DecodeThreadPool(Context context,
+                   Handler resultHandler,
+                   HistoryManager historyManager,
+                   Collection<BarcodeFormat> decodeFormats,
+                   Map<DecodeHintType,?> baseHints,
+                   String characterSet,
+                   ResultPointCallback resultPointCallback,
+                   int size,
+                   int rareFormatInterval,
+                   int frameBudgetMs,
+                   RecentCodeCache recentCodes,
+                   FrameSource frameSource) {
+    if (size < 1) {
+      size = 1;
+    }
+    threads = new DecodeThread[size];
+    busy = new boolean[size];
+    requestGeneration = new int[size];
+    frameMailbox = new FrameMailbox(R.id.decode_stream);
+    frameIds = new AtomicInteger();
+    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+    if (prefs.getBoolean(PreferencesActivity.KEY_PARALLEL_READERS, false)) {
+      readerExecutor = Executors.newFixedThreadPool(
+          Math.max(1, Runtime.getRuntime().availableProcessors()), new ReaderThreadFactory());
+    } else {
+      readerExecutor = null;
+    }
+    sharpnessFilter = prefs.getBoolean(PreferencesActivity.KEY_SKIP_BLURRY_FRAMES, true) ?
+        new SharpnessFilter() : null;
+    sceneChangeDetector = prefs.getBoolean(PreferencesActivity.KEY_SKIP_STATIC_FRAMES, true) ?
+        new SceneChangeDetector() : null;
+    barcodeTracker = prefs.getBoolean(PreferencesActivity.KEY_TRACK_BARCODES, true) ?
+        new BarcodeTracker() : null;
+    formatStatistics = prefs.getBoolean(PreferencesActivity.KEY_ADAPTIVE_FORMATS, true) ?
+        new FormatStatistics() : null;
+    batchCollector = prefs.getBoolean(PreferencesActivity.KEY_MULTI_BARCODE, false) ?
+        new BatchCollector() : null;
+    this.rareFormatInterval = rareFormatInterval;
+    this.frameBudgetMs = frameBudgetMs;
+    this.recentCodes = recentCodes;
+    this.frameSource = frameSource;
+    pyramidDecoding = prefs.getBoolean(PreferencesActivity.KEY_PYRAMID_DECODE, true);
+    frameRecorder = prefs.getBoolean(PreferencesActivity.KEY_RECORD_FRAMES, false) ?
+        openFrameRecorder(context) : null;
+    this.historyManager = historyManager;
+    this.resultHandler = resultHandler;
+    for (int i = 0; i < size; i++) {
+      threads[i] = new DecodeThread(context, this, i, decodeFormats, baseHints, characterSet,
+          resultPointCallback);
+    }
+  }
+
+  private static MappedFrameRecorder openFrameRecorder(Context context) {
+    File dir = context.getExternalFilesDir(null);
+    if (dir == null) {
+      Log.w(TAG, "No external storage to record frames to");
+      return null;
+    }
+    File file = new File(dir, "frames-" + System.currentTimeMillis() + ".zxfr");
+    try {
+      MappedFrameRecorder recorder = new MappedFrameRecorder(file, RECORDING_BUDGET_BYTES);
+      Log.i(TAG, "Recording frames to " + file);
+      return recorder;
+    } catch (IOException ioe) {
+      Log.w(TAG, "Can't record frames to " + file, ioe);
+      return null;
+    }
+  }
+
+  /**
+   * @return number of workers to use when the caller has no preference: one per spare core,
+   *  capped, since the camera can't deliver frames much faster than a few workers consume them
+   */
+  static int getDefaultSize() {
+    int cores = Runtime.getRuntime().availableProcessors();
+    return Math.max(1, Math.min(cores - 1, MAX_DEFAULT_SIZE));
+  }
+
+  int size() {
+    return threads.length;
+  }
+
+  /**
+   * @return where the workers report each decode's outcome
+   */
+  Handler getResultHandler() {
+    return resultHandler;
+  }
+
+  /**
+   * @return where the workers' frames come from
+   */
+  FrameSource getFrameSource() {
+    return frameSource;
+  }
+
+  /**
+   * @return a number for a frame about to be decoded, different from recent frames' across all
+   *  workers
+   */
+  int nextFrameId() {
+    return frameIds.incrementAndGet();
+  }
+
+  FrameMailbox getFrameMailbox() {
+    return frameMailbox;
+  }
+
+  /**
+   * @return where workers run their format groups concurrently, or null to decode each frame with
+   *  a single reader
+   */
+  ExecutorService getReaderExecutor() {
+    return readerExecutor;
+  }
+
+  /**
+   * @return shared by all workers to skip blurry frames, or null if every frame is decoded
+   */
+  SharpnessFilter getSharpnessFilter() {
+    return sharpnessFilter;
+  }
+
+  /**
+   * @return shared by all workers to skip frames showing nothing new, or null if every frame is
+   *  decoded
+   */
+  SceneChangeDetector getSceneChangeDetector() {
+    return sceneChangeDetector;
+  }
+
+  /**
+   * @return shared by all workers to decode only around barcodes seen in recent frames, or null if
+   *  the whole framing rectangle is always decoded
+   */
+  BarcodeTracker getBarcodeTracker() {
+    return barcodeTracker;
+  }
+
+  /**
+   * @return shared by all workers to try the most often scanned formats first, or null if every
+   *  reader is tried in a fixed order
+   */
+  FormatStatistics getFormatStatistics() {
+    return formatStatistics;
+  }
+
+  /**
+   * @return shared by all workers to gather every barcode in view into one batch, or null if each
+   *  scan ends at the first barcode found
+   */
+  BatchCollector getBatchCollector() {
+    return batchCollector;
+  }
+
+  /**
+   * @return shared by all workers in bulk mode to report each barcode only once while it stays in
+   *  view, or null if scanning stops at the first barcode found
+   */
+  RecentCodeCache getRecentCodes() {
+    return recentCodes;
+  }
+
+  /**
+   * @return shared by all workers to record every frame and what came of it, or null if frames
+   *  aren't recorded
+   */
+  MappedFrameRecorder getFrameRecorder() {
+    return frameRecorder;
+  }
+
+  /**
+   * @return true if workers should try large frames at half resolution first
+   */
+  boolean isPyramidDecoding() {
+    return pyramidDecoding;
+  }
+
+  /**
+   * @return how long decoding one frame should take at most, in ms, or 0 to never try harder
+   */
+  int getFrameBudgetMs() {
+    return frameBudgetMs;
+  }
+
+  int getRareFormatInterval() {
+    return rareFormatInterval;
+  }
+
+  /**
+   * Seeds the format statistics from the scan history. Reads the database, so should be called on
+   * a worker thread.
+   */
+  void loadFormatHistory() {
+    if (formatStatistics != null && historyManager != null) {
+      formatStatistics.addHistory(historyManager.buildFormatCounts());
+    }
+  }
+
+  void start() {
+    for (DecodeThread thread : threads) {
+      thread.start();
+    }
+  }
+
+  /**
+   * Asks the camera for one preview frame for every worker that is not already decoding.
+   */
+  synchronized void requestDecode() {
+    for (int i = 0; i < threads.length; i++) {
+      if (!busy[i]) {
+        busy[i] = true;
+        requestGeneration[i] = generation;
+        frameSource.requestPreviewFrame(threads[i].getHandler(), R.id.decode);
+      }
+    }
+  }
+
+  /**
+   * Streams every preview frame to the workers through the frame mailbox, instead of requesting one
+   * frame per worker and waiting for each failure to come back before asking for the next. Every idle
+   * worker starts taking frames; the rest join as soon as they are done with stale work.
+   */
+  synchronized void startStreaming() {
+    streaming = true;
+    frameSource.startFrameStream(frameMailbox);
+    for (int i = 0; i < threads.length; i++) {
+      if (!busy[i]) {
+        startStreamWorker(i);
+      }
+    }
+  }
+
+  private void startStreamWorker(int index) {
+    busy[index] = true;
+    requestGeneration[index] = generation;
+    Message.obtain(threads[index].getHandler(), R.id.decode_stream).sendToTarget();
+  }
+
+  /**
+   * Puts every idle worker back to work after a result, in bulk mode, without cancelling the
+   * others: streamed workers go back to the mailbox, and the rest ask the camera for a frame.
+   */
+  synchronized void resumeIdleWorkers() {
+    if (!streaming) {
+      requestDecode();
+      return;
+    }
+    for (int i = 0; i < threads.length; i++) {
+      if (!busy[i]) {
+        startStreamWorker(i);
+      }
+    }
+  }
+
+  /**
+   * Marks all outstanding work as stale, typically because another worker already found a result.
+   * Also ends streaming; the camera side should be stopped separately.
+   */
+  synchronized void cancel() {
+    generation++;
+    streaming = false;
+    if (sceneChangeDetector != null) {
+      // Whatever is in front of the camera next time deserves a fresh look
+      sceneChangeDetector.reset();
+    }
+    if (barcodeTracker != null) {
+      // Whatever was being followed has been found; the next barcode may be anywhere
+      barcodeTracker.reset();
+    }
+    if (batchCollector != null) {
+      batchCollector.reset();
+    }
+  }
+
+  /**
+   * @return true if the frame worker {@code index} was given has not been cancelled since
+   */
+  synchronized boolean isCurrent(int index) {
+    return requestGeneration[index] == generation;
+  }
+
+  /**
+   * Called by a worker when it is done with its frame.
+   *
+   * @return true if the work was still current, and so its outcome should be reported
+   */
+  synchronized boolean finish(int index) {
+    busy[index] = false;
+    boolean current = requestGeneration[index] == generation;
+    if (!current && streaming) {
+      // Streaming restarted while this worker was busy with stale work
+      startStreamWorker(index);
+    }
+    return current;
+  }
+
+  void quitSynchronously() {
+    cancel();
+    for (DecodeThread thread : threads) {
+      Message quit = Message.obtain(thread.getHandler(), R.id.quit);
+      quit.sendToTarget();
+    }
+    long deadline = System.currentTimeMillis() + QUIT_TIMEOUT_MS;
+    for (DecodeThread thread : threads) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0L) {
+        break;
+      }
+      try {
+        thread.join(remaining);
+      } catch (InterruptedException e) {
+        // continue
+      }
+    }
+    if (readerExecutor != null) {
+      readerExecutor.shutdown();
+    }
+    if (frameRecorder != null) {
+      // Workers that haven't quit yet find the recorder closed, and stop recording
+      try {
+        frameRecorder.close();
+        Log.i(TAG, "Recorded " + frameRecorder.getRecordedFrameCount() + " frames, left out " +
+            frameRecorder.getSkippedFrameCount() + ", to " + frameRecorder.getFile());
+      } catch (IOException ioe) {
+        Log.w(TAG, "Can't finish recording " + frameRecorder.getFile(), ioe);
+      }
+    }
+    if (sharpnessFilter != null) {
+      Log.d(TAG, "Skipped " + sharpnessFilter.getRejectedFrameCount() + " blurry frames");
+    }
+    if (sceneChangeDetector != null) {
+      Log.d(TAG, "Skipped " + sceneChangeDetector.getSkippedFrameCount() + " unchanged frames");
+    }
+    if (barcodeTracker != null) {
+      Log.d(TAG, "Decoded " + barcodeTracker.getTrackedFrameCount() + " frames from a tracked crop");
+    }
+    if (recentCodes != null) {
+      Log.d(TAG, "Suppressed " + recentCodes.getSuppressedCount() + " repeated sightings in bulk mode");
+    }
+    if (batchCollector != null) {
+      Log.d(TAG, "Delivered " + batchCollector.getBatchCount() + " batches of barcodes");
+    }
+    // Should only grow when the framing rectangle changes size, or more workers start
+    Log.d(TAG, "Allocated " + RecyclableLuminanceSource.getInstanceCount() + " luminance sources and " +
+        RecyclableBinarizer.getInstanceCount() + " binarizers so far");
+    // The scan session is over; let listeners see how it went
+    Log.d(TAG, "Metrics so far:\n" + ScanMetrics.getInstance().publish());
+  }
+
+  private static final class ReaderThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "DecodeReader-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
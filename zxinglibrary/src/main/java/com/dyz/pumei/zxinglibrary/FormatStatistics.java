@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Map;
+
+/**
+ * How often each format has been scanned, from the scan history and from results in this session.
+ * Session results count for more than history, since they describe what is being scanned right
+ * now. Safe to share between decode threads.
+ */
+final class FormatStatistics {
+
+  private static final int HISTORY_WEIGHT = 1;
+  private static final int SESSION_WEIGHT = 4;
+
+  private final int[] counts;
+  private int total;
+  private int version;
+
+  FormatStatistics() {
+    counts = new int[BarcodeFormat.values().length];
+  }
+
+  /**
+   * @param formatCounts number of history items for each format
+   */
+  synchronized void addHistory(Map<BarcodeFormat,Integer> formatCounts) {
+    for (Map.Entry<BarcodeFormat,Integer> entry : formatCounts.entrySet()) {
+      add(entry.getKey(), HISTORY_WEIGHT * entry.getValue());
+    }
+  }
+
+  synchronized void record(BarcodeFormat format) {
+    add(format, SESSION_WEIGHT);
+  }
+
+  private void add(BarcodeFormat format, int weight) {
+    counts[format.ordinal()] += weight;
+    total += weight;
+    version++;
+  }
+
+  /**
+   * @return changes whenever the counts do
+   */
+  synchronized int getVersion() {
+    return version;
+  }
+
+  /**
+   * @param into filled with the weighted count for each format, indexed by ordinal
+   * @return the sum of all weighted counts
+   */
+  synchronized int getCounts(int[] into) {
+    System.arraycopy(counts, 0, into, 0, counts.length);
+    return total;
+  }
+
+}
@@ -106,6 +106,42 @@ public final class Intents {
     public static final String WIDTH = "SCAN_WIDTH";
     public static final String HEIGHT = "SCAN_HEIGHT";
 
+    /**
+     * Optional parameter to specify how many frames may be decoded in parallel, each on its own
+     * thread. Defaults to one per spare CPU core, up to a small limit. If provided, should be an int.
+     */
+    public static final String DECODE_THREAD_COUNT = "SCAN_DECODE_THREAD_COUNT";
+
+    /**
+     * Optional parameter to specify how often formats that are rarely scanned are looked for: on one
+     * frame in this many. 1 looks for every format on every frame. Defaults to 4. If provided,
+     * should be an int.
+     */
+    public static final String RARE_FORMAT_INTERVAL = "SCAN_RARE_FORMAT_INTERVAL";
+
+    /**
+     * Optional parameter to specify roughly how long decoding a single frame may take, in
+     * milliseconds. Frames that look promising but don't decode are tried again with
+     * {@link com.google.zxing.DecodeHintType#PURE_BARCODE} and then
+     * {@link com.google.zxing.DecodeHintType#TRY_HARDER}, each only if it fits. 0 never tries harder,
+     * unless TRY_HARDER is passed as a decode hint, in which case every frame is. Defaults to 40.
+     * If provided, should be an int.
+     */
+    public static final String FRAME_BUDGET_MS = "SCAN_FRAME_BUDGET_MS";
+
+    /**
+     * Set to true to keep scanning after each barcode instead of returning it straight away. Every
+     * barcode scanned is returned together, as {@link #RESULTS}, when the user presses Back.
+     * Specified as a {@code boolean}.
+     */
+    public static final String BULK_MODE = "SCAN_BULK_MODE";
+
+    /**
+     * In bulk mode, how long a barcode must be out of sight before scanning it again counts as a new
+     * scan, in milliseconds. Defaults to 1000. Specified as a long, not an integer!
+     */
+    public static final String BULK_DEDUP_WINDOW_MS = "SCAN_BULK_DEDUP_WINDOW_MS";
+
     /**
      * Desired duration in milliseconds for which to pause after a successful scan before
      * returning to the calling intent. Specified as a long, not an integer!
@@ -170,6 +206,20 @@ public final class Intents {
      */
     public static final String RESULT_BYTE_SEGMENTS_PREFIX = "SCAN_RESULT_BYTE_SEGMENTS_";
 
+    /**
+     * When several barcodes were scanned at once, call
+     * {@link android.content.Intent#getStringArrayExtra(String)} with {@code RESULTS} to get the
+     * contents of all of them. {@link #RESULT} and the other single result extras still describe
+     * the first one.
+     */
+    public static final String RESULTS = "SCAN_RESULTS";
+
+    /**
+     * The formats of the barcodes in {@link #RESULTS}, in the same order. Call
+     * {@link android.content.Intent#getStringArrayExtra(String)} with {@code RESULT_FORMATS}.
+     */
+    public static final String RESULT_FORMATS = "SCAN_RESULT_FORMATS";
+
     /**
      * Setting this to false will not save scanned codes in the history. Specified as a {@code boolean}.
      */
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Decides when a frame is first decoded at half resolution, and provides that half-resolution
+ * copy. Large, close-up barcodes decode just as well from a quarter of the pixels. The full
+ * resolution is only tried when the half-resolution pass reported candidate points without finding
+ * a result, and, so that small barcodes which report no candidates at half resolution are still
+ * found, on every few frames regardless. Not thread-safe: one instance belongs to one decode thread.
+ */
+final class LuminancePyramid {
+
+  static final int SCALE = 2;
+
+  private static final int MIN_PYRAMID_PIXELS = 320 * 240;
+  private static final int FULL_RESOLUTION_INTERVAL = 3;
+
+  private DownsampledSource downsampled;
+  private int frames;
+
+  /**
+   * @return a half-resolution copy of {@code source}, or null if it is too small to bother
+   */
+  LuminanceSource downsample(LuminanceSource source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width * height < MIN_PYRAMID_PIXELS) {
+      return null;
+    }
+    if (downsampled == null ||
+        downsampled.getWidth() != width / SCALE || downsampled.getHeight() != height / SCALE) {
+      downsampled = new DownsampledSource(width / SCALE, height / SCALE);
+    }
+    downsampled.downsample(source);
+    return downsampled;
+  }
+
+  /**
+   * Called after the half-resolution pass found nothing.
+   *
+   * @param foundCandidates whether the readers reported any candidate points during that pass
+   * @return true if the frame should be decoded again at full resolution
+   */
+  boolean shouldEscalate(boolean foundCandidates) {
+    frames++;
+    return foundCandidates || frames % FULL_RESOLUTION_INTERVAL == 0;
+  }
+
+  /**
+   * Scales the points of a result found at half resolution up to full resolution, in place.
+   */
+  static void scaleResultPoints(Result result) {
+    ResultPoint[] points = result.getResultPoints();
+    if (points != null) {
+      for (int i = 0; i < points.length; i++) {
+        ResultPoint point = points[i];
+        if (point != null) {
+          points[i] = new ResultPoint(point.getX() * SCALE, point.getY() * SCALE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Each pixel is the average of a 2x2 block of the source; the array is reused from frame to frame.
+   */
+  private static final class DownsampledSource extends LuminanceSource {
+
+    private final byte[] luminances;
+
+    DownsampledSource(int width, int height) {
+      super(width, height);
+      luminances = new byte[width * height];
+    }
+
+    void downsample(LuminanceSource source) {
+      byte[] sourceLuminances = source.getMatrix();
+      int sourceWidth = source.getWidth();
+      int width = getWidth();
+      int height = getHeight();
+      for (int y = 0; y < height; y++) {
+        int topOffset = 2 * y * sourceWidth;
+        int bottomOffset = topOffset + sourceWidth;
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+          int sourceX = 2 * x;
+          int sum = (sourceLuminances[topOffset + sourceX] & 0xff) +
+              (sourceLuminances[topOffset + sourceX + 1] & 0xff) +
+              (sourceLuminances[bottomOffset + sourceX] & 0xff) +
+              (sourceLuminances[bottomOffset + sourceX + 1] & 0xff);
+          luminances[offset + x] = (byte) (sum >> 2);
+        }
+      }
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+      if (y < 0 || y >= getHeight()) {
+        throw new IllegalArgumentException("Requested row is outside the image: " + y);
+      }
+      int width = getWidth();
+      if (row == null || row.length < width) {
+        row = new byte[width];
+      }
+      System.arraycopy(luminances, y * width, row, 0, width);
+      return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+      return luminances;
+    }
+  }
+
+}
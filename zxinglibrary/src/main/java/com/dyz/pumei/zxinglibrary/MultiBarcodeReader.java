@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds every barcode in a frame rather than just the first. QR Codes are left to
+ * {@link QRCodeMultiReader}, which finds several finder patterns in one pass; every other format
+ * goes through {@link GenericMultipleBarcodeReader}, which keeps decoding the parts of the image
+ * around each barcode it has found. Results from both are merged, dropping any barcode found twice.
+ *
+ * Not thread-safe: one instance belongs to one decode thread.
+ */
+final class MultiBarcodeReader {
+
+  static final Result[] NO_RESULTS = new Result[0];
+
+  private final Map<DecodeHintType,Object> hints;
+  private final MultiFormatReader delegate;
+  private final GenericMultipleBarcodeReader genericReader;
+  private final QRCodeMultiReader qrCodeReader;
+
+  MultiBarcodeReader(Map<DecodeHintType,Object> hints) {
+    this.hints = hints;
+    @SuppressWarnings("unchecked")
+    Collection<BarcodeFormat> formats = (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    Set<BarcodeFormat> remaining = formats == null || formats.isEmpty() ?
+        EnumSet.allOf(BarcodeFormat.class) : EnumSet.copyOf(formats);
+    qrCodeReader = remaining.remove(BarcodeFormat.QR_CODE) ? new QRCodeMultiReader() : null;
+    if (remaining.isEmpty()) {
+      delegate = null;
+      genericReader = null;
+    } else {
+      Map<DecodeHintType,Object> genericHints = new EnumMap<>(hints);
+      genericHints.put(DecodeHintType.POSSIBLE_FORMATS, remaining);
+      delegate = new MultiFormatReader();
+      delegate.setHints(genericHints);
+      genericReader = new GenericMultipleBarcodeReader(new StatefulReader(delegate));
+    }
+  }
+
+  /**
+   * @return every barcode found, each once, or {@link #NO_RESULTS}
+   */
+  Result[] decode(BinaryBitmap bitmap) {
+    List<Result> results = new ArrayList<>();
+    Set<String> keys = new HashSet<>();
+    if (qrCodeReader != null) {
+      try {
+        addAll(qrCodeReader.decodeMultiple(bitmap, hints), results, keys);
+      } catch (NotFoundException nfe) {
+        // continue
+      }
+    }
+    if (genericReader != null) {
+      try {
+        addAll(genericReader.decodeMultiple(bitmap), results, keys);
+      } catch (NotFoundException nfe) {
+        // continue
+      } finally {
+        delegate.reset();
+      }
+    }
+    return results.isEmpty() ? NO_RESULTS : results.toArray(new Result[results.size()]);
+  }
+
+  private static void addAll(Result[] found, List<Result> results, Set<String> keys) {
+    for (Result result : found) {
+      if (keys.add(keyOf(result))) {
+        results.add(result);
+      }
+    }
+  }
+
+  /**
+   * @return what two results have in common when they are the same barcode
+   */
+  static String keyOf(Result result) {
+    return result.getBarcodeFormat() + ":" + result.getText();
+  }
+
+  /**
+   * Lets {@link GenericMultipleBarcodeReader} use a {@link MultiFormatReader} whose hints were set
+   * once up front. The generic reader passes hints on every call, and
+   * {@link MultiFormatReader#decode(BinaryBitmap, Map)} would rebuild all its readers each time.
+   */
+  private static final class StatefulReader implements Reader {
+
+    private final MultiFormatReader reader;
+
+    StatefulReader(MultiFormatReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+      return reader.decodeWithState(image);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType,?> hints) throws NotFoundException {
+      return decode(image);
+    }
+
+    @Override
+    public void reset() {
+      reader.reset();
+    }
+  }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dyz.pumei.zxinglibrary;
+
+import android.util.Log;
+
+import com.dyz.pumei.zxinglibrary.metrics.LatencyHistogram;
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits the formats to decode into groups (1D product, 1D industrial, QR Code, Data Matrix, ...)
+ * and runs each group's reader concurrently on the same frame, so that a frame costs about as much
+ * time as the slowest single group rather than the sum of all of them. The first group to find a
+ * barcode wins; groups that haven't started yet are skipped.
+ *
+ * Every group keeps its own {@link RecyclableBinarizer} over the shared luminance source, since
+ * binarizers cache state and aren't safe to share between threads. Not thread-safe itself: one
+ * instance belongs to one decode thread.
+ */
+final class ParallelFormatReader {
+
+  private static final String TAG = ParallelFormatReader.class.getSimpleName();
+
+  private static final Object NO_RESULT = new Object();
+
+  private final ReaderGroup[] groups;
+  private final Executor executor;
+  private final BlockingQueue<Object> completions;
+  private int outstanding;
+  private volatile boolean cancelled;
+
+  ParallelFormatReader(Map<DecodeHintType,Object> hints, Executor executor) {
+    this.executor = executor;
+    List<ReaderGroup> groupList = new ArrayList<>();
+    @SuppressWarnings("unchecked")
+    Collection<BarcodeFormat> formats = (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    Set<BarcodeFormat> remaining = formats == null || formats.isEmpty() ?
+        EnumSet.allOf(BarcodeFormat.class) : EnumSet.copyOf(formats);
+    addGroup(groupList, "1D product", DecodeFormatManager.PRODUCT_FORMATS, remaining, hints);
+    addGroup(groupList, "1D industrial", DecodeFormatManager.INDUSTRIAL_FORMATS, remaining, hints);
+    addGroup(groupList, "QR Code", DecodeFormatManager.QR_CODE_FORMATS, remaining, hints);
+    addGroup(groupList, "Data Matrix", DecodeFormatManager.DATA_MATRIX_FORMATS, remaining, hints);
+    addGroup(groupList, "Aztec", DecodeFormatManager.AZTEC_FORMATS, remaining, hints);
+    addGroup(groupList, "PDF417", DecodeFormatManager.PDF417_FORMATS, remaining, hints);
+    addGroup(groupList, "other", EnumSet.copyOf(remaining), remaining, hints);
+    groups = groupList.toArray(new ReaderGroup[groupList.size()]);
+    completions = new ArrayBlockingQueue<>(groups.length);
+  }
+
+  private void addGroup(List<ReaderGroup> groupList,
+                        String name,
+                        Set<BarcodeFormat> groupFormats,
+                        Set<BarcodeFormat> remaining,
+                        Map<DecodeHintType,Object> hints) {
+    Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+    for (BarcodeFormat format : groupFormats) {
+      if (remaining.remove(format)) {
+        formats.add(format);
+      }
+    }
+    if (!formats.isEmpty()) {
+      Map<DecodeHintType,Object> groupHints = new EnumMap<>(hints);
+      groupHints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+      groupList.add(new ReaderGroup(name, groupHints));
+    }
+  }
+
+  /**
+   * Decodes the source with every group at once; the first group runs on the calling thread.
+   * Groups still running when a result is returned carry on in the background until
+   * {@link #awaitIdle()}, so the caller must not release the frame behind {@code source} before then.
+   *
+   * @return the first result found, or null if no group found one
+   */
+  Result decode(LuminanceSource source) {
+    awaitIdle();
+    cancelled = false;
+    outstanding = groups.length;
+    for (int i = 1; i < groups.length; i++) {
+      groups[i].source = source;
+      try {
+        executor.execute(groups[i]);
+      } catch (RejectedExecutionException ree) {
+        // Shutting down; this group simply finds nothing
+        groups[i].source = null;
+        completions.add(NO_RESULT);
+      }
+    }
+    groups[0].source = source;
+    groups[0].run();
+    try {
+      while (outstanding > 0) {
+        Object completion = completions.take();
+        outstanding--;
+        if (completion != NO_RESULT) {
+          cancelled = true;
+          return (Result) completion;
+        }
+      }
+    } catch (InterruptedException ie) {
+      cancelled = true;
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * Blocks until every group from the last {@link #decode(LuminanceSource)} has finished.
+   */
+  void awaitIdle() {
+    boolean interrupted = false;
+    while (outstanding > 0) {
+      try {
+        completions.take();
+        outstanding--;
+      } catch (InterruptedException ie) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  void logTimings() {
+    for (ReaderGroup group : groups) {
+      long runs = group.runs.get();
+      if (runs > 0) {
+        Log.d(TAG, group.name + ": " + runs + " runs, " + group.hits.get() + " found, average " +
+            TimeUnit.NANOSECONDS.toMicros(group.totalNanos.get() / runs) + " us, max " +
+            TimeUnit.NANOSECONDS.toMicros(group.maxNanos.get()) + " us");
+      }
+    }
+  }
+
+  /**
+   * One group of formats, with its own reader and timing statistics.
+   */
+  private final class ReaderGroup implements Runnable {
+
+    private final String name;
+    private final MultiFormatReader reader;
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LatencyHistogram times;
+    private LuminanceSource source;
+    private final BinarizerCache binarizerCache = new BinarizerCache();
+
+    ReaderGroup(String name, Map<DecodeHintType,Object> hints) {
+      this.name = name;
+      times = ScanMetrics.getInstance().histogram(ScanMetrics.READER_PREFIX + name);
+      reader = new MultiFormatReader();
+      reader.setHints(hints);
+    }
+
+    @Override
+    public void run() {
+      LuminanceSource theSource = source;
+      source = null;
+      Object completion = NO_RESULT;
+      try {
+        if (!cancelled) {
+          completion = tryDecode(theSource);
+        }
+      } finally {
+        // Always posted, or the caller would wait for this group forever
+        completions.add(completion);
+      }
+    }
+
+    private Object tryDecode(LuminanceSource theSource) {
+      long start = System.nanoTime();
+      try {
+        Result result = reader.decodeWithState(new BinaryBitmap(binarizerCache.get(theSource)));
+        hits.incrementAndGet();
+        return result;
+      } catch (ReaderException re) {
+        // continue
+      } catch (RuntimeException re) {
+        // Some of the readers have bugs that throw on odd input; count it as nothing found
+        Log.w(TAG, name + " failed", re);
+      } finally {
+        reader.reset();
+        long elapsed = System.nanoTime() - start;
+        times.recordNanos(elapsed);
+        runs.incrementAndGet();
+        totalNanos.addAndGet(elapsed);
+        long max;
+        while (elapsed > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsed)) {
+          // retry
+        }
+      }
+      return NO_RESULT;
+    }
+  }
+
+}
@@ -41,6 +41,16 @@ public final class PreferencesActivity extends Activity {
   public static final String KEY_COPY_TO_CLIPBOARD = "preferences_copy_to_clipboard";
   public static final String KEY_FRONT_LIGHT_MODE = "preferences_front_light_mode";
   public static final String KEY_BULK_MODE = "preferences_bulk_mode";
+  public static final String KEY_CAMERA2 = "preferences_camera2";
+  public static final String KEY_STREAM_FRAMES = "preferences_stream_frames";
+  public static final String KEY_PARALLEL_READERS = "preferences_parallel_readers";
+  public static final String KEY_SKIP_BLURRY_FRAMES = "preferences_skip_blurry_frames";
+  public static final String KEY_SKIP_STATIC_FRAMES = "preferences_skip_static_frames";
+  public static final String KEY_TRACK_BARCODES = "preferences_track_barcodes";
+  public static final String KEY_ADAPTIVE_FORMATS = "preferences_adaptive_formats";
+  public static final String KEY_PYRAMID_DECODE = "preferences_pyramid_decode";
+  public static final String KEY_MULTI_BARCODE = "preferences_multi_barcode";
+  public static final String KEY_RECORD_FRAMES = "preferences_record_frames";
   public static final String KEY_REMEMBER_DUPLICATES = "preferences_remember_duplicates";
   public static final String KEY_ENABLE_HISTORY = "preferences_history";
   public static final String KEY_SUPPLEMENTAL = "preferences_supplemental";
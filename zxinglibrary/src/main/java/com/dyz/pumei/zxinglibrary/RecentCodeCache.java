@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which barcodes were seen recently in bulk mode, so that one held in front of the
+ * camera is reported once rather than on every frame. A barcode counts as new again only after it
+ * has been out of sight for the whole window; every sighting, reported or not, restarts it.
+ *
+ * Entries are kept in the order they were last seen, so expired ones are always at the head and
+ * the map doubles as a time index. It is also bounded, dropping the least recently seen barcodes
+ * first, so that an endless stream of distinct barcodes doesn't grow it without limit. Shared by
+ * all decode threads.
+ */
+final class RecentCodeCache {
+
+  private static final int MAX_CODES = 1024;
+
+  private final long windowNanos;
+  private final Map<String,Long> lastSeen;
+  private long suppressedCount;
+
+  /**
+   * @param windowMs how long a barcode must be out of sight before it is reported again
+   */
+  RecentCodeCache(long windowMs) {
+    windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    lastSeen = new LinkedHashMap<String,Long>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,Long> eldest) {
+        return size() > MAX_CODES;
+      }
+    };
+  }
+
+  /**
+   * Records a sighting of each barcode.
+   *
+   * @return the barcodes among {@code results} not seen within the window, possibly none
+   */
+  synchronized Result[] filter(Result[] results) {
+    long now = System.nanoTime();
+    expire(now);
+    List<Result> fresh = new ArrayList<>(results.length);
+    for (Result result : results) {
+      String key = MultiBarcodeReader.keyOf(result);
+      // Remove first so that the entry moves to the tail, keeping the map in order of last sighting
+      if (lastSeen.remove(key) == null) {
+        fresh.add(result);
+      } else {
+        suppressedCount++;
+      }
+      lastSeen.put(key, now);
+    }
+    return fresh.size() == results.length ? results : fresh.toArray(new Result[fresh.size()]);
+  }
+
+  private void expire(long now) {
+    Iterator<Long> sightings = lastSeen.values().iterator();
+    while (sightings.hasNext() && now - sightings.next() >= windowNanos) {
+      sightings.remove();
+    }
+  }
+
+  /**
+   * @return number of sightings not reported because the barcode had been seen recently
+   */
+  synchronized long getSuppressedCount() {
+    return suppressedCount;
+  }
+
+}
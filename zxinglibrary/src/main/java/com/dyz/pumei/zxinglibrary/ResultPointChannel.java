@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded ring of result point coordinates from one thread to another, with no locks on either
+ * side: exactly one thread may {@link #offer(float, float, int)} and exactly one may
+ * {@link #drain(Sink)}. Each side only writes its own index and publishes it with an ordered
+ * write, which is all the other side needs to see the slots it covers. When the ring is full, new
+ * points are dropped rather than the producer waiting.
+ */
+final class ResultPointChannel {
+
+  /**
+   * Receives drained points.
+   */
+  interface Sink {
+    void accept(float x, float y, int frameId);
+  }
+
+  private static final int CAPACITY = 32; // a power of two
+  private static final int MASK = CAPACITY - 1;
+
+  private final Thread producer;
+  private final float[] xs;
+  private final float[] ys;
+  private final int[] frameIds;
+  // Next slot to read, written by the consumer only
+  private final AtomicLong head;
+  // Next slot to write, written by the producer only
+  private final AtomicLong tail;
+  // The producer's last look at head, so that it reads the consumer's index only when it must
+  private long producerHead;
+
+  ResultPointChannel(Thread producer) {
+    this.producer = producer;
+    xs = new float[CAPACITY];
+    ys = new float[CAPACITY];
+    frameIds = new int[CAPACITY];
+    head = new AtomicLong();
+    tail = new AtomicLong();
+  }
+
+  /**
+   * @return the thread allowed to offer points
+   */
+  Thread getProducer() {
+    return producer;
+  }
+
+  /**
+   * Called by the producer only.
+   *
+   * @return false if the ring was full and the point was dropped
+   */
+  boolean offer(float x, float y, int frameId) {
+    long currentTail = tail.get();
+    if (currentTail - producerHead >= CAPACITY) {
+      producerHead = head.get();
+      if (currentTail - producerHead >= CAPACITY) {
+        return false;
+      }
+    }
+    int index = (int) currentTail & MASK;
+    xs[index] = x;
+    ys[index] = y;
+    frameIds[index] = frameId;
+    // Publishes the slot written above
+    tail.lazySet(currentTail + 1);
+    return true;
+  }
+
+  /**
+   * Called by the consumer only; hands every point offered so far to {@code sink}, oldest first.
+   *
+   * @return number of points drained
+   */
+  int drain(Sink sink) {
+    long currentHead = head.get();
+    long currentTail = tail.get();
+    for (long i = currentHead; i < currentTail; i++) {
+      int index = (int) i & MASK;
+      sink.accept(xs[index], ys[index], frameIds[index]);
+    }
+    // Hands the slots back to the producer
+    head.lazySet(currentTail);
+    return (int) (currentTail - currentHead);
+  }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Notices when the camera keeps seeing the same thing, so that a scene which already failed to
+ * decode isn't decoded again and again. Each frame is reduced to a coarse signature, the average
+ * luminance of each cell of a small grid over the framing rectangle, and compared with the
+ * signature of the last frame that the readers ran on and failed to decode. Frames that are let
+ * through but then never reach a reader, such as blurry ones, don't become the reference. As a
+ * safety net, a frame is let through anyway after a number of skipped ones. Safe to share between
+ * decode threads.
+ */
+final class SceneChangeDetector {
+
+  private static final int GRID_SIZE = 16;
+  private static final int SAMPLE_STEP = 4;
+  private static final int MIN_MEAN_DIFFERENCE = 4;
+  private static final int MAX_SKIPPED_FRAMES = 15;
+
+  private final int[] reference;
+  private final int[] signature;
+  private boolean hasReference;
+  private int skippedInARow;
+  private long skippedFrames;
+
+  SceneChangeDetector() {
+    reference = new int[GRID_SIZE * GRID_SIZE];
+    signature = new int[GRID_SIZE * GRID_SIZE];
+  }
+
+  /**
+   * @return true if the frame differs enough from the reference to be worth decoding; the
+   *  reference itself is left alone
+   */
+  synchronized boolean shouldDecode(LuminanceSource source) {
+    if (!hasReference || skippedInARow >= MAX_SKIPPED_FRAMES || !computeSignature(source)) {
+      return true;
+    }
+    if (differsFromReference()) {
+      return true;
+    }
+    skippedInARow++;
+    skippedFrames++;
+    return false;
+  }
+
+  /**
+   * Makes the frame the reference, once every reader has failed on it.
+   */
+  synchronized void setReference(LuminanceSource source) {
+    if (computeSignature(source)) {
+      System.arraycopy(signature, 0, reference, 0, signature.length);
+      hasReference = true;
+    } else {
+      hasReference = false;
+    }
+    skippedInARow = 0;
+  }
+
+  /**
+   * Forgets the reference frame, so that the next frame is decoded whatever it shows.
+   */
+  synchronized void reset() {
+    hasReference = false;
+    skippedInARow = 0;
+  }
+
+  synchronized long getSkippedFrameCount() {
+    return skippedFrames;
+  }
+
+  /**
+   * @return false if the frame is too small to have a signature
+   */
+  private boolean computeSignature(LuminanceSource source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width < GRID_SIZE || height < GRID_SIZE) {
+      return false;
+    }
+    byte[] luminances = source.getMatrix();
+    int cellWidth = width / GRID_SIZE;
+    int cellHeight = height / GRID_SIZE;
+    for (int cellY = 0; cellY < GRID_SIZE; cellY++) {
+      int top = cellY * cellHeight;
+      for (int cellX = 0; cellX < GRID_SIZE; cellX++) {
+        int left = cellX * cellWidth;
+        int sum = 0;
+        int count = 0;
+        for (int y = top; y < top + cellHeight; y += SAMPLE_STEP) {
+          int offset = y * width;
+          for (int x = left; x < left + cellWidth; x += SAMPLE_STEP) {
+            sum += luminances[offset + x] & 0xff;
+            count++;
+          }
+        }
+        signature[cellY * GRID_SIZE + cellX] = sum / count;
+      }
+    }
+    return true;
+  }
+
+  private boolean differsFromReference() {
+    int totalDifference = 0;
+    for (int i = 0; i < signature.length; i++) {
+      totalDifference += Math.abs(signature[i] - reference[i]);
+    }
+    return totalDifference >= MIN_MEAN_DIFFERENCE * signature.length;
+  }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.dyz.pumei.zxinglibrary.metrics.LatencyHistogram;
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tries one format at a time, most often scanned first according to {@link FormatStatistics}, instead
+ * of every enabled reader in a fixed order. Once enough has been scanned to tell, formats that make up
+ * only a small share of scans are time-sliced: each is only tried on one frame in so many, staggered
+ * so that they don't all land on the same frame. Until then, every format is tried on every frame.
+ *
+ * 1D formats are read row by row, and one reader for all of them scans each row once where a reader
+ * per format would scan it once per format. So the 1D formats share one reader, as they do in
+ * {@link MultiFormatReader}, and only a 1D format that has turned out to be rare gets a reader of its
+ * own, so that it can be left out of most frames. UPC and EAN always stay together. Each 2D format has
+ * its own reader; they share the black matrix kept by the bitmap, so splitting them costs nothing.
+ * Not thread-safe: one instance belongs to one decode thread.
+ */
+final class ScheduledFormatReader {
+
+  static final int DEFAULT_RARE_FORMAT_INTERVAL = 4;
+
+  private static final int MIN_OBSERVATIONS = 20;
+  private static final int RARE_PERCENT = 5;
+
+  private static final Set<BarcodeFormat> UPC_EAN_FORMATS =
+      EnumSet.of(BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8);
+
+  private static final Set<BarcodeFormat> ONE_D_FORMATS = EnumSet.of(
+      BarcodeFormat.UPC_A,
+      BarcodeFormat.UPC_E,
+      BarcodeFormat.EAN_13,
+      BarcodeFormat.EAN_8,
+      BarcodeFormat.CODE_39,
+      BarcodeFormat.CODE_93,
+      BarcodeFormat.CODE_128,
+      BarcodeFormat.ITF,
+      BarcodeFormat.CODABAR,
+      BarcodeFormat.RSS_14,
+      BarcodeFormat.RSS_EXPANDED);
+
+  // Same order MultiFormatReader would try them in
+  private static final BarcodeFormat[] DEFAULT_ORDER = {
+      BarcodeFormat.UPC_A,
+      BarcodeFormat.CODE_39,
+      BarcodeFormat.CODE_93,
+      BarcodeFormat.CODE_128,
+      BarcodeFormat.ITF,
+      BarcodeFormat.CODABAR,
+      BarcodeFormat.RSS_14,
+      BarcodeFormat.RSS_EXPANDED,
+      BarcodeFormat.QR_CODE,
+      BarcodeFormat.DATA_MATRIX,
+      BarcodeFormat.AZTEC,
+      BarcodeFormat.PDF_417,
+      BarcodeFormat.MAXICODE,
+  };
+
+  private final Map<DecodeHintType,Object> hints;
+  private final FormatStatistics statistics;
+  private final int rareFormatInterval;
+  // The smallest groups of formats that can be scheduled on their own, in the default order
+  private final List<Set<BarcodeFormat>> units;
+  // Readers made so far, by the formats they read, so that regrouping doesn't make them again
+  private final Map<Set<BarcodeFormat>,FormatReader> readerCache;
+  private final FormatReader[] readers;
+  private int readerCount;
+  private final int[] counts;
+  private int seenVersion = -1;
+  private int frames;
+
+  /**
+   * @param rareFormatInterval rarely scanned formats are tried on one frame in this many; 1 tries
+   *  every format on every frame, only reordering them
+   */
+  ScheduledFormatReader(Map<DecodeHintType,Object> hints,
+                        FormatStatistics statistics,
+                        int rareFormatInterval) {
+    this.hints = hints;
+    this.statistics = statistics;
+    this.rareFormatInterval = Math.max(1, rareFormatInterval);
+    @SuppressWarnings("unchecked")
+    Collection<BarcodeFormat> formats = (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    Set<BarcodeFormat> remaining = formats == null || formats.isEmpty() ?
+        EnumSet.allOf(BarcodeFormat.class) : EnumSet.copyOf(formats);
+    units = new ArrayList<>();
+    for (BarcodeFormat format : DEFAULT_ORDER) {
+      Set<BarcodeFormat> unit = EnumSet.noneOf(BarcodeFormat.class);
+      if (format == BarcodeFormat.UPC_A) {
+        for (BarcodeFormat upcEanFormat : UPC_EAN_FORMATS) {
+          if (remaining.remove(upcEanFormat)) {
+            unit.add(upcEanFormat);
+          }
+        }
+      } else if (remaining.remove(format)) {
+        unit.add(format);
+      }
+      if (!unit.isEmpty()) {
+        units.add(unit);
+      }
+    }
+    readerCache = new HashMap<>();
+    readers = new FormatReader[units.size()];
+    counts = new int[BarcodeFormat.values().length];
+  }
+
+  /**
+   * @param deadlineNanos once {@link System#nanoTime()} has passed this, no further reader is started
+   *  on the frame; the first scheduled one always runs
+   * @return the first result found, or null if none of the formats scheduled for this frame is there
+   */
+  Result decode(BinaryBitmap bitmap, long deadlineNanos) {
+    updateSchedule();
+    frames++;
+    boolean started = false;
+    for (int i = 0; i < readerCount; i++) {
+      FormatReader formatReader = readers[i];
+      if (formatReader.rare && (frames + formatReader.defaultIndex) % rareFormatInterval != 0) {
+        continue;
+      }
+      if (started && System.nanoTime() > deadlineNanos) {
+        break;
+      }
+      started = true;
+      long start = System.nanoTime();
+      try {
+        // The bitmap keeps its black matrix, so 2D readers after the first don't binarize again
+        return formatReader.reader.decodeWithState(bitmap);
+      } catch (ReaderException re) {
+        // continue
+      } finally {
+        formatReader.reader.reset();
+        formatReader.times.recordNanos(System.nanoTime() - start);
+      }
+    }
+    return null;
+  }
+
+  private void updateSchedule() {
+    int version = statistics.getVersion();
+    if (version == seenVersion) {
+      return;
+    }
+    seenVersion = version;
+    int total = statistics.getCounts(counts);
+    boolean enoughObservations = total >= MIN_OBSERVATIONS;
+
+    // Common 1D formats together, rare 1D formats and 2D formats alone
+    readerCount = 0;
+    Set<BarcodeFormat> commonOneD = EnumSet.noneOf(BarcodeFormat.class);
+    int commonOneDIndex = -1;
+    for (int i = 0; i < units.size(); i++) {
+      Set<BarcodeFormat> unit = units.get(i);
+      boolean rare = enoughObservations && isRare(weigh(unit), total);
+      if (!rare && ONE_D_FORMATS.containsAll(unit)) {
+        commonOneD.addAll(unit);
+        if (commonOneDIndex < 0) {
+          commonOneDIndex = i;
+        }
+      } else {
+        addReader(unit, i, total);
+      }
+    }
+    if (!commonOneD.isEmpty()) {
+      addReader(commonOneD, commonOneDIndex, total);
+    }
+
+    // Insertion sort, most scanned first, otherwise in the default order; there are only a few
+    for (int i = 1; i < readerCount; i++) {
+      FormatReader formatReader = readers[i];
+      int j = i - 1;
+      while (j >= 0 && comesBefore(formatReader, readers[j])) {
+        readers[j + 1] = readers[j];
+        j--;
+      }
+      readers[j + 1] = formatReader;
+    }
+  }
+
+  private void addReader(Set<BarcodeFormat> formats, int defaultIndex, int total) {
+    FormatReader formatReader = readerCache.get(formats);
+    if (formatReader == null) {
+      Map<DecodeHintType,Object> readerHints = new EnumMap<>(hints);
+      Set<BarcodeFormat> readerFormats = EnumSet.copyOf(formats);
+      readerHints.put(DecodeHintType.POSSIBLE_FORMATS, readerFormats);
+      formatReader = new FormatReader(readerFormats, readerHints, defaultIndex);
+      readerCache.put(readerFormats, formatReader);
+    }
+    formatReader.weight = weigh(formats);
+    formatReader.rare = total >= MIN_OBSERVATIONS && isRare(formatReader.weight, total);
+    readers[readerCount++] = formatReader;
+  }
+
+  private int weigh(Set<BarcodeFormat> formats) {
+    int weight = 0;
+    for (BarcodeFormat format : formats) {
+      weight += counts[format.ordinal()];
+    }
+    return weight;
+  }
+
+  private static boolean isRare(int weight, int total) {
+    return weight * 100L < (long) total * RARE_PERCENT;
+  }
+
+  private static boolean comesBefore(FormatReader a, FormatReader b) {
+    return a.weight > b.weight || (a.weight == b.weight && a.defaultIndex < b.defaultIndex);
+  }
+
+  private static final class FormatReader {
+
+    private final Set<BarcodeFormat> formats;
+    private final MultiFormatReader reader;
+    private final int defaultIndex;
+    private final LatencyHistogram times;
+    private int weight;
+    private boolean rare;
+
+    FormatReader(Set<BarcodeFormat> formats, Map<DecodeHintType,Object> hints, int defaultIndex) {
+      this.formats = formats;
+      this.defaultIndex = defaultIndex;
+      reader = new MultiFormatReader();
+      reader.setHints(hints);
+      StringBuilder name = new StringBuilder(ScanMetrics.READER_PREFIX);
+      for (BarcodeFormat format : formats) {
+        if (name.length() > ScanMetrics.READER_PREFIX.length()) {
+          name.append('+');
+        }
+        name.append(format);
+      }
+      times = ScanMetrics.getInstance().histogram(name.toString());
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Estimates how sharp each frame is, so that frames too blurry to decode, typically while the
+ * camera is still focusing, can be skipped before any binarization. The score is the variance of a
+ * Laplacian (a -1 4 -1 cross) sampled on a sparse grid of the cropped frame, which reads only a
+ * small fraction of the pixels.
+ *
+ * The threshold adapts to the scene: it is a fraction of the best score seen recently, and that
+ * peak decays a little with every frame, so a scene that is never very sharp still gets decoded.
+ * Safe to share between decode threads.
+ */
+public final class SharpnessFilter {
+
+  private static final int GRID_STEP = 4;
+  private static final float THRESHOLD_FRACTION = 0.35f;
+  private static final float SHARP_FRACTION = 0.75f;
+  private static final float PEAK_DECAY = 0.95f;
+  private static final int WARM_UP_FRAMES = 5;
+
+  private float peakScore;
+  private int frames;
+  private long rejectedFrames;
+  private volatile float lastScore;
+
+  /**
+   * @return sharpness score of the frame, higher meaning sharper; 0 for a flat frame
+   */
+  public static float score(LuminanceSource source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width <= 2 * GRID_STEP || height <= 2 * GRID_STEP) {
+      return 0.0f;
+    }
+    byte[] luminances = source.getMatrix();
+    long sum = 0;
+    long sumSquares = 0;
+    int count = 0;
+    for (int y = GRID_STEP; y < height - GRID_STEP; y += GRID_STEP) {
+      int offset = y * width;
+      for (int x = GRID_STEP; x < width - GRID_STEP; x += GRID_STEP) {
+        int center = offset + x;
+        int laplacian = 4 * (luminances[center] & 0xff) -
+            (luminances[center - 1] & 0xff) -
+            (luminances[center + 1] & 0xff) -
+            (luminances[center - width] & 0xff) -
+            (luminances[center + width] & 0xff);
+        sum += laplacian;
+        sumSquares += laplacian * laplacian;
+        count++;
+      }
+    }
+    float mean = (float) sum / count;
+    return (float) sumSquares / count - mean * mean;
+  }
+
+  /**
+   * Updates the threshold with a frame's score.
+   *
+   * @param score the frame's {@link #score(LuminanceSource)}
+   * @return false if the frame is too blurry to be worth decoding
+   */
+  boolean accept(float score) {
+    lastScore = score;
+    synchronized (this) {
+      peakScore = Math.max(score, peakScore * PEAK_DECAY);
+      if (frames < WARM_UP_FRAMES) {
+        frames++;
+        return true;
+      }
+      if (score < peakScore * THRESHOLD_FRACTION) {
+        rejectedFrames++;
+        return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * @return true if a frame with this score is about as sharp as recent frames get, and so worth
+   *  spending extra effort on
+   */
+  synchronized boolean isSharp(float score) {
+    return frames >= WARM_UP_FRAMES && score >= peakScore * SHARP_FRACTION;
+  }
+
+  /**
+   * @return score of the most recent frame
+   */
+  public float getLastScore() {
+    return lastScore;
+  }
+
+  /**
+   * @return score below which frames are currently skipped
+   */
+  public synchronized float getThreshold() {
+    return peakScore * THRESHOLD_FRACTION;
+  }
+
+  public synchronized long getRejectedFrameCount() {
+    return rejectedFrames;
+  }
+
+}
@@ -32,4 +32,11 @@ final class ViewfinderResultPointCallback implements ResultPointCallback {
     viewfinderView.addPossibleResultPoint(point);
   }
 
+  /**
+   * Like {@link #foundPossibleResultPoint(ResultPoint)}, without building a point first.
+   */
+  void foundPossibleResultPoint(float x, float y, int frameId) {
+    viewfinderView.addPossibleResultPoint(x, y, frameId);
+  }
+
 }
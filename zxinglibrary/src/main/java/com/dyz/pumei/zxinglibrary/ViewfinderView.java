@@ -16,35 +16,57 @@
 
 package com.dyz.pumei.zxinglibrary;
 
+import com.dyz.pumei.zxinglibrary.camera.CameraGeometry;
 import com.dyz.pumei.zxinglibrary.camera.CameraManager;
 import com.google.zxing.ResultPoint;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This view is overlaid on top of the camera preview. It adds the viewfinder rectangle and partial
  * transparency outside it, as well as the laser scanner animation and result points.
  *
+ * The mask outside the viewfinder rectangle is drawn once into an alpha-only bitmap, and again
+ * only when the camera geometry changes. Result points live in a fixed ring of coordinates and
+ * fade out with age, so drawing a frame allocates nothing; each animation step drains the points
+ * reported since the last one and repaints only the area around the laser line and the points.
+ *
+ * The animation is driven by {@link Choreographer} frame callbacks, so it keeps in step with the
+ * display whatever its refresh rate; the laser's brightness follows the frame time rather than
+ * counting frames, and steps no more often than {@link #setAnimationFrameRate(float)} allows. No
+ * callback is pending unless a scan is in progress and the live viewfinder is on screen.
+ *
+ * Points reach the UI thread through one {@link ResultPointChannel} per reporting thread, so a
+ * decoder never waits on drawing, nor drawing on a decoder.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class ViewfinderView extends View {
 
   private static final int[] SCANNER_ALPHA = {0, 64, 128, 192, 255, 192, 128, 64};
   private static final long ANIMATION_DELAY = 80L;
+  // One pass through SCANNER_ALPHA
+  private static final long SCANNER_PERIOD_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(SCANNER_ALPHA.length * ANIMATION_DELAY);
+  // Vsync timestamps can land a little before the delay they were posted with runs out
+  private static final long FRAME_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(4L);
   private static final int CURRENT_POINT_OPACITY = 0xA0;
   private static final int MAX_RESULT_POINTS = 20;
   private static final int POINT_SIZE = 6;
+  // About as long as a point used to stay on screen, across two animation steps
+  private static final long POINT_LIFETIME_MS = 2 * ANIMATION_DELAY;
 
   private CameraManager cameraManager;
   private final Paint paint;
@@ -53,9 +75,43 @@ public final class ViewfinderView extends View {
   private final int resultColor;
   private final int laserColor;
   private final int resultPointColor;
-  private int scannerAlpha;
-  private List<ResultPoint> possibleResultPoints;
-  private List<ResultPoint> lastPossibleResultPoints;
+  private boolean decoding;
+  private boolean attached;
+
+  private final Choreographer choreographer;
+  private final Choreographer.FrameCallback frameCallback;
+  private boolean frameCallbackPosted;
+  private long frameIntervalNanos;
+  private long lastFrameNanos;
+  // Frame time of the latest animation step, which the laser's brightness is drawn for
+  private long animationTimeNanos;
+
+  // The mask, opaque outside the framing rectangle, and the geometry it was drawn for
+  private Bitmap maskBitmap;
+  private CameraGeometry maskGeometry;
+
+  // Where each thread that reports points puts them; the lock is only taken to add or remove one
+  private final ThreadLocal<ResultPointChannel> producerChannel;
+  private final Object channelLock;
+  private volatile ResultPointChannel[] channels;
+  private final ResultPointChannel.Sink pointSink;
+
+  // Recent result points, in preview frame coordinates, oldest first from pointStart; only touched
+  // on the UI thread
+  private final float[] pointX;
+  private final float[] pointY;
+  private final long[] pointTime;
+  private final int[] pointFrame;
+  private int pointStart;
+  private int pointCount;
+  private int newestFrame;
+  private long drainTime;
+
+  // The area repainted by the last animation step, which the next must repaint too
+  private final Rect dirty;
+  private final Rect lastDirty;
+  // What the next animation step repaints
+  private final Rect animationDirty;
 
   // This constructor is used when the class is built from an XML resource.
   public ViewfinderView(Context context, AttributeSet attrs) {
@@ -68,90 +124,322 @@ public final class ViewfinderView extends View {
     resultColor = resources.getColor(R.color.result_view);
     laserColor = resources.getColor(R.color.viewfinder_laser);
     resultPointColor = resources.getColor(R.color.possible_result_points);
-    scannerAlpha = 0;
-    possibleResultPoints = new ArrayList<>(5);
-    lastPossibleResultPoints = null;
+    channelLock = new Object();
+    channels = new ResultPointChannel[0];
+    producerChannel = new ThreadLocal<ResultPointChannel>() {
+      @Override
+      protected ResultPointChannel initialValue() {
+        return addChannel();
+      }
+    };
+    pointSink = new ResultPointChannel.Sink() {
+      @Override
+      public void accept(float x, float y, int frameId) {
+        addPoint(x, y, frameId);
+      }
+    };
+    pointX = new float[MAX_RESULT_POINTS];
+    pointY = new float[MAX_RESULT_POINTS];
+    pointTime = new long[MAX_RESULT_POINTS];
+    pointFrame = new int[MAX_RESULT_POINTS];
+    dirty = new Rect();
+    lastDirty = new Rect();
+    animationDirty = new Rect();
+    frameIntervalNanos = TimeUnit.MILLISECONDS.toNanos(ANIMATION_DELAY);
+    choreographer = Choreographer.getInstance();
+    frameCallback = new Choreographer.FrameCallback() {
+      @Override
+      public void doFrame(long frameTimeNanos) {
+        onAnimationFrame(frameTimeNanos);
+      }
+    };
   }
 
   public void setCameraManager(CameraManager cameraManager) {
     this.cameraManager = cameraManager;
   }
 
-  @SuppressLint("DrawAllocation")
+  /**
+   * @param decoding whether a scan is in progress; the laser only animates while one is
+   */
+  public void setDecoding(boolean decoding) {
+    if (this.decoding != decoding) {
+      this.decoding = decoding;
+      if (decoding) {
+        invalidate();
+      }
+      updateAnimation();
+    }
+  }
+
+  /**
+   * @param framesPerSecond how often the laser and result points may be redrawn at most; the
+   *  display's refresh rate is the real limit
+   */
+  public void setAnimationFrameRate(float framesPerSecond) {
+    if (framesPerSecond <= 0.0f) {
+      throw new IllegalArgumentException("Bad frame rate: " + framesPerSecond);
+    }
+    frameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+  }
+
+  @Override
+  protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    attached = true;
+    updateAnimation();
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    attached = false;
+    updateAnimation();
+    super.onDetachedFromWindow();
+  }
+
+  @Override
+  protected void onVisibilityChanged(View changedView, int visibility) {
+    super.onVisibilityChanged(changedView, visibility);
+    updateAnimation();
+  }
+
+  @Override
+  protected void onWindowVisibilityChanged(int visibility) {
+    super.onWindowVisibilityChanged(visibility);
+    updateAnimation();
+  }
+
+  /**
+   * Posts the frame callback if the animation should be running and isn't, or removes it if it
+   * shouldn't and is.
+   */
+  private void updateAnimation() {
+    boolean animate = shouldAnimate();
+    if (animate && !frameCallbackPosted) {
+      frameCallbackPosted = true;
+      lastFrameNanos = 0L;
+      choreographer.postFrameCallback(frameCallback);
+    } else if (!animate && frameCallbackPosted) {
+      frameCallbackPosted = false;
+      choreographer.removeFrameCallback(frameCallback);
+    }
+  }
+
+  private boolean shouldAnimate() {
+    return decoding && attached && resultBitmap == null && isShown() &&
+        getWindowVisibility() == VISIBLE;
+  }
+
+  private void onAnimationFrame(long frameTimeNanos) {
+    frameCallbackPosted = false;
+    if (!shouldAnimate()) {
+      return;
+    }
+    long sinceLastFrame = frameTimeNanos - lastFrameNanos;
+    if (lastFrameNanos == 0L || sinceLastFrame >= frameIntervalNanos - FRAME_TOLERANCE_NANOS) {
+      lastFrameNanos = frameTimeNanos;
+      animationTimeNanos = frameTimeNanos;
+      boolean partial = !animationDirty.isEmpty();
+      // Before invalidating, so that the area repainted covers the points that just came in
+      drainPoints(animationDirty);
+      if (partial) {
+        // Only the laser line and the points, including where points were last time
+        invalidate(animationDirty);
+      } else {
+        invalidate();
+      }
+      sinceLastFrame = 0L;
+    }
+    // Sleep through the frames in between rather than waking for each one
+    frameCallbackPosted = true;
+    long delayMs = TimeUnit.NANOSECONDS.toMillis(Math.max(0L, frameIntervalNanos - sinceLastFrame));
+    choreographer.postFrameCallbackDelayed(frameCallback, delayMs);
+  }
+
   @Override
   public void onDraw(Canvas canvas) {
     if (cameraManager == null) {
       return; // not ready yet, early draw before done configuring
     }
-    Rect frame = cameraManager.getFramingRect();
-    Rect previewFrame = cameraManager.getFramingRectInPreview();    
-    if (frame == null || previewFrame == null) {
+    // Both rectangles from the same snapshot, without waiting on the camera's lock
+    CameraGeometry geometry = cameraManager.getGeometry();
+    if (geometry == null) {
       return;
     }
+    Rect frame = geometry.getFramingRect();
+    Rect previewFrame = geometry.getFramingRectInPreview();
     int width = canvas.getWidth();
     int height = canvas.getHeight();
 
     // Draw the exterior (i.e. outside the framing rect) darkened
+    Bitmap mask = getMask(geometry, width, height);
     paint.setColor(resultBitmap != null ? resultColor : maskColor);
-    canvas.drawRect(0, 0, width, frame.top, paint);
-    canvas.drawRect(0, frame.top, frame.left, frame.bottom + 1, paint);
-    canvas.drawRect(frame.right + 1, frame.top, width, frame.bottom + 1, paint);
-    canvas.drawRect(0, frame.bottom + 1, width, height, paint);
+    canvas.drawBitmap(mask, 0, 0, paint);
 
     if (resultBitmap != null) {
       // Draw the opaque result bitmap over the scanning rectangle
       paint.setAlpha(CURRENT_POINT_OPACITY);
       canvas.drawBitmap(resultBitmap, null, frame, paint);
-    } else {
-      // Draw a red "laser scanner" line through the middle to show decoding is active
-      paint.setColor(laserColor);
-      paint.setAlpha(SCANNER_ALPHA[scannerAlpha]);
-      scannerAlpha = (scannerAlpha + 1) % SCANNER_ALPHA.length;
-      int middle = frame.height() / 2 + frame.top;
-      canvas.drawRect(frame.left + 2, middle - 1, frame.right - 1, middle + 2, paint);
-      
-      float scaleX = frame.width() / (float) previewFrame.width();
-      float scaleY = frame.height() / (float) previewFrame.height();
-
-      List<ResultPoint> currentPossible = possibleResultPoints;
-      List<ResultPoint> currentLast = lastPossibleResultPoints;
-      int frameLeft = frame.left;
-      int frameTop = frame.top;
-      if (currentPossible.isEmpty()) {
-        lastPossibleResultPoints = null;
-      } else {
-        possibleResultPoints = new ArrayList<>(5);
-        lastPossibleResultPoints = currentPossible;
-        paint.setAlpha(CURRENT_POINT_OPACITY);
-        paint.setColor(resultPointColor);
-        synchronized (currentPossible) {
-          for (ResultPoint point : currentPossible) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                              frameTop + (int) (point.getY() * scaleY),
-                              POINT_SIZE, paint);
-          }
-        }
+      return;
+    }
+
+    // Draw a red "laser scanner" line through the middle to show decoding is active
+    paint.setColor(laserColor);
+    paint.setAlpha(scannerAlpha(animationTimeNanos));
+    int middle = frame.height() / 2 + frame.top;
+    canvas.drawRect(frame.left + 2, middle - 1, frame.right - 1, middle + 2, paint);
+    dirty.set(frame.left + 2, middle - 1, frame.right - 1, middle + 2);
+
+    drawResultPoints(canvas, frame, previewFrame);
+
+    // The next animation step repaints what was drawn now, and what was drawn before
+    animationDirty.set(dirty);
+    animationDirty.union(lastDirty);
+    lastDirty.set(dirty);
+  }
+
+  /**
+   * @return the laser's alpha at that frame time, between the steps of {@link #SCANNER_ALPHA}
+   */
+  private static int scannerAlpha(long frameTimeNanos) {
+    float position = (frameTimeNanos % SCANNER_PERIOD_NANOS) * SCANNER_ALPHA.length /
+        (float) SCANNER_PERIOD_NANOS;
+    int step = (int) position;
+    int from = SCANNER_ALPHA[step % SCANNER_ALPHA.length];
+    int to = SCANNER_ALPHA[(step + 1) % SCANNER_ALPHA.length];
+    return from + (int) ((to - from) * (position - step));
+  }
+
+  /**
+   * @return the mask for this geometry and view size, redrawn only if either changed
+   */
+  private Bitmap getMask(CameraGeometry geometry, int width, int height) {
+    Bitmap mask = maskBitmap;
+    if (mask != null && geometry == maskGeometry &&
+        mask.getWidth() == width && mask.getHeight() == height) {
+      return mask;
+    }
+    if (mask != null) {
+      mask.recycle();
+    }
+    // Only the alpha is stored; drawing it with a paint tints it with the paint's color
+    mask = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+    Canvas maskCanvas = new Canvas(mask);
+    Paint maskPaint = new Paint();
+    Rect frame = geometry.getFramingRect();
+    maskCanvas.drawRect(0, 0, width, frame.top, maskPaint);
+    maskCanvas.drawRect(0, frame.top, frame.left, frame.bottom + 1, maskPaint);
+    maskCanvas.drawRect(frame.right + 1, frame.top, width, frame.bottom + 1, maskPaint);
+    maskCanvas.drawRect(0, frame.bottom + 1, width, height, maskPaint);
+    maskBitmap = mask;
+    maskGeometry = geometry;
+    return mask;
+  }
+
+  /**
+   * Moves the points reported since the last animation step into the ring, on the UI thread, and
+   * widens {@code invalidated} to cover them.
+   */
+  private void drainPoints(Rect invalidated) {
+    drainTime = SystemClock.uptimeMillis();
+    int drained = 0;
+    for (ResultPointChannel channel : channels) {
+      drained += channel.drain(pointSink);
+      if (!channel.getProducer().isAlive()) {
+        // The decode threads of a finished scan; nothing more will come from this one
+        drained += channel.drain(pointSink);
+        removeChannel(channel);
       }
-      if (currentLast != null) {
-        paint.setAlpha(CURRENT_POINT_OPACITY / 2);
-        paint.setColor(resultPointColor);
-        synchronized (currentLast) {
-          float radius = POINT_SIZE / 2.0f;
-          for (ResultPoint point : currentLast) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                              frameTop + (int) (point.getY() * scaleY),
-                              radius, paint);
-          }
+    }
+    CameraGeometry geometry = cameraManager == null ? null : cameraManager.getGeometry();
+    if (drained == 0 || geometry == null) {
+      return;
+    }
+    Rect frame = geometry.getFramingRect();
+    Rect previewFrame = geometry.getFramingRectInPreview();
+    float scaleX = frame.width() / (float) previewFrame.width();
+    float scaleY = frame.height() / (float) previewFrame.height();
+    // The new points are the newest in the ring, unless more came than it holds
+    for (int i = pointCount - Math.min(drained, pointCount); i < pointCount; i++) {
+      int index = (pointStart + i) % MAX_RESULT_POINTS;
+      int x = frame.left + (int) (pointX[index] * scaleX);
+      int y = frame.top + (int) (pointY[index] * scaleY);
+      invalidated.union(x - POINT_SIZE, y - POINT_SIZE, x + POINT_SIZE, y + POINT_SIZE);
+    }
+  }
+
+  /**
+   * Draws the points that haven't faded out yet, fainter and smaller the older they are, and
+   * widens the dirty area to cover them.
+   */
+  private void drawResultPoints(Canvas canvas, Rect frame, Rect previewFrame) {
+    float scaleX = frame.width() / (float) previewFrame.width();
+    float scaleY = frame.height() / (float) previewFrame.height();
+    int frameLeft = frame.left;
+    int frameTop = frame.top;
+    long now = SystemClock.uptimeMillis();
+    paint.setColor(resultPointColor);
+    // Forget points that have faded out; they are the oldest
+    while (pointCount > 0 && now - pointTime[pointStart] >= POINT_LIFETIME_MS) {
+      pointStart = (pointStart + 1) % MAX_RESULT_POINTS;
+      pointCount--;
+    }
+    for (int i = 0; i < pointCount; i++) {
+      int index = (pointStart + i) % MAX_RESULT_POINTS;
+      // Points from the newest frame are current; older ones fade as they age
+      float fade = pointFrame[index] == newestFrame ? 1.0f :
+          1.0f - (now - pointTime[index]) / (float) POINT_LIFETIME_MS;
+      paint.setAlpha((int) (CURRENT_POINT_OPACITY * (0.5f + fade / 2)));
+      float radius = POINT_SIZE * (0.5f + fade / 2);
+      int x = frameLeft + (int) (pointX[index] * scaleX);
+      int y = frameTop + (int) (pointY[index] * scaleY);
+      canvas.drawCircle(x, y, radius, paint);
+      dirty.union(x - POINT_SIZE, y - POINT_SIZE, x + POINT_SIZE, y + POINT_SIZE);
+    }
+  }
+
+  /**
+   * Adds a point drained from a channel to the ring, on the UI thread.
+   */
+  private void addPoint(float x, float y, int frameId) {
+    int index;
+    if (pointCount < MAX_RESULT_POINTS) {
+      index = (pointStart + pointCount) % MAX_RESULT_POINTS;
+      pointCount++;
+    } else {
+      // Full; the newest point replaces the oldest
+      index = pointStart;
+      pointStart = (pointStart + 1) % MAX_RESULT_POINTS;
+    }
+    pointX[index] = x;
+    pointY[index] = y;
+    pointTime[index] = drainTime;
+    pointFrame[index] = frameId;
+    newestFrame = frameId;
+  }
+
+  private ResultPointChannel addChannel() {
+    ResultPointChannel channel = new ResultPointChannel(Thread.currentThread());
+    synchronized (channelLock) {
+      ResultPointChannel[] oldChannels = channels;
+      ResultPointChannel[] newChannels = Arrays.copyOf(oldChannels, oldChannels.length + 1);
+      newChannels[oldChannels.length] = channel;
+      channels = newChannels;
+    }
+    return channel;
+  }
+
+  private void removeChannel(ResultPointChannel channel) {
+    synchronized (channelLock) {
+      ResultPointChannel[] oldChannels = channels;
+      ResultPointChannel[] newChannels = new ResultPointChannel[oldChannels.length - 1];
+      int i = 0;
+      for (ResultPointChannel oldChannel : oldChannels) {
+        if (oldChannel != channel) {
+          newChannels[i++] = oldChannel;
         }
       }
-
-      // Request another update at the animation interval, but only repaint the laser line,
-      // not the entire viewfinder mask.
-      postInvalidateDelayed(ANIMATION_DELAY,
-                            frame.left - POINT_SIZE,
-                            frame.top - POINT_SIZE,
-                            frame.right + POINT_SIZE,
-                            frame.bottom + POINT_SIZE);
+      channels = newChannels;
     }
   }
 
@@ -162,6 +450,7 @@ public final class ViewfinderView extends View {
       resultBitmap.recycle();
     }
     invalidate();
+    updateAnimation();
   }
 
   /**
@@ -172,18 +461,23 @@ public final class ViewfinderView extends View {
   public void drawResultBitmap(Bitmap barcode) {
     resultBitmap = barcode;
     invalidate();
+    updateAnimation();
   }
 
   public void addPossibleResultPoint(ResultPoint point) {
-    List<ResultPoint> points = possibleResultPoints;
-    synchronized (points) {
-      points.add(point);
-      int size = points.size();
-      if (size > MAX_RESULT_POINTS) {
-        // trim it
-        points.subList(0, size - MAX_RESULT_POINTS / 2).clear();
-      }
-    }
+    addPossibleResultPoint(point.getX(), point.getY(), 0);
+  }
+
+  /**
+   * Called from any thread but the UI thread; the point is drawn from the next animation step on.
+   * Never blocks: if the UI has fallen behind, the point is dropped.
+   *
+   * @param x position relative to the framing rectangle, in preview frame pixels
+   * @param y position relative to the framing rectangle, in preview frame pixels
+   * @param frameId which frame the point was found in
+   */
+  public void addPossibleResultPoint(float x, float y, int frameId) {
+    producerChannel.get().offer(x, y, frameId);
   }
 
 }
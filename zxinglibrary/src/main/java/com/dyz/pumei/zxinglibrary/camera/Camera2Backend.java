@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.Display;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link android.hardware.camera2} API. Frames come from an {@link ImageReader} in
+ * {@link ImageFormat#YUV_420_888}; only the luminance plane is copied out, row stride included,
+ * so there is no conversion to NV21 and the chroma planes are never touched. The preview runs
+ * with continuous-picture auto focus where the lens has it, and with a frame rate range that lets
+ * exposure stretch in low light without dropping below {@link #MIN_FPS}.
+ *
+ * Device callbacks and frames arrive on a thread of the backend's own.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class Camera2Backend implements CameraBackend, ImageReader.OnImageAvailableListener {
+
+  private static final String TAG = Camera2Backend.class.getSimpleName();
+
+  private static final long OPEN_TIMEOUT_MS = 2500L;
+  // acquireLatestImage() needs one image to hold while it discards the older ones
+  private static final int MAX_IMAGES = 3;
+  private static final int MIN_PREVIEW_PIXELS = 480 * 320;
+  // Larger frames cost more to copy and decode without making barcodes easier to read
+  private static final int MAX_PREVIEW_PIXELS = 1920 * 1080;
+  private static final double MAX_ASPECT_DISTORTION = 0.15;
+  private static final int MIN_FPS = 10;
+  private static final int MAX_FPS = 30;
+
+  private final Context context;
+  private final YPlaneDispatcher dispatcher;
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private CameraDevice device;
+  private ImageReader imageReader;
+  private Surface previewSurface;
+  private CameraCaptureSession session;
+  private Point screenResolution;
+  private Point cameraResolution;
+  private int rotation;
+  private Range<Integer> fpsRange;
+  private Integer afMode;
+  private boolean flashAvailable;
+  private boolean torch;
+  private boolean previewing;
+
+  Camera2Backend(Context context) {
+    this.context = context;
+    dispatcher = new YPlaneDispatcher();
+  }
+
+  /**
+   * @return true if this device has the camera2 API
+   */
+  static boolean isSupported() {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+  }
+
+  @Override
+  public synchronized void open(int requestedCameraId, SurfaceHolder holder, FrameCallback callback)
+      throws IOException {
+    if (device != null) {
+      return;
+    }
+    dispatcher.setCallback(callback);
+    android.hardware.camera2.CameraManager manager =
+        (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    if (manager == null) {
+      throw new IOException("No camera service");
+    }
+    try {
+      String cameraId = chooseCamera(manager, requestedCameraId);
+      if (cameraId == null) {
+        throw new IOException("No camera " + requestedCameraId);
+      }
+      configure(manager.getCameraCharacteristics(cameraId));
+      startCameraThread();
+      imageReader = ImageReader.newInstance(cameraResolution.x, cameraResolution.y,
+                                            ImageFormat.YUV_420_888, MAX_IMAGES);
+      imageReader.setOnImageAvailableListener(this, cameraHandler);
+      holder.setFixedSize(cameraResolution.x, cameraResolution.y);
+      previewSurface = holder.getSurface();
+      device = openDevice(manager, cameraId);
+    } catch (CameraAccessException cae) {
+      close();
+      throw new IOException("Camera could not be opened", cae);
+    } catch (IOException ioe) {
+      close();
+      throw ioe;
+    }
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return device != null;
+  }
+
+  @Override
+  public synchronized void close() {
+    stopPreview();
+    if (device != null) {
+      device.close();
+      device = null;
+    }
+    if (imageReader != null) {
+      imageReader.close();
+      imageReader = null;
+    }
+    previewSurface = null;
+    if (cameraThread != null) {
+      cameraThread.quitSafely();
+      cameraThread = null;
+      cameraHandler = null;
+    }
+  }
+
+  @Override
+  public synchronized void startPreview(int bufferCount) {
+    final CameraDevice theDevice = device;
+    if (theDevice == null || previewing) {
+      return;
+    }
+    dispatcher.start(bufferCount);
+    previewing = true;
+    try {
+      theDevice.createCaptureSession(
+          Arrays.asList(previewSurface, imageReader.getSurface()),
+          new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(CameraCaptureSession newSession) {
+              synchronized (Camera2Backend.this) {
+                if (device != theDevice || !previewing) {
+                  newSession.close();
+                  return;
+                }
+                session = newSession;
+                updateRepeatingRequest();
+              }
+            }
+            @Override
+            public void onConfigureFailed(CameraCaptureSession newSession) {
+              Log.w(TAG, "Camera rejected the preview and frame outputs");
+            }
+          },
+          cameraHandler);
+    } catch (CameraAccessException cae) {
+      Log.w(TAG, "Could not start preview", cae);
+      dispatcher.stop();
+      previewing = false;
+    }
+  }
+
+  @Override
+  public synchronized void stopPreview() {
+    if (previewing) {
+      dispatcher.stop();
+      if (session != null) {
+        session.close();
+        session = null;
+      }
+      previewing = false;
+    }
+  }
+
+  @Override
+  public synchronized Point getScreenResolution() {
+    return screenResolution;
+  }
+
+  @Override
+  public synchronized Point getCameraResolution() {
+    return cameraResolution;
+  }
+
+  @Override
+  public synchronized int getRotation() {
+    return rotation;
+  }
+
+  @Override
+  public synchronized void setTorch(boolean on) {
+    if (flashAvailable && on != torch) {
+      torch = on;
+      if (session != null) {
+        updateRepeatingRequest();
+      }
+    }
+  }
+
+  @Override
+  public void requestFrame() {
+    dispatcher.request();
+  }
+
+  @Override
+  public void setStreaming(boolean streaming) {
+    dispatcher.setStreaming(streaming);
+  }
+
+  @Override
+  public void releaseFrame(byte[] data) {
+    dispatcher.release(data);
+  }
+
+  @Override
+  public boolean isRecyclingFrames() {
+    return dispatcher.isRecycling();
+  }
+
+  @Override
+  public void onImageAvailable(ImageReader reader) {
+    Image image;
+    try {
+      image = reader.acquireLatestImage();
+    } catch (IllegalStateException ise) {
+      // Reader closed, or every image is still held
+      return;
+    }
+    if (image == null) {
+      return;
+    }
+    try {
+      // The Y plane of YUV_420_888 always has a pixel stride of 1
+      Image.Plane luminance = image.getPlanes()[0];
+      dispatcher.dispatch(luminance.getBuffer(), luminance.getRowStride(), image.getHeight());
+    } finally {
+      image.close();
+    }
+  }
+
+  private void configure(CameraCharacteristics characteristics) throws IOException {
+    StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    Size[] sizes = map == null ? null : map.getOutputSizes(ImageFormat.YUV_420_888);
+    if (sizes == null || sizes.length == 0) {
+      throw new IOException("Camera has no YUV_420_888 output");
+    }
+
+    WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+    Display display = manager.getDefaultDisplay();
+    Point theScreenResolution = new Point();
+    display.getSize(theScreenResolution);
+    screenResolution = theScreenResolution;
+    Log.i(TAG, "Screen resolution in current orientation: " + screenResolution);
+    cameraResolution = findBestPreviewSize(sizes, screenResolution);
+    Log.i(TAG, "Camera resolution: " + cameraResolution);
+    rotation = findRotation(characteristics, display.getRotation());
+    Log.i(TAG, "Clockwise rotation from display to camera: " + rotation);
+
+    afMode = findBestAfMode(characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES));
+    Log.i(TAG, "Auto focus mode: " + afMode);
+    fpsRange = findBestFpsRange(
+        characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES));
+    Log.i(TAG, "FPS range: " + fpsRange);
+    Boolean hasFlash = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+    flashAvailable = hasFlash != null && hasFlash;
+    torch = flashAvailable &&
+        FrontLightMode.readPref(PreferenceManager.getDefaultSharedPreferences(context)) == FrontLightMode.ON;
+  }
+
+  /**
+   * As in {@link CameraConfigurationManager}, but from the sensor orientation camera2 reports.
+   */
+  private static int findRotation(CameraCharacteristics characteristics, int displayRotation) {
+    int cwRotationFromNaturalToDisplay;
+    switch (displayRotation) {
+      case Surface.ROTATION_90:
+        cwRotationFromNaturalToDisplay = 90;
+        break;
+      case Surface.ROTATION_180:
+        cwRotationFromNaturalToDisplay = 180;
+        break;
+      case Surface.ROTATION_270:
+        cwRotationFromNaturalToDisplay = 270;
+        break;
+      default:
+        cwRotationFromNaturalToDisplay = 0;
+    }
+    Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+    int cwRotationFromNaturalToCamera = sensorOrientation == null ? 0 : sensorOrientation;
+    Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+    boolean front = facing != null && facing == CameraMetadata.LENS_FACING_FRONT;
+    if (front) {
+      cwRotationFromNaturalToCamera = (360 - cwRotationFromNaturalToCamera) % 360;
+    }
+    int cwRotationFromDisplayToCamera =
+        (360 + cwRotationFromNaturalToCamera - cwRotationFromNaturalToDisplay) % 360;
+    return front ? (360 - cwRotationFromDisplayToCamera) % 360 : cwRotationFromDisplayToCamera;
+  }
+
+  /**
+   * Like {@link com.google.zxing.client.android.camera.CameraConfigurationUtils#findBestPreviewSizeValue},
+   * but also capped at {@link #MAX_PREVIEW_PIXELS}.
+   */
+  private static Point findBestPreviewSize(Size[] sizes, Point screenResolution) {
+    double screenAspectRatio = Math.max(screenResolution.x, screenResolution.y) /
+        (double) Math.min(screenResolution.x, screenResolution.y);
+    boolean isScreenPortrait = screenResolution.x < screenResolution.y;
+    Size best = null;
+    Size largest = null;
+    for (Size size : sizes) {
+      int pixels = size.getWidth() * size.getHeight();
+      if (pixels > MAX_PREVIEW_PIXELS) {
+        continue;
+      }
+      if (largest == null || pixels > largest.getWidth() * largest.getHeight()) {
+        largest = size;
+      }
+      if (pixels < MIN_PREVIEW_PIXELS) {
+        continue;
+      }
+      int longSide = Math.max(size.getWidth(), size.getHeight());
+      int shortSide = Math.min(size.getWidth(), size.getHeight());
+      double distortion = Math.abs((double) longSide / shortSide - screenAspectRatio);
+      if (distortion > MAX_ASPECT_DISTORTION) {
+        continue;
+      }
+      int screenWidth = isScreenPortrait ? screenResolution.y : screenResolution.x;
+      int screenHeight = isScreenPortrait ? screenResolution.x : screenResolution.y;
+      if (longSide == screenWidth && shortSide == screenHeight) {
+        return new Point(size.getWidth(), size.getHeight());
+      }
+      if (best == null || pixels > best.getWidth() * best.getHeight()) {
+        best = size;
+      }
+    }
+    if (best == null) {
+      best = largest == null ? sizes[0] : largest;
+    }
+    return new Point(best.getWidth(), best.getHeight());
+  }
+
+  /**
+   * @return continuous-picture focus if the lens has it, then continuous-video focus, or null to
+   *  leave the focus to the preview template, as for fixed-focus lenses
+   */
+  private static Integer findBestAfMode(int[] afModes) {
+    if (afModes == null) {
+      return null;
+    }
+    boolean hasContinuousVideo = false;
+    for (int afMode : afModes) {
+      if (afMode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE) {
+        return afMode;
+      }
+      if (afMode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO) {
+        hasContinuousVideo = true;
+      }
+    }
+    return hasContinuousVideo ? CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO : null;
+  }
+
+  /**
+   * Picks the range with the highest top frame rate up to {@link #MAX_FPS}, for a smooth preview,
+   * and of those the one that lets exposure go longest while staying at {@link #MIN_FPS} or more.
+   * A fixed range such as [30, 30] would keep low-light frames too dark to decode.
+   *
+   * @return the range, or null to leave the frame rate to the preview template
+   */
+  private static Range<Integer> findBestFpsRange(Range<Integer>[] ranges) {
+    if (ranges == null) {
+      return null;
+    }
+    Range<Integer> best = null;
+    for (Range<Integer> range : ranges) {
+      int lower = range.getLower();
+      int upper = range.getUpper();
+      if (lower < MIN_FPS || upper > MAX_FPS) {
+        continue;
+      }
+      if (best == null || upper > best.getUpper() ||
+          upper == best.getUpper() && lower < best.getLower()) {
+        best = range;
+      }
+    }
+    return best;
+  }
+
+  private static String chooseCamera(android.hardware.camera2.CameraManager manager,
+                                     int requestedCameraId) throws CameraAccessException {
+    String[] cameraIds = manager.getCameraIdList();
+    if (cameraIds.length == 0) {
+      Log.w(TAG, "No cameras!");
+      return null;
+    }
+    if (requestedCameraId >= 0) {
+      if (requestedCameraId < cameraIds.length) {
+        return cameraIds[requestedCameraId];
+      }
+      Log.w(TAG, "Requested camera does not exist: " + requestedCameraId);
+      return null;
+    }
+    for (String cameraId : cameraIds) {
+      Integer facing = manager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.LENS_FACING);
+      if (facing != null && facing == CameraMetadata.LENS_FACING_BACK) {
+        return cameraId;
+      }
+    }
+    Log.i(TAG, "No camera facing back; returning camera " + cameraIds[0]);
+    return cameraIds[0];
+  }
+
+  private void startCameraThread() {
+    if (cameraThread == null) {
+      cameraThread = new HandlerThread("Camera2Backend");
+      cameraThread.start();
+      cameraHandler = new Handler(cameraThread.getLooper());
+    }
+  }
+
+  /**
+   * Opens the device and waits for it, as {@link android.hardware.Camera#open(int)} would.
+   */
+  private CameraDevice openDevice(android.hardware.camera2.CameraManager manager, String cameraId)
+      throws CameraAccessException, IOException {
+    DeviceCallback callback = new DeviceCallback();
+    manager.openCamera(cameraId, callback, cameraHandler);
+    return callback.await(cameraId);
+  }
+
+  private void updateRepeatingRequest() {
+    try {
+      CaptureRequest.Builder builder = session.getDevice().createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+      builder.addTarget(previewSurface);
+      builder.addTarget(imageReader.getSurface());
+      if (afMode != null) {
+        builder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+      }
+      if (fpsRange != null) {
+        builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+      }
+      builder.set(CaptureRequest.FLASH_MODE,
+                  torch ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+      session.setRepeatingRequest(builder.build(), null, cameraHandler);
+    } catch (CameraAccessException | IllegalStateException e) {
+      // The session or device went away in the meantime
+      Log.w(TAG, "Could not update preview request", e);
+    }
+  }
+
+  private synchronized void onDeviceLost(CameraDevice lostDevice) {
+    if (device == lostDevice) {
+      Log.w(TAG, "Lost camera " + lostDevice.getId());
+      device = null;
+      session = null;
+      previewing = false;
+      dispatcher.stop();
+    }
+  }
+
+  /**
+   * Turns the asynchronous open into a blocking one. A device that opens only after the wait was
+   * given up on is closed straight away.
+   */
+  private final class DeviceCallback extends CameraDevice.StateCallback {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private CameraDevice openedDevice;
+    private boolean abandoned;
+
+    CameraDevice await(String cameraId) throws IOException {
+      try {
+        done.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        if (openedDevice == null) {
+          abandoned = true;
+          throw new IOException("Camera " + cameraId + " failed to open");
+        }
+        return openedDevice;
+      }
+    }
+
+    @Override
+    public void onOpened(CameraDevice camera) {
+      synchronized (this) {
+        if (abandoned) {
+          camera.close();
+        } else {
+          openedDevice = camera;
+        }
+      }
+      done.countDown();
+    }
+
+    @Override
+    public void onDisconnected(CameraDevice camera) {
+      camera.close();
+      lost(camera);
+    }
+
+    @Override
+    public void onError(CameraDevice camera, int error) {
+      Log.w(TAG, "Camera error " + error);
+      camera.close();
+      lost(camera);
+    }
+
+    private void lost(CameraDevice camera) {
+      synchronized (this) {
+        if (openedDevice == camera) {
+          openedDevice = null;
+        }
+        abandoned = true;
+      }
+      done.countDown();
+      onDeviceLost(camera);
+    }
+  }
+
+}
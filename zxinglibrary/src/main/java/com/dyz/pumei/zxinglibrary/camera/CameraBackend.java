@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.graphics.Point;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+
+/**
+ * The camera hardware as seen by {@link CameraManager}: something that opens, shows a preview and
+ * delivers preview frames. Frames always carry the luminance (Y) plane first, row by row, which is
+ * all the decoders read; whatever follows it, such as the chroma of an NV21 frame, is ignored.
+ *
+ * Calls are made by {@link CameraManager} while it holds its own lock, so implementations only
+ * need to guard against their own background threads.
+ */
+public interface CameraBackend {
+
+  /**
+   * Receives preview frames from a backend.
+   */
+  interface FrameCallback {
+
+    /**
+     * Called on the backend's own thread for each frame that was asked for with
+     * {@link #requestFrame()} or {@link #setStreaming(boolean)}.
+     *
+     * @param data the frame, which the receiver owns until it goes back through
+     *  {@link #releaseFrame(byte[])}
+     * @param dataWidth distance in bytes between the starts of two rows, which may be larger than
+     *  the width of the preview
+     * @param dataHeight number of rows
+     */
+    void onFrame(byte[] data, int dataWidth, int dataHeight);
+  }
+
+  /**
+   * Opens and configures the camera and points its preview at {@code holder}.
+   *
+   * @param requestedCameraId index of the camera to use, or
+   *  {@link com.dyz.pumei.zxinglibrary.camera.open.OpenCameraInterface#NO_REQUESTED_CAMERA} for
+   *  the first back-facing one
+   * @param holder the surface the preview is drawn into
+   * @param callback receives the frames
+   * @throws IOException if the camera could not be opened
+   */
+  void open(int requestedCameraId, SurfaceHolder holder, FrameCallback callback) throws IOException;
+
+  boolean isOpen();
+
+  void close();
+
+  /**
+   * @param bufferCount number of frame buffers to recycle, or 0 to allocate a new one per frame
+   */
+  void startPreview(int bufferCount);
+
+  /**
+   * Stops the preview and forgets any requested frames and recycled buffers.
+   */
+  void stopPreview();
+
+  /**
+   * @return size of the view the preview is shown in, or null before {@link #open}
+   */
+  Point getScreenResolution();
+
+  /**
+   * @return size of the preview frames, or null before {@link #open}
+   */
+  Point getCameraResolution();
+
+  /**
+   * @return clockwise rotation, in degrees, from the display to the preview frames; 0 before
+   *  {@link #open}
+   */
+  int getRotation();
+
+  void setTorch(boolean on);
+
+  /**
+   * Asks for the next preview frame to be delivered. Has no lasting effect while streaming or
+   * while frames are recycled, since every frame is delivered then anyway.
+   */
+  void requestFrame();
+
+  /**
+   * @param streaming whether to deliver every preview frame until told otherwise
+   */
+  void setStreaming(boolean streaming);
+
+  /**
+   * Hands a delivered frame back to be filled again. Ignores frames that aren't recycled. Called
+   * from any thread, without the caller holding a lock.
+   */
+  void releaseFrame(byte[] data);
+
+  /**
+   * @return true if frames come from a fixed set of recycled buffers, so that a frame nobody wants
+   *  must be handed back with {@link #releaseFrame(byte[])}
+   */
+  boolean isRecyclingFrames();
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+
+/**
+ * Everything about where things are on screen and in the preview frames, fixed at one moment:
+ * the screen and preview sizes, the framing rectangle in both, and how the preview is rotated.
+ * {@link CameraManager} builds a new one whenever any of it changes and publishes it through a
+ * volatile field, so the decoders and the viewfinder read a consistent set of values without
+ * taking the camera's lock.
+ *
+ * The rectangles and points returned are shared and must not be modified.
+ */
+public final class CameraGeometry {
+
+  private final Point screenResolution;
+  private final Point cameraResolution;
+  private final int rotation;
+  private final Rect framingRect;
+  private final Rect framingRectInPreview;
+
+  /**
+   * @param framingRect where to look for barcodes, in screen coordinates
+   */
+  CameraGeometry(Point screenResolution, Point cameraResolution, int rotation, Rect framingRect) {
+    this.screenResolution = new Point(screenResolution.x, screenResolution.y);
+    this.cameraResolution = new Point(cameraResolution.x, cameraResolution.y);
+    this.rotation = rotation;
+    this.framingRect = new Rect(framingRect);
+    Rect rect = new Rect(framingRect);
+    rect.left = rect.left * cameraResolution.x / screenResolution.x;
+    rect.right = rect.right * cameraResolution.x / screenResolution.x;
+    rect.top = rect.top * cameraResolution.y / screenResolution.y;
+    rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
+    framingRectInPreview = rect;
+  }
+
+  /**
+   * @return size of the view the preview is shown in
+   */
+  public Point getScreenResolution() {
+    return screenResolution;
+  }
+
+  /**
+   * @return size of the preview frames
+   */
+  public Point getCameraResolution() {
+    return cameraResolution;
+  }
+
+  /**
+   * @return clockwise rotation, in degrees, from the display to the preview frames
+   */
+  public int getRotation() {
+    return rotation;
+  }
+
+  /**
+   * @return where to look for barcodes, in screen coordinates
+   */
+  public Rect getFramingRect() {
+    return framingRect;
+  }
+
+  /**
+   * @return where to look for barcodes, in preview frame coordinates
+   */
+  public Rect getFramingRectInPreview() {
+    return framingRectInPreview;
+  }
+
+}
@@ -17,28 +17,29 @@
 package com.dyz.pumei.zxinglibrary.camera;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.hardware.Camera;
 import android.os.Handler;
+import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
-import com.dyz.pumei.zxinglibrary.camera.open.OpenCamera;
+import com.dyz.pumei.zxinglibrary.PreferencesActivity;
 import com.dyz.pumei.zxinglibrary.camera.open.OpenCameraInterface;
 import com.google.zxing.PlanarYUVLuminanceSource;
 
 import java.io.IOException;
 
 /**
- * This object wraps the Camera service object and expects to be the only one talking to it. The
+ * This object wraps the camera and expects to be the only one talking to it. The
  * implementation encapsulates the steps needed to take preview-sized images, which are used for
- * both preview and decoding.
+ * both preview and decoding. The camera itself is a {@link CameraBackend}: the legacy camera API,
+ * camera2 where the user asked for it, or a fake one in tests.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-@SuppressWarnings("deprecation") // camera APIs
-public final class CameraManager {
+public final class CameraManager implements FrameSource {
 
   private static final String TAG = CameraManager.class.getSimpleName();
 
@@ -47,29 +48,42 @@ public final class CameraManager {
   private static final int MAX_FRAME_WIDTH = 1200; // = 5/8 * 1920
   private static final int MAX_FRAME_HEIGHT = 675; // = 5/8 * 1080
 
-  private final Context context;
-  private final CameraConfigurationManager configManager;
-  private OpenCamera camera;
-  private AutoFocusManager autoFocusManager;
-  private Rect framingRect;
-  private Rect framingRectInPreview;
+  private final CameraBackend backend;
+  // Read without the lock on every frame; replaced, never modified, under the lock
+  private volatile CameraGeometry geometry;
+  private Rect manualFramingRect;
   private boolean initialized;
-  private boolean previewing;
+  // Read without the lock when decoders hand frames back; only changed under the lock
+  private volatile boolean previewing;
   private int requestedCameraId = OpenCameraInterface.NO_REQUESTED_CAMERA;
   private int requestedFramingRectWidth;
   private int requestedFramingRectHeight;
   /**
-   * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
-   * clear the handler so it will only receive one message.
+   * Preview frames are delivered here, which we pass on to the registered handlers. Each handler
+   * only receives one message per request.
    */
   private final PreviewCallback previewCallback;
+  private int previewBufferCount;
+  private FrameMailbox frameMailbox;
 
   public CameraManager(Context context) {
-    this.context = context;
-    this.configManager = new CameraConfigurationManager(context);
-    previewCallback = new PreviewCallback(configManager);
+    this(createBackend(context));
   }
-  
+
+  public CameraManager(CameraBackend backend) {
+    this.backend = backend;
+    previewCallback = new PreviewCallback(backend);
+  }
+
+  private static CameraBackend createBackend(Context context) {
+    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+    if (prefs.getBoolean(PreferencesActivity.KEY_CAMERA2, false) && Camera2Backend.isSupported()) {
+      Log.i(TAG, "Using the camera2 API");
+      return new Camera2Backend(context);
+    }
+    return new LegacyCameraBackend(context);
+  }
+
   /**
    * Opens the camera driver and initializes the hardware parameters.
    *
@@ -77,92 +91,56 @@ public final class CameraManager {
    * @throws IOException Indicates the camera driver failed to open.
    */
   public synchronized void openDriver(SurfaceHolder holder) throws IOException {
-    OpenCamera theCamera = camera;
-    if (theCamera == null) {
-      theCamera = OpenCameraInterface.open(requestedCameraId);
-      if (theCamera == null) {
-        throw new IOException("Camera.open() failed to return object from driver");
-      }
-      camera = theCamera;
-    }
+    backend.open(requestedCameraId, holder, previewCallback);
 
     if (!initialized) {
       initialized = true;
-      configManager.initFromCameraParameters(theCamera);
       if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
         setManualFramingRect(requestedFramingRectWidth, requestedFramingRectHeight);
         requestedFramingRectWidth = 0;
         requestedFramingRectHeight = 0;
       }
     }
-
-    Camera cameraObject = theCamera.getCamera();
-    Camera.Parameters parameters = cameraObject.getParameters();
-    String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these, temporarily
-    try {
-      configManager.setDesiredCameraParameters(theCamera, false);
-    } catch (RuntimeException re) {
-      // Driver failed
-      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
-      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
-      // Reset:
-      if (parametersFlattened != null) {
-        parameters = cameraObject.getParameters();
-        parameters.unflatten(parametersFlattened);
-        try {
-          cameraObject.setParameters(parameters);
-          configManager.setDesiredCameraParameters(theCamera, true);
-        } catch (RuntimeException re2) {
-          // Well, darn. Give up
-          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
-        }
-      }
-    }
-    cameraObject.setPreviewDisplay(holder);
-
+    updateGeometry();
   }
 
   public synchronized boolean isOpen() {
-    return camera != null;
+    return backend.isOpen();
   }
 
   /**
    * Closes the camera driver if still in use.
    */
   public synchronized void closeDriver() {
-    if (camera != null) {
-      camera.getCamera().release();
-      camera = null;
+    if (backend.isOpen()) {
+      backend.close();
       // Make sure to clear these each time we close the camera, so that any scanning rect
       // requested by intent is forgotten.
-      framingRect = null;
-      framingRectInPreview = null;
+      manualFramingRect = null;
+      geometry = null;
     }
   }
 
   /**
    * Asks the camera hardware to begin drawing preview frames to the screen.
    */
+  @Override
   public synchronized void startPreview() {
-    OpenCamera theCamera = camera;
-    if (theCamera != null && !previewing) {
-      theCamera.getCamera().startPreview();
+    if (backend.isOpen() && !previewing) {
+      backend.startPreview(previewBufferCount);
       previewing = true;
-      autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
     }
   }
 
   /**
    * Tells the camera to stop drawing preview frames.
    */
+  @Override
   public synchronized void stopPreview() {
-    if (autoFocusManager != null) {
-      autoFocusManager.stop();
-      autoFocusManager = null;
-    }
-    if (camera != null && previewing) {
-      camera.getCamera().stopPreview();
-      previewCallback.setHandler(null, 0);
+    if (backend.isOpen() && previewing) {
+      stopFrameStream();
+      backend.stopPreview();
+      previewCallback.clearHandlers();
       previewing = false;
     }
   }
@@ -173,55 +151,111 @@ public final class CameraManager {
    * @param newSetting if {@code true}, light should be turned on if currently off. And vice versa.
    */
   public synchronized void setTorch(boolean newSetting) {
-    OpenCamera theCamera = camera;
-    if (theCamera != null && newSetting != configManager.getTorchState(theCamera.getCamera())) {
-      boolean wasAutoFocusManager = autoFocusManager != null;
-      if (wasAutoFocusManager) {
-        autoFocusManager.stop();
-        autoFocusManager = null;
-      }
-      configManager.setTorch(theCamera.getCamera(), newSetting);
-      if (wasAutoFocusManager) {
-        autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
-        autoFocusManager.start();
-      }
+    if (backend.isOpen()) {
+      backend.setTorch(newSetting);
     }
   }
 
   /**
    * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
    * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-   * respectively.
+   * respectively. The width is the distance between rows, which may exceed the preview's width.
+   * Several requests may be outstanding at once; each gets its own frame.
    *
    * @param handler The handler to send the message to.
    * @param message The what field of the message to be sent.
    */
+  @Override
   public synchronized void requestPreviewFrame(Handler handler, int message) {
-    OpenCamera theCamera = camera;
-    if (theCamera != null && previewing) {
-      previewCallback.setHandler(handler, message);
-      theCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+    if (backend.isOpen() && previewing) {
+      previewCallback.addHandler(handler, message);
+      // With recycled buffers every frame arrives anyway; the next one goes to this handler
+      backend.requestFrame();
     }
   }
 
   /**
-   * Calculates the framing rect which the UI should draw to show the user where to place the
-   * barcode. This target helps with alignment as well as forces the user to hold the device
-   * far enough away to ensure the image will be in focus.
+   * Publishes every preview frame to the given mailbox, newest first, until
+   * {@link #stopFrameStream()}. Decoders take frames from the mailbox themselves, so no request per
+   * frame is needed. Taken frames must still be returned with {@link #releasePreviewBuffer(byte[])}.
    *
-   * @return The rectangle to draw on screen in window coordinates.
+   * @param mailbox where frames are published
    */
-  public synchronized Rect getFramingRect() {
-    if (framingRect == null) {
-      if (camera == null) {
-        return null;
-      }
-      Point screenResolution = configManager.getScreenResolution();
-      if (screenResolution == null) {
-        // Called early, before init even finished
-        return null;
-      }
+  @Override
+  public synchronized void startFrameStream(FrameMailbox mailbox) {
+    if (backend.isOpen() && previewing && frameMailbox == null) {
+      frameMailbox = mailbox;
+      releasePreviewBuffer(mailbox.open());
+      previewCallback.setMailbox(mailbox);
+      backend.setStreaming(true);
+    }
+  }
+
+  /**
+   * Stops publishing frames to the mailbox given to {@link #startFrameStream(FrameMailbox)}, and
+   * wakes any decoders waiting on it.
+   */
+  @Override
+  public synchronized void stopFrameStream() {
+    FrameMailbox mailbox = frameMailbox;
+    if (mailbox != null) {
+      frameMailbox = null;
+      previewCallback.setMailbox(null);
+      backend.setStreaming(false);
+      releasePreviewBuffer(mailbox.close());
+      Log.d(TAG, "Streamed " + mailbox.getPublishedFrameCount() + " frames so far, " +
+          mailbox.getOverwrittenFrameCount() + " replaced before decoding");
+    }
+  }
 
+  /**
+   * Makes the camera deliver preview frames into a fixed set of recycled buffers rather than a newly
+   * allocated array per frame. Must be called before {@link #startPreview()}. A receiver of a frame
+   * then owns the buffer until it hands it back with {@link #releasePreviewBuffer(byte[])}, so the
+   * count should exceed the number of frames that can be held at once by at least one.
+   *
+   * @param count number of buffers to allocate, or 0 to let the driver allocate every frame
+   */
+  @Override
+  public synchronized void setPreviewBufferCount(int count) {
+    previewBufferCount = Math.max(count, 0);
+  }
+
+  /**
+   * Returns a frame received from {@link #requestPreviewFrame(Handler, int)} to the camera so it can
+   * be filled again. Does nothing for frames that weren't delivered in a recycled buffer. Takes no
+   * lock, so decode threads returning frames never wait on the main thread.
+   *
+   * @param data the frame's data, which the caller must not touch afterwards
+   */
+  @Override
+  public void releasePreviewBuffer(byte[] data) {
+    if (previewing) {
+      backend.releaseFrame(data);
+    }
+  }
+
+  /**
+   * @return the current screen and preview geometry, or null while the camera is closed; taking
+   *  several values from one snapshot keeps them consistent with each other. Takes no lock.
+   */
+  public CameraGeometry getGeometry() {
+    return geometry;
+  }
+
+  /**
+   * Rebuilds the geometry snapshot from the camera's configuration and the framing rectangle.
+   * Must be called with the lock held, whenever either changes.
+   */
+  private void updateGeometry() {
+    Point screenResolution = backend.isOpen() ? backend.getScreenResolution() : null;
+    Point cameraResolution = backend.isOpen() ? backend.getCameraResolution() : null;
+    if (screenResolution == null || cameraResolution == null) {
+      geometry = null;
+      return;
+    }
+    Rect framingRect = manualFramingRect;
+    if (framingRect == null) {
       int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
       int height = findDesiredDimensionInRange(screenResolution.y, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
 
@@ -230,9 +264,22 @@ public final class CameraManager {
       framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
       Log.d(TAG, "Calculated framing rect: " + framingRect);
     }
-    return framingRect;
+    geometry = new CameraGeometry(screenResolution, cameraResolution, backend.getRotation(), framingRect);
   }
-  
+
+  /**
+   * Calculates the framing rect which the UI should draw to show the user where to place the
+   * barcode. This target helps with alignment as well as forces the user to hold the device
+   * far enough away to ensure the image will be in focus. Takes no lock.
+   *
+   * @return The rectangle to draw on screen in window coordinates.
+   */
+  public Rect getFramingRect() {
+    CameraGeometry theGeometry = geometry;
+    return theGeometry == null ? null : theGeometry.getFramingRect();
+  }
+
+
   private static int findDesiredDimensionInRange(int resolution, int hardMin, int hardMax) {
     int dim = 5 * resolution / 8; // Target 5/8 of each dimension
     if (dim < hardMin) {
@@ -246,30 +293,14 @@ public final class CameraManager {
 
   /**
    * Like {@link #getFramingRect} but coordinates are in terms of the preview frame,
-   * not UI / screen.
+   * not UI / screen. Takes no lock.
    *
    * @return {@link Rect} expressing barcode scan area in terms of the preview size
    */
-  public synchronized Rect getFramingRectInPreview() {
-    if (framingRectInPreview == null) {
-      Rect framingRect = getFramingRect();
-      if (framingRect == null) {
-        return null;
-      }
-      Rect rect = new Rect(framingRect);
-      Point cameraResolution = configManager.getCameraResolution();
-      Point screenResolution = configManager.getScreenResolution();
-      if (cameraResolution == null || screenResolution == null) {
-        // Called early, before init even finished
-        return null;
-      }
-      rect.left = rect.left * cameraResolution.x / screenResolution.x;
-      rect.right = rect.right * cameraResolution.x / screenResolution.x;
-      rect.top = rect.top * cameraResolution.y / screenResolution.y;
-      rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
-      framingRectInPreview = rect;
-    }
-    return framingRectInPreview;
+  @Override
+  public Rect getFramingRectInPreview() {
+    CameraGeometry theGeometry = geometry;
+    return theGeometry == null ? null : theGeometry.getFramingRectInPreview();
   }
 
   
@@ -292,7 +323,7 @@ public final class CameraManager {
    */
   public synchronized void setManualFramingRect(int width, int height) {
     if (initialized) {
-      Point screenResolution = configManager.getScreenResolution();
+      Point screenResolution = backend.getScreenResolution();
       if (width > screenResolution.x) {
         width = screenResolution.x;
       }
@@ -301,9 +332,9 @@ public final class CameraManager {
       }
       int leftOffset = (screenResolution.x - width) / 2;
       int topOffset = (screenResolution.y - height) / 2;
-      framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
-      Log.d(TAG, "Calculated manual framing rect: " + framingRect);
-      framingRectInPreview = null;
+      manualFramingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+      Log.d(TAG, "Calculated manual framing rect: " + manualFramingRect);
+      updateGeometry();
     } else {
       requestedFramingRectWidth = width;
       requestedFramingRectHeight = height;
@@ -329,4 +360,40 @@ public final class CameraManager {
                                         rect.width(), rect.height(), false);
   }
 
+  /**
+   * Like {@link #buildLuminanceSource(byte[], int, int)}, but points {@code previous} at the new
+   * frame instead of building a new source, unless the framing rectangle has changed size since.
+   *
+   * @param previous the source returned by the last call, or null
+   * @return {@code previous} or a new source, or null if there is no framing rectangle yet
+   */
+  public RecyclableLuminanceSource buildLuminanceSource(byte[] data,
+                                                        int width,
+                                                        int height,
+                                                        RecyclableLuminanceSource previous) {
+    Rect rect = getFramingRectInPreview();
+    if (rect == null) {
+      return null;
+    }
+    return buildLuminanceSource(data, width, height, rect, previous);
+  }
+
+  /**
+   * Like {@link #buildLuminanceSource(byte[], int, int, RecyclableLuminanceSource)}, but for any
+   * crop of the frame, such as a smaller region around a barcode being tracked.
+   *
+   * @param crop the part of the frame to use, in preview frame coordinates
+   * @param previous the source returned by the last call, or null
+   * @return {@code previous} or a new source, if the crop has changed size
+   */
+  @Override
+  public RecyclableLuminanceSource buildLuminanceSource(byte[] data,
+                                                        int width,
+                                                        int height,
+                                                        Rect crop,
+                                                        RecyclableLuminanceSource previous) {
+    return RecyclableLuminanceSource.recycle(previous, data, width, height,
+                                             crop.left, crop.top, crop.width(), crop.height());
+  }
+
 }
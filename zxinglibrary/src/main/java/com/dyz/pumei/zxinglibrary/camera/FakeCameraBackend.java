@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.graphics.Point;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A camera without hardware, so that everything behind {@link CameraManager} can be exercised in
+ * unit tests. Frames are whatever the test passes to {@link #pushFrame(byte[], int)}; they go
+ * through the same buffer recycling as the camera2 backend and are delivered on the calling
+ * thread before it returns.
+ */
+public final class FakeCameraBackend implements CameraBackend {
+
+  private final Point screenResolution;
+  private final Point cameraResolution;
+  private final YPlaneDispatcher dispatcher;
+  private final AtomicLong deliveredFrames;
+  private IOException openFailure;
+  private volatile boolean open;
+  private volatile boolean previewing;
+  private volatile boolean torch;
+
+  /**
+   * A camera whose frames fill the screen exactly.
+   */
+  public FakeCameraBackend(int width, int height) {
+    this(new Point(width, height), new Point(width, height));
+  }
+
+  public FakeCameraBackend(Point screenResolution, Point cameraResolution) {
+    this.screenResolution = screenResolution;
+    this.cameraResolution = cameraResolution;
+    dispatcher = new YPlaneDispatcher();
+    deliveredFrames = new AtomicLong();
+  }
+
+  /**
+   * @param openFailure thrown by every following {@link #open}, or null to open normally
+   */
+  public synchronized void setOpenFailure(IOException openFailure) {
+    this.openFailure = openFailure;
+  }
+
+  @Override
+  public synchronized void open(int requestedCameraId, SurfaceHolder holder, FrameCallback callback)
+      throws IOException {
+    if (openFailure != null) {
+      throw openFailure;
+    }
+    dispatcher.setCallback(callback);
+    open = true;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public synchronized void close() {
+    stopPreview();
+    dispatcher.setCallback(null);
+    open = false;
+  }
+
+  @Override
+  public synchronized void startPreview(int bufferCount) {
+    if (open && !previewing) {
+      dispatcher.start(bufferCount);
+      previewing = true;
+    }
+  }
+
+  @Override
+  public synchronized void stopPreview() {
+    if (previewing) {
+      dispatcher.stop();
+      previewing = false;
+    }
+  }
+
+  public boolean isPreviewing() {
+    return previewing;
+  }
+
+  @Override
+  public Point getScreenResolution() {
+    return open ? screenResolution : null;
+  }
+
+  @Override
+  public Point getCameraResolution() {
+    return open ? cameraResolution : null;
+  }
+
+  @Override
+  public int getRotation() {
+    return 0;
+  }
+
+  @Override
+  public void setTorch(boolean on) {
+    torch = on;
+  }
+
+  public boolean isTorchOn() {
+    return torch;
+  }
+
+  @Override
+  public void requestFrame() {
+    dispatcher.request();
+  }
+
+  @Override
+  public void setStreaming(boolean streaming) {
+    dispatcher.setStreaming(streaming);
+  }
+
+  @Override
+  public void releaseFrame(byte[] data) {
+    dispatcher.release(data);
+  }
+
+  @Override
+  public boolean isRecyclingFrames() {
+    return dispatcher.isRecycling();
+  }
+
+  /**
+   * Same as {@link #pushFrame(byte[], int)} with rows packed back to back.
+   */
+  public boolean pushFrame(byte[] luminance) {
+    return pushFrame(luminance, cameraResolution.x);
+  }
+
+  /**
+   * Plays one preview frame, as the camera would.
+   *
+   * @param luminance one byte per pixel, {@code rowStride} bytes per row, for as many rows as the
+   *  camera resolution is high
+   * @param rowStride at least the camera resolution's width
+   * @return true if the frame was delivered; false if the preview is stopped, nobody asked for a
+   *  frame, or every recycled buffer is taken
+   */
+  public boolean pushFrame(byte[] luminance, int rowStride) {
+    return pushFrame(ByteBuffer.wrap(luminance), rowStride);
+  }
+
+  /**
+   * Like {@link #pushFrame(byte[], int)}, but for frames that aren't in an array, such as those
+   * mapped from a file. The buffer's position is left alone.
+   */
+  public boolean pushFrame(ByteBuffer luminance, int rowStride) {
+    if (rowStride < cameraResolution.x ||
+        luminance.remaining() < rowStride * (cameraResolution.y - 1) + cameraResolution.x) {
+      throw new IllegalArgumentException("Frame too small for " + cameraResolution.x + 'x' +
+          cameraResolution.y + " with row stride " + rowStride);
+    }
+    if (!previewing) {
+      return false;
+    }
+    if (!dispatcher.dispatch(luminance.duplicate(), rowStride, cameraResolution.y)) {
+      return false;
+    }
+    deliveredFrames.incrementAndGet();
+    return true;
+  }
+
+  public long getDeliveredFrameCount() {
+    return deliveredFrames.get();
+  }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.os.Handler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single-slot, latest-frame-wins handoff between the camera and the decoders, used when frames
+ * are streamed continuously rather than requested one at a time. The camera publishes every
+ * preview frame; a newer frame replaces one that no decoder has taken yet, and the replaced frame
+ * is counted and handed back to be recycled. Idle decoders register their {@link Handler} and get
+ * a message when a frame becomes available. No locks are taken on either side.
+ *
+ * Each frame travels with its size and publish time in one {@link Frame}, so a decoder taking a
+ * frame never pairs it with the size of a newer one published meanwhile.
+ */
+public final class FrameMailbox {
+
+  private final int message;
+  private final AtomicReference<Frame> slot;
+  private final Queue<Handler> waitingHandlers;
+  private final AtomicLong publishedFrames;
+  private final AtomicLong overwrittenFrames;
+  private volatile boolean open;
+
+  /**
+   * @param message the what field of the message sent to a waiting decoder when a frame arrives
+   */
+  public FrameMailbox(int message) {
+    this.message = message;
+    slot = new AtomicReference<>();
+    waitingHandlers = new ConcurrentLinkedQueue<>();
+    publishedFrames = new AtomicLong();
+    overwrittenFrames = new AtomicLong();
+  }
+
+  /**
+   * Starts accepting frames.
+   *
+   * @return a frame left over from before, which should be recycled, or null
+   */
+  byte[] open() {
+    open = true;
+    return dataOf(slot.getAndSet(null));
+  }
+
+  /**
+   * Stops accepting frames and wakes every waiting decoder, so that it can notice it should stop.
+   *
+   * @return the frame that was never taken, which should be recycled, or null
+   */
+  byte[] close() {
+    open = false;
+    Handler handler;
+    while ((handler = waitingHandlers.poll()) != null) {
+      handler.sendEmptyMessage(message);
+    }
+    return dataOf(slot.getAndSet(null));
+  }
+
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Called for each preview frame.
+   *
+   * @return the older frame this one replaced, or {@code data} itself if the mailbox is closed;
+   *  either way, the returned buffer is no longer referenced here and may be recycled
+   */
+  byte[] publish(byte[] data, int width, int height) {
+    if (!open) {
+      return data;
+    }
+    publishedFrames.incrementAndGet();
+    Frame displaced = slot.getAndSet(new Frame(data, width, height, System.nanoTime()));
+    if (displaced != null) {
+      overwrittenFrames.incrementAndGet();
+    }
+    Handler handler = waitingHandlers.poll();
+    if (handler != null) {
+      handler.sendEmptyMessage(message);
+    }
+    return dataOf(displaced);
+  }
+
+  /**
+   * @return the newest frame, whose data the caller now owns, or null if there is none
+   */
+  public Frame take() {
+    return slot.getAndSet(null);
+  }
+
+  private static byte[] dataOf(Frame frame) {
+    return frame == null ? null : frame.data;
+  }
+
+  /**
+   * Registers a decoder to be messaged when the next frame arrives or the mailbox closes.
+   *
+   * @param handler the decoder's handler
+   * @return true if the handler is registered; false if a frame is already waiting or the mailbox
+   *  is closed, in which case the caller should check again rather than wait
+   */
+  public boolean await(Handler handler) {
+    waitingHandlers.add(handler);
+    if (open && slot.get() == null) {
+      return true;
+    }
+    // If removal fails, a publisher already claimed this handler and a message is on its way
+    return !waitingHandlers.remove(handler);
+  }
+
+  public long getPublishedFrameCount() {
+    return publishedFrames.get();
+  }
+
+  /**
+   * @return number of frames replaced by a newer one before any decoder took them
+   */
+  public long getOverwrittenFrameCount() {
+    return overwrittenFrames.get();
+  }
+
+  /**
+   * A published frame together with its size and when it was published.
+   */
+  public static final class Frame {
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+    private final long publishTime;
+
+    Frame(byte[] data, int width, int height, long publishTime) {
+      this.data = data;
+      this.width = width;
+      this.height = height;
+      this.publishTime = publishTime;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the frame was published
+     */
+    public long getPublishTime() {
+      return publishTime;
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.graphics.Rect;
+import android.os.Handler;
+
+/**
+ * Where the decode pipeline gets its frames from: the camera through {@link CameraManager}, or a
+ * {@link SimulatedFrameSource} that makes frames up or plays them back, so that the pipeline can run
+ * the same way every time without a camera.
+ *
+ * Frames are luminance planes, one byte per pixel and row after row, possibly followed by bytes
+ * that are ignored. They are delivered as described at {@link #requestPreviewFrame(Handler, int)}.
+ */
+public interface FrameSource {
+
+  /**
+   * Delivers frames in a fixed set of recycled buffers. Must be called before
+   * {@link #startPreview()}.
+   *
+   * @param count number of buffers, or 0 for a new array per frame
+   * @see CameraManager#setPreviewBufferCount(int)
+   */
+  void setPreviewBufferCount(int count);
+
+  void startPreview();
+
+  void stopPreview();
+
+  /**
+   * Sends the next frame to {@code handler} as a message with the frame in {@code obj}, the
+   * distance between rows in {@code arg1} and the number of rows in {@code arg2}.
+   *
+   * @param handler the handler to send the message to
+   * @param message the what field of the message
+   */
+  void requestPreviewFrame(Handler handler, int message);
+
+  /**
+   * @param mailbox where every frame is published until {@link #stopFrameStream()}
+   */
+  void startFrameStream(FrameMailbox mailbox);
+
+  void stopFrameStream();
+
+  /**
+   * Hands a delivered frame back once nothing refers to it anymore.
+   */
+  void releasePreviewBuffer(byte[] data);
+
+  /**
+   * @return the part of the frame to decode, in frame coordinates, or null if not known yet
+   */
+  Rect getFramingRectInPreview();
+
+  /**
+   * @param crop the part of the frame to use, in frame coordinates
+   * @param previous the source returned by the last call, or null
+   * @return {@code previous} pointed at the new frame, or a new source if the crop changed size
+   */
+  RecyclableLuminanceSource buildLuminanceSource(byte[] data,
+                                                 int width,
+                                                 int height,
+                                                 Rect crop,
+                                                 RecyclableLuminanceSource previous);
+
+}
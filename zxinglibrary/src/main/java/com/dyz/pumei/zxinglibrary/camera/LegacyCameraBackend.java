@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.hardware.Camera;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import com.dyz.pumei.zxinglibrary.camera.open.OpenCamera;
+import com.dyz.pumei.zxinglibrary.camera.open.OpenCameraInterface;
+
+import java.io.IOException;
+
+/**
+ * The {@link android.hardware.Camera} API, available on every device. Frames are NV21, whose
+ * first plane is the luminance, delivered either one at a time, continuously, or into callback
+ * buffers that cycle between the camera and the decoders.
+ */
+@SuppressWarnings("deprecation") // camera APIs
+final class LegacyCameraBackend implements CameraBackend, Camera.PreviewCallback {
+
+  private static final String TAG = LegacyCameraBackend.class.getSimpleName();
+
+  private final Context context;
+  private final CameraConfigurationManager configManager;
+  private final PreviewBufferPool previewBufferPool;
+  private volatile OpenCamera camera;
+  private AutoFocusManager autoFocusManager;
+  private FrameCallback callback;
+  private boolean initialized;
+  private volatile boolean previewing;
+  private boolean streaming;
+
+  LegacyCameraBackend(Context context) {
+    this.context = context;
+    configManager = new CameraConfigurationManager(context);
+    previewBufferPool = new PreviewBufferPool();
+  }
+
+  @Override
+  public void open(int requestedCameraId, SurfaceHolder holder, FrameCallback callback)
+      throws IOException {
+    this.callback = callback;
+    OpenCamera theCamera = camera;
+    if (theCamera == null) {
+      theCamera = OpenCameraInterface.open(requestedCameraId);
+      if (theCamera == null) {
+        throw new IOException("Camera.open() failed to return object from driver");
+      }
+      camera = theCamera;
+    }
+
+    if (!initialized) {
+      initialized = true;
+      configManager.initFromCameraParameters(theCamera);
+    }
+
+    Camera cameraObject = theCamera.getCamera();
+    Camera.Parameters parameters = cameraObject.getParameters();
+    String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these, temporarily
+    try {
+      configManager.setDesiredCameraParameters(theCamera, false);
+    } catch (RuntimeException re) {
+      // Driver failed
+      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
+      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
+      // Reset:
+      if (parametersFlattened != null) {
+        parameters = cameraObject.getParameters();
+        parameters.unflatten(parametersFlattened);
+        try {
+          cameraObject.setParameters(parameters);
+          configManager.setDesiredCameraParameters(theCamera, true);
+        } catch (RuntimeException re2) {
+          // Well, darn. Give up
+          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
+        }
+      }
+    }
+    cameraObject.setPreviewDisplay(holder);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return camera != null;
+  }
+
+  @Override
+  public void close() {
+    if (camera != null) {
+      camera.getCamera().release();
+      camera = null;
+    }
+  }
+
+  @Override
+  public void startPreview(int bufferCount) {
+    OpenCamera theCamera = camera;
+    if (theCamera != null && !previewing) {
+      Camera cameraObject = theCamera.getCamera();
+      if (bufferCount > 0) {
+        startBufferedPreviewCallback(cameraObject, bufferCount);
+      }
+      cameraObject.startPreview();
+      previewing = true;
+      autoFocusManager = new AutoFocusManager(context, cameraObject);
+    }
+  }
+
+  @Override
+  public void stopPreview() {
+    if (autoFocusManager != null) {
+      autoFocusManager.stop();
+      autoFocusManager = null;
+    }
+    OpenCamera theCamera = camera;
+    if (theCamera != null && previewing) {
+      setStreaming(false);
+      theCamera.getCamera().stopPreview();
+      if (!previewBufferPool.isEmpty()) {
+        // Also drops any buffers still queued with the camera
+        theCamera.getCamera().setPreviewCallbackWithBuffer(null);
+        previewBufferPool.clear();
+      }
+      previewing = false;
+    }
+  }
+
+  @Override
+  public Point getScreenResolution() {
+    return configManager.getScreenResolution();
+  }
+
+  @Override
+  public Point getCameraResolution() {
+    return configManager.getCameraResolution();
+  }
+
+  @Override
+  public int getRotation() {
+    return configManager.getCWNeededRotation();
+  }
+
+  @Override
+  public void setTorch(boolean on) {
+    OpenCamera theCamera = camera;
+    if (theCamera != null && on != configManager.getTorchState(theCamera.getCamera())) {
+      boolean wasAutoFocusManager = autoFocusManager != null;
+      if (wasAutoFocusManager) {
+        autoFocusManager.stop();
+        autoFocusManager = null;
+      }
+      configManager.setTorch(theCamera.getCamera(), on);
+      if (wasAutoFocusManager) {
+        autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
+        autoFocusManager.start();
+      }
+    }
+  }
+
+  @Override
+  public void requestFrame() {
+    OpenCamera theCamera = camera;
+    if (theCamera != null && previewing && previewBufferPool.isEmpty() && !streaming) {
+      theCamera.getCamera().setOneShotPreviewCallback(this);
+    }
+  }
+
+  @Override
+  public void setStreaming(boolean streaming) {
+    OpenCamera theCamera = camera;
+    if (theCamera != null && previewing && streaming != this.streaming) {
+      this.streaming = streaming;
+      if (previewBufferPool.isEmpty()) {
+        // The buffered callback delivers every frame already
+        theCamera.getCamera().setPreviewCallback(streaming ? this : null);
+      }
+    }
+  }
+
+  @Override
+  public void releaseFrame(byte[] data) {
+    OpenCamera theCamera = camera;
+    if (theCamera != null && previewing && previewBufferPool.owns(data)) {
+      theCamera.getCamera().addCallbackBuffer(data);
+    }
+  }
+
+  @Override
+  public boolean isRecyclingFrames() {
+    return !previewBufferPool.isEmpty();
+  }
+
+  @Override
+  public void onPreviewFrame(byte[] data, Camera theCamera) {
+    Point cameraResolution = configManager.getCameraResolution();
+    FrameCallback theCallback = callback;
+    if (cameraResolution != null && theCallback != null) {
+      theCallback.onFrame(data, cameraResolution.x, cameraResolution.y);
+    } else {
+      releaseFrame(data);
+    }
+  }
+
+  private void startBufferedPreviewCallback(Camera cameraObject, int bufferCount) {
+    Point cameraResolution = configManager.getCameraResolution();
+    Camera.Parameters parameters = cameraObject.getParameters();
+    if (cameraResolution == null || parameters == null) {
+      return;
+    }
+    int bitsPerPixel = ImageFormat.getBitsPerPixel(parameters.getPreviewFormat());
+    if (bitsPerPixel <= 0) {
+      return;
+    }
+    int bufferSize = cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+    for (byte[] buffer : previewBufferPool.allocate(bufferSize, bufferCount)) {
+      cameraObject.addCallbackBuffer(buffer);
+    }
+    cameraObject.setPreviewCallbackWithBuffer(this);
+    Log.i(TAG, "Recycling " + bufferCount + " preview buffers of " + bufferSize + " bytes");
+  }
+
+}
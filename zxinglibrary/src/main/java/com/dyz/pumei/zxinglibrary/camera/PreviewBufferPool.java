@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+/**
+ * The fixed set of preview buffers handed to the camera with
+ * {@link android.hardware.Camera#addCallbackBuffer(byte[])}, or filled by a
+ * {@link YPlaneDispatcher}. Buffers cycle between the camera and
+ * the decoders instead of the driver allocating a new array for every frame. Only buffers from the
+ * current set are accepted back, so that arrays still held by a decoder across a preview restart
+ * don't accumulate in the camera's queue.
+ */
+final class PreviewBufferPool {
+
+  private byte[][] buffers;
+  private int bufferSize;
+
+  /**
+   * Replaces the current buffers with {@code count} new ones of {@code bufferSize} bytes each.
+   *
+   * @return the new buffers, which the caller should queue with the camera
+   */
+  synchronized byte[][] allocate(int bufferSize, int count) {
+    byte[][] newBuffers = new byte[count][];
+    for (int i = 0; i < count; i++) {
+      newBuffers[i] = new byte[bufferSize];
+    }
+    this.bufferSize = bufferSize;
+    buffers = newBuffers;
+    return newBuffers;
+  }
+
+  synchronized void clear() {
+    buffers = null;
+    bufferSize = 0;
+  }
+
+  /**
+   * @return true if {@code buffer} is one of the current buffers and may go back to the camera
+   */
+  synchronized boolean owns(byte[] buffer) {
+    if (buffers == null || buffer == null || buffer.length != bufferSize) {
+      return false;
+    }
+    for (byte[] ownBuffer : buffers) {
+      if (ownBuffer == buffer) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  synchronized boolean isEmpty() {
+    return buffers == null;
+  }
+
+}
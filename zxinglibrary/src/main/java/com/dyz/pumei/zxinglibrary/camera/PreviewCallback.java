@@ -16,41 +16,98 @@
 
 package com.dyz.pumei.zxinglibrary.camera;
 
-import android.graphics.Point;
-import android.hardware.Camera;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
-@SuppressWarnings("deprecation") // camera APIs
-final class PreviewCallback implements Camera.PreviewCallback {
+import com.dyz.pumei.zxinglibrary.metrics.LatencyHistogram;
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+final class PreviewCallback implements CameraBackend.FrameCallback {
 
   private static final String TAG = PreviewCallback.class.getSimpleName();
 
-  private final CameraConfigurationManager configManager;
-  private Handler previewHandler;
-  private int previewMessage;
+  private final CameraBackend backend;
+  private final Queue<Message> pendingMessages;
+  // When each pending message was queued, oldest at requestHead, in a ring to avoid boxing
+  private long[] requestTimes;
+  private int requestHead;
+  private final LatencyHistogram frameDelivery;
+  private volatile FrameMailbox mailbox;
 
-  PreviewCallback(CameraConfigurationManager configManager) {
-    this.configManager = configManager;
+  PreviewCallback(CameraBackend backend) {
+    this.backend = backend;
+    pendingMessages = new ArrayDeque<>();
+    requestTimes = new long[4];
+    frameDelivery = ScanMetrics.getInstance().histogram(ScanMetrics.FRAME_DELIVERY);
   }
 
-  void setHandler(Handler previewHandler, int previewMessage) {
-    this.previewHandler = previewHandler;
-    this.previewMessage = previewMessage;
+  /**
+   * Queues a handler to receive one preview frame. Handlers are served in the order they were added,
+   * one per frame.
+   */
+  synchronized void addHandler(Handler previewHandler, int previewMessage) {
+    int pending = pendingMessages.size();
+    if (pending == requestTimes.length) {
+      long[] newRequestTimes = new long[2 * pending];
+      for (int i = 0; i < pending; i++) {
+        newRequestTimes[i] = requestTimes[(requestHead + i) % pending];
+      }
+      requestTimes = newRequestTimes;
+      requestHead = 0;
+    }
+    requestTimes[(requestHead + pending) % requestTimes.length] = System.nanoTime();
+    pendingMessages.add(Message.obtain(previewHandler, previewMessage));
+  }
+
+  synchronized void clearHandlers() {
+    Message message;
+    while ((message = pendingMessages.poll()) != null) {
+      message.recycle();
+    }
+    requestHead = 0;
+  }
+
+  /**
+   * @param mailbox if not null, every frame is published here instead of going to queued handlers
+   */
+  void setMailbox(FrameMailbox mailbox) {
+    this.mailbox = mailbox;
   }
 
   @Override
-  public void onPreviewFrame(byte[] data, Camera camera) {
-    Point cameraResolution = configManager.getCameraResolution();
-    Handler thePreviewHandler = previewHandler;
-    if (cameraResolution != null && thePreviewHandler != null) {
-      Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x,
-          cameraResolution.y, data);
-      message.sendToTarget();
-      previewHandler = null;
-    } else {
-      Log.d(TAG, "Got preview callback, but no handler or resolution available");
+  public void onFrame(byte[] data, int dataWidth, int dataHeight) {
+    FrameMailbox theMailbox = mailbox;
+    if (theMailbox != null) {
+      byte[] displaced = theMailbox.publish(data, dataWidth, dataHeight);
+      backend.releaseFrame(displaced);
+      return;
+    }
+    synchronized (this) {
+      Message message = pendingMessages.peek();
+      if (message != null) {
+        pendingMessages.remove();
+        frameDelivery.recordNanos(System.nanoTime() - requestTimes[requestHead]);
+        requestHead = (requestHead + 1) % requestTimes.length;
+        message.arg1 = dataWidth;
+        message.arg2 = dataHeight;
+        message.obj = data;
+        message.sendToTarget();
+        if (!backend.isRecyclingFrames() && !pendingMessages.isEmpty()) {
+          // More decoders are waiting; a one-shot request has to be re-armed for each frame
+          backend.requestFrame();
+        }
+      } else if (backend.isRecyclingFrames()) {
+        // Expected whenever all decoders are busy; just let the camera fill this buffer again
+        ScanMetrics.getInstance().increment(ScanMetrics.FRAMES_UNUSED);
+        backend.releaseFrame(data);
+      } else {
+        ScanMetrics.getInstance().increment(ScanMetrics.FRAMES_DROPPED);
+        Log.d(TAG, "Got preview callback, but no handler available");
+      }
     }
   }
 
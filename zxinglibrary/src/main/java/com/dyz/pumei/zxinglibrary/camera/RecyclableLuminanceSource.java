@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Like {@link com.google.zxing.PlanarYUVLuminanceSource}, the luminance plane of a YUV preview frame
+ * cropped to the framing rectangle, except that one instance is pointed at each new frame with
+ * {@link #reset(byte[], int, int, int, int)} instead of a new one being built every time. The crop
+ * size is fixed for the life of the instance, so {@link CameraManager} only makes a new one when
+ * the framing rectangle changes size.
+ *
+ * Reading rows and the matrix is safe from several threads at once, as long as none of them is
+ * still reading when the source is reset.
+ */
+public final class RecyclableLuminanceSource extends LuminanceSource {
+
+  private static final AtomicLong instances = new AtomicLong();
+
+  private byte[] yuvData;
+  private int dataWidth;
+  private int dataHeight;
+  private int left;
+  private int top;
+  private final byte[] matrix;
+  private boolean matrixValid;
+
+  RecyclableLuminanceSource(int width, int height) {
+    super(width, height);
+    matrix = new byte[width * height];
+    instances.incrementAndGet();
+    ScanMetrics.getInstance().increment(ScanMetrics.LUMINANCE_SOURCES_ALLOCATED);
+  }
+
+  /**
+   * Points {@code previous} at a new frame, or makes a new source if there is none yet or the crop
+   * has changed size since.
+   *
+   * @param previous the source returned by the last call, or null
+   * @return {@code previous} or a new source, cropped to the given rectangle of the frame
+   */
+  static RecyclableLuminanceSource recycle(RecyclableLuminanceSource previous,
+                                           byte[] yuvData,
+                                           int dataWidth,
+                                           int dataHeight,
+                                           int left,
+                                           int top,
+                                           int width,
+                                           int height) {
+    RecyclableLuminanceSource source = previous;
+    if (source == null || !source.hasCropSize(width, height)) {
+      source = new RecyclableLuminanceSource(width, height);
+    }
+    source.reset(yuvData, dataWidth, dataHeight, left, top);
+    return source;
+  }
+
+  /**
+   * @return number of instances made so far, including the crop buffer each one owns; this should
+   *  stay constant while the same framing rectangle is being scanned
+   */
+  public static long getInstanceCount() {
+    return instances.get();
+  }
+
+  /**
+   * Points this source at a new frame, with a crop of the same size as before.
+   */
+  void reset(byte[] yuvData, int dataWidth, int dataHeight, int left, int top) {
+    if (left + getWidth() > dataWidth || top + getHeight() > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    synchronized (matrix) {
+      this.yuvData = yuvData;
+      this.dataWidth = dataWidth;
+      this.dataHeight = dataHeight;
+      this.left = left;
+      this.top = top;
+      matrixValid = false;
+    }
+  }
+
+  boolean hasCropSize(int width, int height) {
+    return getWidth() == width && getHeight() == height;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    int offset = (y + top) * dataWidth + left;
+    System.arraycopy(yuvData, offset, row, 0, width);
+    return row;
+  }
+
+  /**
+   * @return the cropped luminance plane, in an array owned by this source; callers must not modify
+   *  it, and it is overwritten by the next frame
+   */
+  @Override
+  public byte[] getMatrix() {
+    int width = getWidth();
+    int height = getHeight();
+    synchronized (matrix) {
+      if (width == dataWidth && height == dataHeight) {
+        return yuvData;
+      }
+      if (!matrixValid) {
+        int inputOffset = top * dataWidth + left;
+        if (width == dataWidth) {
+          System.arraycopy(yuvData, inputOffset, matrix, 0, width * height);
+        } else {
+          for (int y = 0; y < height; y++) {
+            System.arraycopy(yuvData, inputOffset, matrix, y * width, width);
+            inputOffset += dataWidth;
+          }
+        }
+        matrixValid = true;
+      }
+      return matrix;
+    }
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  /**
+   * @return a one-off source over the same frame, which is only valid until this source is reset
+   */
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    return new PlanarYUVLuminanceSource(yuvData, dataWidth, dataHeight,
+        this.left + left, this.top + top, width, height, false);
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import com.dyz.pumei.zxinglibrary.camera.frames.FrameRecording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Plays back a {@link FrameRecording}, either at the pace it was recorded at, dropping frames the
+ * decoders aren't ready for just as the camera did, or as fast as the decoders take the frames, in
+ * which case every frame is decoded. Frames go straight from the mapped file into the recycled
+ * buffers. Each start of the preview plays the recording from the beginning.
+ */
+public final class ReplayFrameSource extends SimulatedFrameSource implements Closeable {
+
+  private final FrameRecording.Reader reader;
+  private final boolean realTime;
+  private long firstTimestamp;
+  private boolean started;
+  private FrameRecording.Frame frame;
+
+  /**
+   * @param realTime true to keep the recorded timing, false to play at full speed
+   * @throws IOException if the recording can't be read
+   */
+  public static ReplayFrameSource open(File recording, boolean realTime) throws IOException {
+    return new ReplayFrameSource(new FrameRecording.Reader(recording), realTime);
+  }
+
+  private ReplayFrameSource(FrameRecording.Reader reader, boolean realTime) {
+    super(reader.getWidth(), reader.getHeight());
+    this.reader = reader;
+    this.realTime = realTime;
+  }
+
+  @Override
+  protected void onStart() {
+    reader.rewind();
+    frame = null;
+    started = false;
+  }
+
+  @Override
+  protected ByteBuffer nextFrame() {
+    frame = reader.next();
+    if (frame == null) {
+      return null;
+    }
+    if (!started) {
+      started = true;
+      firstTimestamp = frame.getTimestampNanos();
+    }
+    return frame.getData();
+  }
+
+  @Override
+  protected int getRowStride() {
+    return frame.getDataWidth();
+  }
+
+  @Override
+  protected long getPresentationTimeNanos() {
+    return realTime ? frame.getTimestampNanos() - firstTimestamp : -1L;
+  }
+
+  @Override
+  public void close() throws IOException {
+    stopPreview();
+    reader.close();
+  }
+
+}
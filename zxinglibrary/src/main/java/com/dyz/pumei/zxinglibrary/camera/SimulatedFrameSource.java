@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link FrameSource} with no camera behind it. A thread of its own plays frames from
+ * {@link #nextFrame()} into a {@link CameraManager} over a {@link FakeCameraBackend}, so frames
+ * reach the decoders exactly as the camera's would, through the same requests, mailbox and
+ * recycled buffers.
+ *
+ * Frames with a presentation time are delivered when due, and dropped if no decoder wants them
+ * then, like a real camera's. Frames without one are delivered as soon as a decoder wants them and
+ * never dropped, which measures how fast the pipeline itself can go.
+ */
+public abstract class SimulatedFrameSource implements FrameSource {
+
+  private static final String TAG = SimulatedFrameSource.class.getSimpleName();
+
+  // How long to wait for a decoder to want a frame, when playing at full speed
+  private static final long RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+  private final int width;
+  private final FakeCameraBackend camera;
+  private final CameraManager cameraManager;
+  private final AtomicLong droppedFrames;
+  private Thread player;
+  private volatile boolean playing;
+
+  /**
+   * @param width width of the frames
+   * @param height height of the frames
+   */
+  protected SimulatedFrameSource(int width, int height) {
+    this.width = width;
+    camera = new FakeCameraBackend(width, height);
+    cameraManager = new CameraManager(camera);
+    droppedFrames = new AtomicLong();
+    try {
+      cameraManager.openDriver(null);
+    } catch (IOException ioe) {
+      // The fake camera always opens
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  /**
+   * Called on the playing thread for each frame in turn.
+   *
+   * @return the next frame's luminance plane, with rows {@link #getRowStride()} bytes apart, or
+   *  null if there are no more frames. It may be reused once the next call is made.
+   */
+  protected abstract ByteBuffer nextFrame();
+
+  /**
+   * @return distance between rows of the frame last returned by {@link #nextFrame()}
+   */
+  protected int getRowStride() {
+    return width;
+  }
+
+  /**
+   * @return when the frame last returned by {@link #nextFrame()} is due, in nanoseconds after the
+   *  first frame, or a negative value to deliver it as soon as a decoder wants it
+   */
+  protected abstract long getPresentationTimeNanos();
+
+  /**
+   * Called on the playing thread before the first frame, each time the preview starts.
+   */
+  protected void onStart() {
+  }
+
+  /**
+   * @see CameraManager#setManualFramingRect(int, int)
+   */
+  public void setManualFramingRect(int width, int height) {
+    cameraManager.setManualFramingRect(width, height);
+  }
+
+  /**
+   * @return number of frames delivered to the decoders so far
+   */
+  public long getDeliveredFrameCount() {
+    return camera.getDeliveredFrameCount();
+  }
+
+  /**
+   * @return number of frames that were due while no decoder wanted one
+   */
+  public long getDroppedFrameCount() {
+    return droppedFrames.get();
+  }
+
+  /**
+   * Waits until the last frame has been delivered, or the preview stops.
+   *
+   * @return true if playing ended within the timeout
+   */
+  public boolean awaitEnd(long timeout, TimeUnit unit) throws InterruptedException {
+    Thread thePlayer;
+    synchronized (this) {
+      thePlayer = player;
+    }
+    if (thePlayer != null) {
+      thePlayer.join(Math.max(1L, unit.toMillis(timeout)));
+      return !thePlayer.isAlive();
+    }
+    return true;
+  }
+
+  @Override
+  public void setPreviewBufferCount(int count) {
+    cameraManager.setPreviewBufferCount(count);
+  }
+
+  @Override
+  public synchronized void startPreview() {
+    if (player == null) {
+      cameraManager.startPreview();
+      playing = true;
+      player = new Thread(new Player(), TAG);
+      player.start();
+    }
+  }
+
+  @Override
+  public void stopPreview() {
+    Thread thePlayer;
+    synchronized (this) {
+      thePlayer = player;
+      player = null;
+      playing = false;
+    }
+    if (thePlayer != null) {
+      thePlayer.interrupt();
+      try {
+        thePlayer.join();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    cameraManager.stopPreview();
+  }
+
+  @Override
+  public void requestPreviewFrame(Handler handler, int message) {
+    cameraManager.requestPreviewFrame(handler, message);
+  }
+
+  @Override
+  public void startFrameStream(FrameMailbox mailbox) {
+    cameraManager.startFrameStream(mailbox);
+  }
+
+  @Override
+  public void stopFrameStream() {
+    cameraManager.stopFrameStream();
+  }
+
+  @Override
+  public void releasePreviewBuffer(byte[] data) {
+    cameraManager.releasePreviewBuffer(data);
+  }
+
+  @Override
+  public Rect getFramingRectInPreview() {
+    return cameraManager.getFramingRectInPreview();
+  }
+
+  @Override
+  public RecyclableLuminanceSource buildLuminanceSource(byte[] data,
+                                                        int width,
+                                                        int height,
+                                                        Rect crop,
+                                                        RecyclableLuminanceSource previous) {
+    return cameraManager.buildLuminanceSource(data, width, height, crop, previous);
+  }
+
+  private final class Player implements Runnable {
+    @Override
+    public void run() {
+      onStart();
+      long start = System.nanoTime();
+      try {
+        ByteBuffer frame;
+        while (playing && (frame = nextFrame()) != null) {
+          play(frame, getRowStride(), getPresentationTimeNanos(), start);
+        }
+      } catch (InterruptedException ie) {
+        // Preview stopped
+      }
+      Log.d(TAG, "Played " + camera.getDeliveredFrameCount() + " frames, dropped " + droppedFrames.get());
+    }
+
+    private void play(ByteBuffer frame, int rowStride, long presentationTime, long start)
+        throws InterruptedException {
+      if (presentationTime < 0) {
+        while (playing && !camera.pushFrame(frame, rowStride)) {
+          TimeUnit.NANOSECONDS.sleep(RETRY_NANOS);
+        }
+        return;
+      }
+      long wait = start + presentationTime - System.nanoTime();
+      if (wait > 0) {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      }
+      if (!camera.pushFrame(frame, rowStride)) {
+        droppedFrames.incrementAndGet();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import com.dyz.pumei.zxinglibrary.camera.frames.SyntheticFrameRenderer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays frames drawn by a {@link SyntheticFrameRenderer}, endlessly or up to a number of frames.
+ * The renderer's settings may be changed while playing, to see how the pipeline copes with blur
+ * or noise coming and going.
+ */
+public final class SyntheticFrameSource extends SimulatedFrameSource {
+
+  private final SyntheticFrameRenderer renderer;
+  private final long frameIntervalNanos;
+  private final long frameCount;
+  private final byte[] frame;
+  private long frameIndex;
+
+  /**
+   * @param renderer draws the frames, and sets their size
+   * @param fps frames per second, or 0 to play each frame as soon as a decoder wants one
+   * @param frameCount number of frames to play, or 0 to go on until the preview stops
+   */
+  public SyntheticFrameSource(SyntheticFrameRenderer renderer, float fps, long frameCount) {
+    super(renderer.getWidth(), renderer.getHeight());
+    this.renderer = renderer;
+    frameIntervalNanos = fps > 0.0f ? (long) (TimeUnit.SECONDS.toNanos(1) / fps) : -1L;
+    this.frameCount = frameCount;
+    frame = renderer.newFrame();
+  }
+
+  public SyntheticFrameRenderer getRenderer() {
+    return renderer;
+  }
+
+  @Override
+  protected void onStart() {
+    frameIndex = 0;
+  }
+
+  @Override
+  protected ByteBuffer nextFrame() {
+    if (frameCount > 0 && frameIndex >= frameCount) {
+      return null;
+    }
+    frameIndex++;
+    renderer.render(frame);
+    return ByteBuffer.wrap(frame);
+  }
+
+  @Override
+  protected long getPresentationTimeNanos() {
+    return frameIntervalNanos < 0 ? -1L : (frameIndex - 1) * frameIntervalNanos;
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Frame delivery for backends whose frames arrive as a luminance plane in a {@link ByteBuffer},
+ * such as an {@link android.media.Image} from an {@link android.media.ImageReader}. The plane is
+ * copied as is, row stride included, into a recycled buffer, so no format conversion takes place.
+ * Behaves like the legacy camera does with callback buffers: while recycling, every frame is
+ * delivered as long as a buffer is free, and otherwise only frames that were asked for.
+ */
+final class YPlaneDispatcher {
+
+  private final PreviewBufferPool bufferPool;
+  private final Queue<byte[]> freeBuffers;
+  private final AtomicBoolean frameRequested;
+  private volatile CameraBackend.FrameCallback callback;
+  private volatile int bufferCount;
+  private volatile boolean streaming;
+
+  YPlaneDispatcher() {
+    bufferPool = new PreviewBufferPool();
+    freeBuffers = new ConcurrentLinkedQueue<>();
+    frameRequested = new AtomicBoolean();
+  }
+
+  void setCallback(CameraBackend.FrameCallback callback) {
+    this.callback = callback;
+  }
+
+  /**
+   * @param bufferCount number of buffers to recycle, or 0 to allocate a new one per frame. They are
+   *  allocated with the first frame, once its row stride is known.
+   */
+  void start(int bufferCount) {
+    stop();
+    this.bufferCount = bufferCount;
+  }
+
+  void stop() {
+    bufferCount = 0;
+    streaming = false;
+    frameRequested.set(false);
+    bufferPool.clear();
+    freeBuffers.clear();
+  }
+
+  void request() {
+    frameRequested.set(true);
+  }
+
+  void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  void release(byte[] data) {
+    if (bufferPool.owns(data)) {
+      freeBuffers.add(data);
+    }
+  }
+
+  boolean isRecycling() {
+    return bufferCount > 0;
+  }
+
+  /**
+   * Copies one luminance plane to the callback, if a frame is wanted and a buffer is free.
+   *
+   * @param plane the plane's pixels from its current position on; the last row may be shorter
+   *  than {@code rowStride}
+   * @param rowStride bytes from one row to the next
+   * @param height number of rows
+   * @return true if the frame was delivered
+   */
+  boolean dispatch(ByteBuffer plane, int rowStride, int height) {
+    CameraBackend.FrameCallback theCallback = callback;
+    if (theCallback == null) {
+      return false;
+    }
+    int size = rowStride * height;
+    byte[] buffer;
+    if (isRecycling()) {
+      if (bufferPool.isEmpty()) {
+        allocateBuffers(size);
+      }
+      buffer = freeBuffers.poll();
+      if (buffer == null) {
+        // Every buffer is still with a decoder; the legacy camera would drop this frame too
+        return false;
+      }
+      if (buffer.length != size) {
+        // The row stride changed, which only happens when the camera is reconfigured
+        allocateBuffers(size);
+        buffer = freeBuffers.poll();
+      }
+    } else {
+      if (!streaming && !frameRequested.getAndSet(false)) {
+        return false;
+      }
+      buffer = new byte[size];
+    }
+    // Copied rather than decoded in place: the Image is closed as soon as this returns, so that the
+    // ImageReader's few images keep cycling while decoders hold frames for much longer
+    plane.get(buffer, 0, Math.min(plane.remaining(), size));
+    theCallback.onFrame(buffer, rowStride, height);
+    return true;
+  }
+
+  private void allocateBuffers(int size) {
+    freeBuffers.clear();
+    for (byte[] buffer : bufferPool.allocate(size, bufferCount)) {
+      freeBuffers.add(buffer);
+    }
+  }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera.frames;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file of recorded preview frames, as written by {@link MappedFrameRecorder}, to be played back
+ * with {@link com.dyz.pumei.zxinglibrary.camera.ReplayFrameSource} or {@link FrameReplayTool}. Only the luminance plane of each
+ * frame is kept, since that is all the decoders read.
+ *
+ * <p>All numbers are big-endian. The file starts with a header:</p>
+ * <pre>
+ *   int   magic, "ZXFR"
+ *   short version
+ *   short header size, including magic and version
+ *   int   preview width
+ *   int   preview height
+ * </pre>
+ * <p>followed by one record per frame:</p>
+ * <pre>
+ *   int   length of the frame data, or 0 where the recording ends
+ *   long  timestamp in nanoseconds, on any clock that doesn't go backwards
+ *   int   distance between rows in the frame data
+ *   int   number of rows
+ *   int   left, top, right, bottom of the area decoded, or all -1 if not known
+ *   byte  outcome of decoding the frame, one of the OUTCOME_ constants
+ *   byte[length] the frame data
+ * </pre>
+ * <p>Readers skip header bytes they don't know, so later versions may add fields to the header.</p>
+ */
+public final class FrameRecording {
+
+  public static final int MAGIC = 0x5A584652; // "ZXFR"
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 16;
+  public static final int RECORD_HEADER_SIZE = 37;
+
+  public static final byte OUTCOME_UNKNOWN = 0;
+  public static final byte OUTCOME_FOUND = 1;
+  public static final byte OUTCOME_NOT_FOUND = 2;
+  /** The frame wasn't decoded at all, being too blurry or no different from the last one. */
+  public static final byte OUTCOME_SKIPPED = 3;
+
+  private FrameRecording() {
+  }
+
+  /**
+   * One recorded frame.
+   */
+  public static final class Frame {
+
+    private final long timestampNanos;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int[] crop;
+    private final byte outcome;
+    private final ByteBuffer data;
+
+    Frame(long timestampNanos, int dataWidth, int dataHeight, int[] crop, byte outcome, ByteBuffer data) {
+      this.timestampNanos = timestampNanos;
+      this.dataWidth = dataWidth;
+      this.dataHeight = dataHeight;
+      this.crop = crop;
+      this.outcome = outcome;
+      this.data = data;
+    }
+
+    public long getTimestampNanos() {
+      return timestampNanos;
+    }
+
+    public int getDataWidth() {
+      return dataWidth;
+    }
+
+    public int getDataHeight() {
+      return dataHeight;
+    }
+
+    /**
+     * @return left, top, right and bottom of the area that was decoded, or null if not recorded
+     */
+    public int[] getCrop() {
+      return crop == null ? null : crop.clone();
+    }
+
+    public byte getOutcome() {
+      return outcome;
+    }
+
+    /**
+     * @return the luminance plane, read-only and straight from the file
+     */
+    public ByteBuffer getData() {
+      return data.duplicate();
+    }
+  }
+
+  /**
+   * Reads a recording by mapping it into memory, so frames are never copied on the way out.
+   * Recordings must be under 2 GB.
+   */
+  public static final class Reader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int firstRecord;
+
+    public Reader(File recording) throws IOException {
+      file = new RandomAccessFile(recording, "r");
+      try {
+        FileChannel channel = file.getChannel();
+        if (channel.size() > Integer.MAX_VALUE) {
+          throw new IOException("Recording too large to map: " + channel.size() + " bytes");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+          throw new IOException("Not a frame recording: " + recording);
+        }
+        int version = buffer.getShort(4);
+        if (version > VERSION) {
+          throw new IOException("Recording version " + version + " is newer than " + VERSION);
+        }
+        firstRecord = buffer.getShort(6);
+        width = buffer.getInt(8);
+        height = buffer.getInt(12);
+        buffer.position(firstRecord);
+      } catch (IOException | RuntimeException e) {
+        file.close();
+        throw e;
+      }
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return the next frame, or null at the end of the recording
+     */
+    public Frame next() {
+      if (buffer.remaining() < RECORD_HEADER_SIZE) {
+        return null;
+      }
+      int start = buffer.position();
+      int length = buffer.getInt(start);
+      if (length <= 0 || length > buffer.remaining() - RECORD_HEADER_SIZE) {
+        // The end marker, or a frame cut short when recording stopped abruptly
+        return null;
+      }
+      buffer.position(start + 4);
+      long timestampNanos = buffer.getLong();
+      int dataWidth = buffer.getInt();
+      int dataHeight = buffer.getInt();
+      int[] crop = {buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()};
+      if (crop[0] < 0) {
+        crop = null;
+      }
+      byte outcome = buffer.get();
+      ByteBuffer data = buffer.slice();
+      data.limit(length);
+      buffer.position(buffer.position() + length);
+      return new Frame(timestampNanos, dataWidth, dataHeight, crop, outcome, data.asReadOnlyBuffer());
+    }
+
+    /**
+     * Starts again from the first frame.
+     */
+    public void rewind() {
+      buffer.position(firstRecord);
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+  }
+
+  /**
+   * Writes a recording to a stream, for tests and tools. Recording a live preview should go
+   * through a {@link MappedFrameRecorder} instead, which doesn't block on the disk.
+   */
+  public static final class Writer implements Closeable {
+
+    private final DataOutputStream out;
+
+    public Writer(OutputStream out, int width, int height) throws IOException {
+      this.out = new DataOutputStream(out);
+      this.out.writeInt(MAGIC);
+      this.out.writeShort(VERSION);
+      this.out.writeShort(HEADER_SIZE);
+      this.out.writeInt(width);
+      this.out.writeInt(height);
+    }
+
+    /**
+     * @param data the frame, of which the first {@code dataWidth * dataHeight} bytes are written
+     * @param crop left, top, right and bottom of the area decoded, or null
+     * @param outcome one of the OUTCOME_ constants
+     */
+    public void write(byte[] data,
+                      int dataWidth,
+                      int dataHeight,
+                      long timestampNanos,
+                      int[] crop,
+                      byte outcome) throws IOException {
+      int length = dataWidth * dataHeight;
+      out.writeInt(length);
+      out.writeLong(timestampNanos);
+      out.writeInt(dataWidth);
+      out.writeInt(dataHeight);
+      for (int i = 0; i < 4; i++) {
+        out.writeInt(crop == null ? -1 : crop[i]);
+      }
+      out.writeByte(outcome);
+      out.write(data, 0, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.writeInt(0);
+      out.close();
+    }
+  }
+
+}
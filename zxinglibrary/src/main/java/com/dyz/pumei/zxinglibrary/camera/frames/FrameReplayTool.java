@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera.frames;
+
+import com.dyz.pumei.zxinglibrary.engine.DecodeFormats;
+import com.dyz.pumei.zxinglibrary.engine.ScanEngine;
+import com.dyz.pumei.zxinglibrary.engine.ScanResult;
+import com.dyz.pumei.zxinglibrary.metrics.LatencyHistogram;
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes every frame of a {@link FrameRecording} again, one after the other as fast as it can,
+ * over the same area the scanner decoded, and reports how long it took and where the outcome
+ * differs from the one recorded. Meant for reproducing a slow scan off the device:
+ *
+ * <pre>
+ *   java FrameReplayTool [--formats QR_CODE,EAN_13] [--try-harder] [--verbose] recording.zxfr
+ * </pre>
+ */
+public final class FrameReplayTool {
+
+  private static final String HISTOGRAM = "replay.decode";
+
+  private final ScanEngine engine;
+  private final boolean verbose;
+  private final PrintStream out;
+
+  public FrameReplayTool(Collection<BarcodeFormat> formats, boolean tryHarder, boolean verbose, PrintStream out) {
+    Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+    if (tryHarder) {
+      hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+    }
+    engine = new ScanEngine(formats, hints, null);
+    this.verbose = verbose;
+    this.out = out;
+  }
+
+  /**
+   * Replays one recording and prints a summary.
+   *
+   * @return number of frames whose outcome differs from the one recorded
+   */
+  public int replay(File recording) throws IOException {
+    LatencyHistogram times = ScanMetrics.getInstance().histogram(HISTOGRAM);
+    int frames = 0;
+    int found = 0;
+    int mismatches = 0;
+    long start = System.nanoTime();
+    try (FrameRecording.Reader reader = new FrameRecording.Reader(recording)) {
+      out.println(recording + ": " + reader.getWidth() + "x" + reader.getHeight());
+      FrameRecording.Frame frame;
+      while ((frame = reader.next()) != null) {
+        ScanResult result = decode(frame, reader.getWidth());
+        times.recordNanos(result.getDecodeNanos());
+        frames++;
+        if (result.isFound()) {
+          found++;
+        }
+        byte recorded = frame.getOutcome();
+        boolean mismatch = (recorded == FrameRecording.OUTCOME_FOUND && !result.isFound()) ||
+            (recorded == FrameRecording.OUTCOME_NOT_FOUND && result.isFound());
+        if (mismatch) {
+          mismatches++;
+        }
+        if (verbose || mismatch) {
+          out.println("  frame " + frames + " at " +
+              TimeUnit.NANOSECONDS.toMillis(frame.getTimestampNanos()) + " ms: recorded " +
+              describe(recorded) + ", " + result + (mismatch ? " (differs)" : ""));
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    out.println(frames + " frames, " + found + " found, " + mismatches + " differ from the recording");
+    if (frames > 0) {
+      out.println("Took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms, " +
+          (frames * TimeUnit.SECONDS.toNanos(1) / Math.max(1L, elapsed)) + " frames/s");
+      out.println(times.snapshot());
+    }
+    return mismatches;
+  }
+
+  /**
+   * @param previewWidth width of the picture, which is less than the recorded row length when rows
+   *  were padded
+   */
+  private ScanResult decode(FrameRecording.Frame frame, int previewWidth) {
+    int rowStride = frame.getDataWidth();
+    int dataWidth = previewWidth > 0 ? Math.min(previewWidth, rowStride) : rowStride;
+    int dataHeight = frame.getDataHeight();
+    // Decoded straight out of the mapped file
+    ByteBuffer data = frame.getData();
+    int[] crop = frame.getCrop();
+    if (crop == null) {
+      return engine.decode(data, rowStride, dataWidth, dataHeight, 0, 0, dataWidth, dataHeight);
+    }
+    return engine.decode(data, rowStride, dataWidth, dataHeight,
+        crop[0], crop[1], crop[2] - crop[0], crop[3] - crop[1]);
+  }
+
+  private static String describe(byte outcome) {
+    switch (outcome) {
+      case FrameRecording.OUTCOME_FOUND:
+        return "found";
+      case FrameRecording.OUTCOME_NOT_FOUND:
+        return "not found";
+      case FrameRecording.OUTCOME_SKIPPED:
+        return "skipped";
+      default:
+        return "unknown";
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    Collection<BarcodeFormat> formats = null;
+    boolean tryHarder = false;
+    boolean verbose = false;
+    List<File> recordings = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if ("--formats".equals(arg) && i + 1 < args.length) {
+        List<String> names = new ArrayList<>();
+        for (String name : args[++i].split(",")) {
+          names.add(name.trim());
+        }
+        formats = DecodeFormats.parse(names, null);
+      } else if ("--try-harder".equals(arg)) {
+        tryHarder = true;
+      } else if ("--verbose".equals(arg)) {
+        verbose = true;
+      } else if (arg.startsWith("--")) {
+        usage();
+        return;
+      } else {
+        recordings.add(new File(arg));
+      }
+    }
+    if (recordings.isEmpty()) {
+      usage();
+      return;
+    }
+    FrameReplayTool tool = new FrameReplayTool(formats, tryHarder, verbose, System.out);
+    int mismatches = 0;
+    for (File recording : recordings) {
+      mismatches += tool.replay(recording);
+    }
+    if (mismatches > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static void usage() {
+    System.err.println("Usage: FrameReplayTool [--formats FORMAT,...] [--try-harder] [--verbose] " +
+        "recording...");
+    System.exit(2);
+  }
+
+}
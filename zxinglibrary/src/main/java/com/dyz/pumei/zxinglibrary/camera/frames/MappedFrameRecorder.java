@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera.frames;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends frames to a {@link FrameRecording} through a memory mapping of the whole file, sized up
+ * front to a disk budget. Recording a frame is a copy into the page cache; no system call is made
+ * and the kernel writes pages back in its own time, so recording costs the decoders little and the
+ * camera thread nothing.
+ *
+ * Once half the budget is used, only frames that failed to decode are kept, since those are the
+ * ones worth investigating; once it is all used, recording stops. Safe to use from several decode
+ * threads at once.
+ */
+public final class MappedFrameRecorder implements Closeable {
+
+  /** Fraction of the budget after which only failed frames are kept. */
+  private static final double FAILED_ONLY_FRACTION = 0.5;
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final long budgetBytes;
+  private MappedByteBuffer buffer;
+  private boolean headerWritten;
+  private long recordedFrames;
+  private long skippedFrames;
+
+  /**
+   * @param file where to record, which is replaced if it exists
+   * @param budgetBytes most bytes the file may take up, at most 2 GB
+   * @throws IOException if the file can't be created at that size
+   */
+  public MappedFrameRecorder(File file, long budgetBytes) throws IOException {
+    this.file = file;
+    this.budgetBytes = Math.min(budgetBytes, Integer.MAX_VALUE);
+    if (this.budgetBytes < FrameRecording.HEADER_SIZE + 4) {
+      throw new IllegalArgumentException("Budget too small: " + budgetBytes);
+    }
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(0);
+      randomAccessFile.setLength(this.budgetBytes);
+      buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.budgetBytes);
+    } catch (IOException ioe) {
+      randomAccessFile.close();
+      throw ioe;
+    }
+    buffer.putInt(FrameRecording.MAGIC);
+    buffer.putShort((short) FrameRecording.VERSION);
+    buffer.putShort((short) FrameRecording.HEADER_SIZE);
+    // Width and height are filled in from the first frame
+    buffer.position(FrameRecording.HEADER_SIZE);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Appends one frame, unless the budget says otherwise.
+   *
+   * @param data the frame, of which the first {@code dataWidth * dataHeight} bytes are kept
+   * @param timestampNanos when the frame was taken, as from {@link System#nanoTime()}
+   * @param crop left, top, right and bottom of the area decoded, or null
+   * @param outcome one of the {@code FrameRecording.OUTCOME_} constants
+   * @return true if the frame was recorded
+   */
+  public synchronized boolean record(byte[] data,
+                                     int dataWidth,
+                                     int dataHeight,
+                                     long timestampNanos,
+                                     int[] crop,
+                                     byte outcome) {
+    if (buffer == null) {
+      return false;
+    }
+    int length = dataWidth * dataHeight;
+    int position = buffer.position();
+    // Leave room for the end marker after the record
+    long needed = FrameRecording.RECORD_HEADER_SIZE + (long) length + 4;
+    boolean tight = position > budgetBytes * FAILED_ONLY_FRACTION;
+    if (position + needed > budgetBytes ||
+        tight && outcome != FrameRecording.OUTCOME_NOT_FOUND) {
+      skippedFrames++;
+      return false;
+    }
+    if (!headerWritten) {
+      headerWritten = true;
+      buffer.putInt(8, dataWidth);
+      buffer.putInt(12, dataHeight);
+    }
+    // The length goes in last, so that a reader never sees a record that isn't complete
+    buffer.position(position + 4);
+    buffer.putLong(timestampNanos);
+    buffer.putInt(dataWidth);
+    buffer.putInt(dataHeight);
+    for (int i = 0; i < 4; i++) {
+      buffer.putInt(crop == null ? -1 : crop[i]);
+    }
+    buffer.put(outcome);
+    buffer.put(data, 0, length);
+    buffer.putInt(position, length);
+    recordedFrames++;
+    return true;
+  }
+
+  public synchronized long getRecordedFrameCount() {
+    return recordedFrames;
+  }
+
+  /**
+   * @return number of frames left out to stay within the budget
+   */
+  public synchronized long getSkippedFrameCount() {
+    return skippedFrames;
+  }
+
+  /**
+   * @return bytes of the budget used so far
+   */
+  public synchronized long getBytesUsed() {
+    return buffer == null ? 0L : buffer.position();
+  }
+
+  /**
+   * Flushes the recording and cuts the file down to what was used.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    ByteBuffer theBuffer = buffer;
+    if (theBuffer == null) {
+      return;
+    }
+    buffer = null;
+    int end = theBuffer.position();
+    // Already zero, since the file was created empty, but make the end marker explicit
+    theBuffer.putInt(end, 0);
+    ((MappedByteBuffer) theBuffer).force();
+    try {
+      randomAccessFile.getChannel().truncate(end + 4);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera.frames;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws NV21 frames like the camera's preview frames, with a barcode in the middle that can be
+ * turned, blurred and covered in noise. Everything but the noise is drawn once per change of
+ * setting and kept, so frames are cheap enough to make at camera rates. The sequence of frames is
+ * reproducible: the same settings and seed always give the same bytes.
+ *
+ * Thread-safe, so settings may change while another thread renders.
+ */
+public final class SyntheticFrameRenderer {
+
+  private static final int BLACK = 30;
+  private static final int WHITE = 230;
+  // Samples per pixel along each axis, so that turned edges are smooth
+  private static final int SUPERSAMPLING = 2;
+
+  private final int width;
+  private final int height;
+  private final Random random;
+  private BitMatrix code;
+  private float codeSize;
+  private float rotationDegrees;
+  private float blur;
+  private float noise;
+  private int[] scene;
+
+  /**
+   * @param seed seed of the noise
+   */
+  public SyntheticFrameRenderer(int width, int height, long seed) {
+    this.width = width;
+    this.height = height;
+    random = new Random(seed);
+    codeSize = 0.375f;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @param format barcode to draw, or null to draw no barcode at all
+   * @param contents what the barcode says
+   * @throws IllegalArgumentException if the contents can't be encoded in the format
+   */
+  public synchronized void setBarcode(BarcodeFormat format, String contents) {
+    if (format == null) {
+      code = null;
+    } else {
+      try {
+        // Smallest size, one pixel per module with the format's own quiet zone; scaled when drawn
+        code = new MultiFormatWriter().encode(contents, format, 0, 0);
+      } catch (WriterException we) {
+        throw new IllegalArgumentException("Can't encode " + contents + " as " + format, we);
+      }
+    }
+    scene = null;
+  }
+
+  /**
+   * @param codeSize width of the barcode, quiet zone included, as a fraction of the frame's width
+   */
+  public synchronized void setCodeSize(float codeSize) {
+    this.codeSize = codeSize;
+    scene = null;
+  }
+
+  /**
+   * @param rotationDegrees clockwise rotation of the barcode around the frame's centre
+   */
+  public synchronized void setRotation(float rotationDegrees) {
+    this.rotationDegrees = rotationDegrees;
+    scene = null;
+  }
+
+  /**
+   * @param blur standard deviation of the Gaussian blur, in pixels, or 0 for a sharp image
+   */
+  public synchronized void setBlur(float blur) {
+    this.blur = blur;
+    scene = null;
+  }
+
+  /**
+   * @param noise standard deviation of the noise added to each luminance value
+   */
+  public synchronized void setNoise(float noise) {
+    this.noise = noise;
+  }
+
+  /**
+   * @return a frame of {@code width * height * 3 / 2} bytes, with neutral chroma, to render into
+   */
+  public byte[] newFrame() {
+    byte[] frame = new byte[width * height * 3 / 2];
+    // Chroma doesn't matter to the decoder
+    Arrays.fill(frame, width * height, frame.length, (byte) 128);
+    return frame;
+  }
+
+  /**
+   * Renders the next frame's luminance into the first {@code width * height} bytes of
+   * {@code frame}, leaving the rest alone.
+   */
+  public synchronized void render(byte[] frame) {
+    if (scene == null) {
+      scene = drawScene();
+    }
+    int[] theScene = scene;
+    if (noise <= 0.0f) {
+      for (int i = 0; i < theScene.length; i++) {
+        frame[i] = (byte) theScene[i];
+      }
+      return;
+    }
+    for (int i = 0; i < theScene.length; i++) {
+      int value = theScene[i] + (int) Math.round(random.nextGaussian() * noise);
+      frame[i] = (byte) Math.max(0, Math.min(255, value));
+    }
+  }
+
+  private int[] drawScene() {
+    int[] luminance = new int[width * height];
+    // A light grey, slightly uneven background, as under real lighting
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        luminance[y * width + x] = 200 - 40 * (x + y) / (width + height);
+      }
+    }
+    if (code != null) {
+      drawCode(luminance);
+    }
+    if (blur > 0.0f) {
+      blur(luminance);
+    }
+    return luminance;
+  }
+
+  private void drawCode(int[] luminance) {
+    double codeWidth = codeSize * width;
+    // 1D writers make a single row; give those a third of their width in height
+    double codeHeight = code.getHeight() == 1 ?
+        codeWidth / 3.0 : codeWidth * code.getHeight() / code.getWidth();
+    double radians = Math.toRadians(rotationDegrees);
+    double cos = Math.cos(radians);
+    double sin = Math.sin(radians);
+    double centerX = width / 2.0;
+    double centerY = height / 2.0;
+    // Only pixels within this radius of the centre can be covered by the code, however it's turned
+    double reach = Math.hypot(codeWidth, codeHeight) / 2.0 + 1.0;
+    int left = Math.max(0, (int) (centerX - reach));
+    int right = Math.min(width, (int) Math.ceil(centerX + reach));
+    int top = Math.max(0, (int) (centerY - reach));
+    int bottom = Math.min(height, (int) Math.ceil(centerY + reach));
+    int samples = SUPERSAMPLING * SUPERSAMPLING;
+    for (int y = top; y < bottom; y++) {
+      for (int x = left; x < right; x++) {
+        int covered = 0;
+        int sum = 0;
+        for (int sy = 0; sy < SUPERSAMPLING; sy++) {
+          for (int sx = 0; sx < SUPERSAMPLING; sx++) {
+            double dx = x + (sx + 0.5) / SUPERSAMPLING - centerX;
+            double dy = y + (sy + 0.5) / SUPERSAMPLING - centerY;
+            // Turn the sample back into the code's own frame of reference
+            double u = dx * cos + dy * sin + codeWidth / 2.0;
+            double v = -dx * sin + dy * cos + codeHeight / 2.0;
+            if (u >= 0.0 && u < codeWidth && v >= 0.0 && v < codeHeight) {
+              int moduleX = (int) (u * code.getWidth() / codeWidth);
+              int moduleY = (int) (v * code.getHeight() / codeHeight);
+              sum += code.get(moduleX, moduleY) ? BLACK : WHITE;
+              covered++;
+            }
+          }
+        }
+        if (covered > 0) {
+          int index = y * width + x;
+          luminance[index] = (sum + (samples - covered) * luminance[index]) / samples;
+        }
+      }
+    }
+  }
+
+  /**
+   * A separable Gaussian blur, with edges extended outwards.
+   */
+  private void blur(int[] luminance) {
+    int radius = (int) Math.ceil(3.0 * blur);
+    int[] kernel = new int[2 * radius + 1];
+    int kernelSum = 0;
+    for (int i = -radius; i <= radius; i++) {
+      kernel[i + radius] = (int) Math.round(1024.0 * Math.exp(-i * i / (2.0 * blur * blur)));
+      kernelSum += kernel[i + radius];
+    }
+    int[] temp = new int[luminance.length];
+    for (int y = 0; y < height; y++) {
+      int row = y * width;
+      for (int x = 0; x < width; x++) {
+        int sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+          int sx = Math.max(0, Math.min(width - 1, x + i));
+          sum += kernel[i + radius] * luminance[row + sx];
+        }
+        temp[row + x] = sum / kernelSum;
+      }
+    }
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+          int sy = Math.max(0, Math.min(height - 1, y + i));
+          sum += kernel[i + radius] * temp[sy * width + x];
+        }
+        luminance[y * width + x] = sum / kernelSum;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A luminance plane read straight out of a {@link ByteBuffer} whose rows may be padded, such as a
+ * camera2 Y plane, a frame in a memory-mapped recording or a native buffer, without first packing
+ * it into an array. Rows are read in bulk; {@link #crop(int, int, int, int)} and the rotations
+ * return views of the same buffer rather than copies.
+ *
+ * The buffer's position and limit are never changed, so several threads may read one source at
+ * once. The buffer must not be refilled while a source over it is in use.
+ */
+public final class ByteBufferLuminanceSource extends LuminanceSource {
+
+  private final ByteBuffer buffer;
+  // Pixel (x, y) is at base + x * xStep + y * yStep in the buffer
+  private final int base;
+  private final int xStep;
+  private final int yStep;
+  private volatile byte[] matrix;
+
+  /**
+   * @param buffer the whole plane, from index 0; its position and limit are ignored
+   * @param rowStride distance between the starts of two rows, at least {@code dataWidth}
+   * @param dataWidth width of the whole plane
+   * @param dataHeight height of the whole plane
+   * @param left left edge of the area to read
+   * @param top top edge of the area to read
+   * @param width width of the area to read
+   * @param height height of the area to read
+   */
+  public ByteBufferLuminanceSource(ByteBuffer buffer,
+                                   int rowStride,
+                                   int dataWidth,
+                                   int dataHeight,
+                                   int left,
+                                   int top,
+                                   int width,
+                                   int height) {
+    this(buffer, top * rowStride + left, 1, rowStride, width, height);
+    if (rowStride < dataWidth) {
+      throw new IllegalArgumentException("Row stride is less than the width: " + rowStride);
+    }
+    if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    if ((long) (dataHeight - 1) * rowStride + dataWidth > buffer.capacity()) {
+      throw new IllegalArgumentException("Buffer too small for " + dataWidth + "x" + dataHeight);
+    }
+  }
+
+  /**
+   * Reads a whole plane.
+   */
+  public ByteBufferLuminanceSource(ByteBuffer buffer, int rowStride, int width, int height) {
+    this(buffer, rowStride, width, height, 0, 0, width, height);
+  }
+
+  private ByteBufferLuminanceSource(ByteBuffer buffer, int base, int xStep, int yStep, int width, int height) {
+    super(width, height);
+    this.buffer = buffer;
+    this.base = base;
+    this.xStep = xStep;
+    this.yStep = yStep;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    byte[] theMatrix = matrix;
+    if (theMatrix != null) {
+      System.arraycopy(theMatrix, y * width, row, 0, width);
+    } else {
+      readRow(base + y * yStep, row, 0, width);
+    }
+    return row;
+  }
+
+  /**
+   * @return the area as a packed array, built on the first call and kept; callers must not modify it
+   */
+  @Override
+  public byte[] getMatrix() {
+    byte[] theMatrix = matrix;
+    if (theMatrix == null) {
+      int width = getWidth();
+      int height = getHeight();
+      theMatrix = new byte[width * height];
+      int rowStart = base;
+      for (int y = 0; y < height; y++) {
+        readRow(rowStart, theMatrix, y * width, width);
+        rowStart += yStep;
+      }
+      matrix = theMatrix;
+    }
+    return theMatrix;
+  }
+
+  private void readRow(int start, byte[] row, int offset, int width) {
+    if (xStep == 1 || xStep == -1) {
+      // Absolute bulk reads only arrived in Java 13, so go through a view with its own position
+      ByteBuffer view = buffer.duplicate();
+      view.position(xStep == 1 ? start : start - width + 1);
+      view.get(row, offset, width);
+      if (xStep == -1) {
+        for (int i = offset, j = offset + width - 1; i < j; i++, j--) {
+          byte temp = row[i];
+          row[i] = row[j];
+          row[j] = temp;
+        }
+      }
+    } else {
+      int index = start;
+      for (int x = 0; x < width; x++) {
+        row[offset + x] = buffer.get(index);
+        index += xStep;
+      }
+    }
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    return new ByteBufferLuminanceSource(buffer, base + left * xStep + top * yStep, xStep, yStep,
+        width, height);
+  }
+
+  @Override
+  public boolean isRotateSupported() {
+    return true;
+  }
+
+  /**
+   * @return a view of the same buffer, turned a quarter counterclockwise; rows of the view are
+   *  columns of the buffer, so read one pixel at a time
+   */
+  @Override
+  public LuminanceSource rotateCounterClockwise() {
+    // The view's (x, y) is this source's (width - 1 - y, x)
+    return new ByteBufferLuminanceSource(buffer, base + (getWidth() - 1) * xStep, yStep, -xStep,
+        getHeight(), getWidth());
+  }
+
+  @Override
+  public LuminanceSource rotateCounterClockwise45() {
+    throw new UnsupportedOperationException("This luminance source does not support rotation by 45 degrees.");
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Groups of formats to decode, and how a scan request names them. The mode names are the same as
+ * {@code Intents.Scan}'s, so that a request can be passed on as is whether it came from an
+ * {@code Intent}, a URL or somewhere without Android at all.
+ */
+public final class DecodeFormats {
+
+  public static final Set<BarcodeFormat> PRODUCT_FORMATS = Collections.unmodifiableSet(EnumSet.of(
+      BarcodeFormat.UPC_A,
+      BarcodeFormat.UPC_E,
+      BarcodeFormat.EAN_13,
+      BarcodeFormat.EAN_8,
+      BarcodeFormat.RSS_14,
+      BarcodeFormat.RSS_EXPANDED));
+  public static final Set<BarcodeFormat> INDUSTRIAL_FORMATS = Collections.unmodifiableSet(EnumSet.of(
+      BarcodeFormat.CODE_39,
+      BarcodeFormat.CODE_93,
+      BarcodeFormat.CODE_128,
+      BarcodeFormat.ITF,
+      BarcodeFormat.CODABAR));
+  public static final Set<BarcodeFormat> ONE_D_FORMATS;
+  public static final Set<BarcodeFormat> QR_CODE_FORMATS =
+      Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.QR_CODE));
+  public static final Set<BarcodeFormat> DATA_MATRIX_FORMATS =
+      Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.DATA_MATRIX));
+  public static final Set<BarcodeFormat> AZTEC_FORMATS =
+      Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.AZTEC));
+  public static final Set<BarcodeFormat> PDF417_FORMATS =
+      Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.PDF_417));
+  /**
+   * What is decoded when a request names no formats: 1D product and industrial formats, QR Code
+   * and Data Matrix.
+   */
+  public static final Set<BarcodeFormat> DEFAULT_FORMATS;
+  static {
+    Set<BarcodeFormat> oneD = EnumSet.copyOf(PRODUCT_FORMATS);
+    oneD.addAll(INDUSTRIAL_FORMATS);
+    ONE_D_FORMATS = Collections.unmodifiableSet(oneD);
+    Set<BarcodeFormat> defaults = EnumSet.copyOf(oneD);
+    defaults.addAll(QR_CODE_FORMATS);
+    defaults.addAll(DATA_MATRIX_FORMATS);
+    DEFAULT_FORMATS = Collections.unmodifiableSet(defaults);
+  }
+
+  private static final Map<String,Set<BarcodeFormat>> FORMATS_FOR_MODE;
+  static {
+    FORMATS_FOR_MODE = new HashMap<>();
+    FORMATS_FOR_MODE.put("ONE_D_MODE", ONE_D_FORMATS);
+    FORMATS_FOR_MODE.put("PRODUCT_MODE", PRODUCT_FORMATS);
+    FORMATS_FOR_MODE.put("QR_CODE_MODE", QR_CODE_FORMATS);
+    FORMATS_FOR_MODE.put("DATA_MATRIX_MODE", DATA_MATRIX_FORMATS);
+    FORMATS_FOR_MODE.put("AZTEC_MODE", AZTEC_FORMATS);
+    FORMATS_FOR_MODE.put("PDF417_MODE", PDF417_FORMATS);
+  }
+
+  private DecodeFormats() {}
+
+  /**
+   * @param scanFormats names of {@link BarcodeFormat}s, or null
+   * @param decodeMode name of a group of formats such as "QR_CODE_MODE", used only if
+   *  {@code scanFormats} is null or names a format that doesn't exist; may be null
+   * @return the formats requested, or null if none were, in which case the caller should fall back
+   *  to its defaults
+   */
+  public static Set<BarcodeFormat> parse(Iterable<String> scanFormats, String decodeMode) {
+    if (scanFormats != null) {
+      Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+      try {
+        for (String format : scanFormats) {
+          formats.add(BarcodeFormat.valueOf(format));
+        }
+        return formats;
+      } catch (IllegalArgumentException iae) {
+        // ignore it then
+      }
+    }
+    if (decodeMode != null) {
+      return FORMATS_FOR_MODE.get(decodeMode);
+    }
+    return null;
+  }
+
+}
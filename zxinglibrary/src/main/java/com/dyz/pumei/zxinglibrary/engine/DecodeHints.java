@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the hints given to the readers, from a scan request's formats, character set and any
+ * hints passed as text, such as URL query parameters.
+ */
+public final class DecodeHints {
+
+  private static final Logger LOG = Logger.getLogger(DecodeHints.class.getSimpleName());
+
+  // This pattern is used in decoding integer arrays.
+  private static final Pattern COMMA = Pattern.compile(",");
+
+  private DecodeHints() {}
+
+  /**
+   * @param decodeFormats formats to decode, or null or empty for {@link DecodeFormats#DEFAULT_FORMATS}
+   * @param baseHints any other hints, or null
+   * @param characterSet character set to assume for barcodes that don't say, or null
+   * @return a new, modifiable map of hints
+   */
+  public static Map<DecodeHintType,Object> build(Collection<BarcodeFormat> decodeFormats,
+                                                 Map<DecodeHintType,?> baseHints,
+                                                 String characterSet) {
+    Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+    if (baseHints != null) {
+      hints.putAll(baseHints);
+    }
+    if (decodeFormats == null || decodeFormats.isEmpty()) {
+      decodeFormats = DecodeFormats.DEFAULT_FORMATS;
+    }
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
+    if (characterSet != null) {
+      hints.put(DecodeHintType.CHARACTER_SET, characterSet);
+    }
+    return hints;
+  }
+
+  /**
+   * Converts hints given as text, each under the name of its {@link DecodeHintType}, to the value
+   * type of the hint. Formats, character set and the result point callback are specified another
+   * way and are ignored here, as are values that can't be converted.
+   *
+   * @param parameters hint names and their values as text; an empty value is a flag
+   * @return the hints that were recognized
+   */
+  public static Map<DecodeHintType,Object> parse(Map<String,String> parameters) {
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+
+    for (DecodeHintType hintType: DecodeHintType.values()) {
+
+      if (hintType == DecodeHintType.CHARACTER_SET ||
+          hintType == DecodeHintType.NEED_RESULT_POINT_CALLBACK ||
+          hintType == DecodeHintType.POSSIBLE_FORMATS) {
+        continue; // This hint is specified in another way
+      }
+
+      String parameterName = hintType.name();
+      String parameterText = parameters.get(parameterName);
+      if (parameterText == null) {
+        continue;
+      }
+      if (hintType.getValueType().equals(Object.class)) {
+        // This is an unspecified type of hint content. Use the value as is.
+        // TODO: Can we make a different assumption on this?
+        hints.put(hintType, parameterText);
+        continue;
+      }
+      if (hintType.getValueType().equals(Void.class)) {
+        // Void hints are just flags: use the constant specified by DecodeHintType
+        hints.put(hintType, Boolean.TRUE);
+        continue;
+      }
+      if (hintType.getValueType().equals(String.class)) {
+        // A string hint: use the decoded value.
+        hints.put(hintType, parameterText);
+        continue;
+      }
+      if (hintType.getValueType().equals(Boolean.class)) {
+        // A boolean hint: a few values for false, everything else is true.
+        // An empty parameter is simply a flag-style parameter, assuming true
+        if (parameterText.isEmpty()) {
+          hints.put(hintType, Boolean.TRUE);
+        } else if ("0".equals(parameterText) || 
+                   "false".equalsIgnoreCase(parameterText) || 
+                   "no".equalsIgnoreCase(parameterText)) {
+          hints.put(hintType, Boolean.FALSE);
+        } else {
+          hints.put(hintType, Boolean.TRUE);
+        }
+
+        continue;
+      }
+      if (hintType.getValueType().equals(int[].class)) {
+        // An integer array. Used to specify valid lengths.
+        // Strip a trailing comma as in Java style array initialisers.
+        if (!parameterText.isEmpty() && parameterText.charAt(parameterText.length() - 1) == ',') {
+          parameterText = parameterText.substring(0, parameterText.length() - 1);
+        }
+        String[] values = COMMA.split(parameterText);
+        int[] array = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+          try {
+            array[i] = Integer.parseInt(values[i]);
+          } catch (NumberFormatException ignored) {
+            LOG.warning("Skipping array of integers hint " + hintType + " due to invalid numeric value");
+            array = null;
+            break;
+          }
+        }
+        if (array != null) {
+          hints.put(hintType, array);
+        }
+        continue;
+      } 
+      LOG.warning("Unsupported hint type '" + hintType + "' of type " + hintType.getValueType());
+    }
+
+    return hints;
+  }
+
+}
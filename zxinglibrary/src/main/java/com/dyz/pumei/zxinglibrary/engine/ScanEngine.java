@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes barcodes in raw image buffers, with no dependency on Android: the same readers and hints
+ * as the capture screen, for use in unit tests, on a server or in batch tools.
+ *
+ * Safe to share between threads. Every thread that decodes gets its own reader, set up with the
+ * hints once, so an engine is meant to be created once and then used from a pool of threads.
+ */
+public final class ScanEngine {
+
+  private final Map<DecodeHintType,Object> hints;
+  private final ThreadLocal<MultiFormatReader> readers;
+
+  /**
+   * @param decodeFormats formats to decode, or null or empty for {@link DecodeFormats#DEFAULT_FORMATS}
+   * @param baseHints any other hints, or null
+   * @param characterSet character set to assume for barcodes that don't say, or null
+   */
+  public ScanEngine(Collection<BarcodeFormat> decodeFormats,
+                    Map<DecodeHintType,?> baseHints,
+                    String characterSet) {
+    this(DecodeHints.build(decodeFormats, baseHints, characterSet));
+  }
+
+  /**
+   * @param hints the complete hints for the readers, as from
+   *  {@link DecodeHints#build(Collection, Map, String)}
+   */
+  public ScanEngine(Map<DecodeHintType,?> hints) {
+    Map<DecodeHintType,Object> copy = new EnumMap<>(DecodeHintType.class);
+    copy.putAll(hints);
+    this.hints = Collections.unmodifiableMap(copy);
+    readers = new ThreadLocal<MultiFormatReader>() {
+      @Override
+      protected MultiFormatReader initialValue() {
+        MultiFormatReader reader = new MultiFormatReader();
+        reader.setHints(ScanEngine.this.hints);
+        return reader;
+      }
+    };
+  }
+
+  public Map<DecodeHintType,Object> getHints() {
+    return hints;
+  }
+
+  /**
+   * Decodes part of a frame. Only the first {@code dataWidth * dataHeight} bytes are read, so this
+   * takes a YUV frame such as the camera's NV21 preview frames, whose luminance plane comes first,
+   * or a plain 8-bit greyscale image alike.
+   *
+   * @param data the frame
+   * @param dataWidth width of the whole frame
+   * @param dataHeight height of the whole frame
+   * @param left left edge of the part to decode
+   * @param top top edge of the part to decode
+   * @param width width of the part to decode
+   * @param height height of the part to decode
+   * @return what was found and how long it took
+   */
+  public ScanResult decode(byte[] data, int dataWidth, int dataHeight,
+                           int left, int top, int width, int height) {
+    return decode(new PlanarYUVLuminanceSource(data, dataWidth, dataHeight, left, top, width, height, false));
+  }
+
+  /**
+   * Decodes a whole frame; see {@link #decode(byte[], int, int, int, int, int, int)}.
+   */
+  public ScanResult decode(byte[] data, int width, int height) {
+    return decode(data, width, height, 0, 0, width, height);
+  }
+
+  /**
+   * Decodes part of a luminance plane held in a buffer, such as a camera2 Y plane or a recorded
+   * frame, reading it in place; see {@link ByteBufferLuminanceSource}.
+   *
+   * @param plane the plane, from index 0
+   * @param rowStride distance between the starts of two rows of the plane
+   */
+  public ScanResult decode(ByteBuffer plane, int rowStride, int dataWidth, int dataHeight,
+                           int left, int top, int width, int height) {
+    return decode(new ByteBufferLuminanceSource(plane, rowStride, dataWidth, dataHeight,
+        left, top, width, height));
+  }
+
+  public ScanResult decode(LuminanceSource source) {
+    long start = System.nanoTime();
+    return decode(new BinaryBitmap(new HybridBinarizer(source)), start);
+  }
+
+  /**
+   * Decodes an image that has already been binarized, or is binarized differently, as by a
+   * binarizer that is recycled from one frame to the next.
+   */
+  public ScanResult decode(BinaryBitmap bitmap) {
+    return decode(bitmap, System.nanoTime());
+  }
+
+  private ScanResult decode(BinaryBitmap bitmap, long start) {
+    MultiFormatReader reader = readers.get();
+    Result result;
+    try {
+      result = reader.decodeWithState(bitmap);
+    } catch (ReaderException re) {
+      result = null;
+    } finally {
+      reader.reset();
+    }
+    return new ScanResult(result, System.nanoTime() - start);
+  }
+
+}
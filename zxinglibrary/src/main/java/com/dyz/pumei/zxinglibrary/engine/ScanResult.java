@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of decoding one image with a {@link ScanEngine}: the barcode found, if any, and how
+ * long it took.
+ */
+public final class ScanResult {
+
+  private final Result result;
+  private final long decodeNanos;
+
+  ScanResult(Result result, long decodeNanos) {
+    this.result = result;
+    this.decodeNanos = decodeNanos;
+  }
+
+  /**
+   * @return the barcode found, or null if there was none
+   */
+  public Result getResult() {
+    return result;
+  }
+
+  public boolean isFound() {
+    return result != null;
+  }
+
+  /**
+   * @return time spent binarizing and running the readers, in nanoseconds
+   */
+  public long getDecodeNanos() {
+    return decodeNanos;
+  }
+
+  public long getDecodeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(decodeNanos);
+  }
+
+  @Override
+  public String toString() {
+    return (result == null ? "not found" : result.getBarcodeFormat().toString()) + " in " +
+        TimeUnit.NANOSECONDS.toMicros(decodeNanos) + " us";
+  }
+
+}
@@ -42,7 +42,9 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -65,6 +67,7 @@ public final class HistoryManager {
   };
 
   private static final String[] COUNT_COLUMN = { "COUNT(1)" };
+  private static final String[] FORMAT_COUNT_COLUMNS = { DBHelper.FORMAT_COL, "COUNT(1)" };
 
   private static final String[] ID_COL_PROJECTION = { DBHelper.ID_COL };
   private static final String[] ID_DETAIL_COL_PROJECTION = { DBHelper.ID_COL, DBHelper.DETAILS_COL };
@@ -92,6 +95,29 @@ public final class HistoryManager {
     }
   }
 
+  /**
+   * @return number of history items of each format that has any
+   */
+  public Map<BarcodeFormat,Integer> buildFormatCounts() {
+    SQLiteOpenHelper helper = new DBHelper(activity);
+    Map<BarcodeFormat,Integer> counts = new EnumMap<>(BarcodeFormat.class);
+    try (SQLiteDatabase db = helper.getReadableDatabase();
+         Cursor cursor = db.query(DBHelper.TABLE_NAME,
+                                  FORMAT_COUNT_COLUMNS,
+                                  null, null, DBHelper.FORMAT_COL, null, null)) {
+      while (cursor.moveToNext()) {
+        try {
+          counts.put(BarcodeFormat.valueOf(cursor.getString(0)), cursor.getInt(1));
+        } catch (IllegalArgumentException iae) {
+          // A format this version doesn't know
+        }
+      }
+    } catch (SQLException sqle) {
+      Log.w(TAG, sqle);
+    }
+    return counts;
+  }
+
   public List<HistoryItem> buildHistoryItems() {
     SQLiteOpenHelper helper = new DBHelper(activity);
     List<HistoryItem> items = new ArrayList<>();
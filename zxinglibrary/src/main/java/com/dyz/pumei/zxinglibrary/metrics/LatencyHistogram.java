@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took, in buckets of microseconds, without locks or allocation, so that
+ * it can be recorded for every frame from any thread. Below 4 us each microsecond has its own
+ * bucket; above, every power of two is split into four buckets, so percentiles are accurate to
+ * within 25%. Anything over about four minutes lands in the last bucket.
+ */
+public final class LatencyHistogram {
+
+  private static final int BUCKETS = 108;
+
+  private final String name;
+  private final AtomicLongArray buckets;
+  private final AtomicLong count;
+  private final AtomicLong totalNanos;
+  private final AtomicLong maxNanos;
+
+  LatencyHistogram(String name) {
+    this.name = name;
+    buckets = new AtomicLongArray(BUCKETS);
+    count = new AtomicLong();
+    totalNanos = new AtomicLong();
+    maxNanos = new AtomicLong();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void recordNanos(long nanos) {
+    if (nanos < 0L) {
+      // Clocks of different threads, or a coarse clock, may disagree slightly
+      nanos = 0L;
+    }
+    buckets.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    long max;
+    while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+      // retry
+    }
+  }
+
+  public void recordMillis(long millis) {
+    recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  static int bucketOf(long micros) {
+    if (micros < 4L) {
+      return (int) micros;
+    }
+    int octave = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) ((micros >>> (octave - 2)) & 3L);
+    return Math.min(BUCKETS - 1, (octave - 1) * 4 + sub);
+  }
+
+  /**
+   * @return the smallest value, in microseconds, above everything in the bucket
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < 4) {
+      return bucket + 1L;
+    }
+    int octave = bucket / 4 + 1;
+    int sub = bucket % 4;
+    return (5L + sub) << (octave - 2);
+  }
+
+  /**
+   * @return a consistent enough copy of the counts so far; values recorded meanwhile may or may not
+   *  be included
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return new Snapshot(name, counts, count.get(), totalNanos.get(), maxNanos.get());
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0L);
+    }
+    count.set(0L);
+    totalNanos.set(0L);
+    maxNanos.set(0L);
+  }
+
+  /**
+   * The counts of a {@link LatencyHistogram} at one point in time.
+   */
+  public static final class Snapshot {
+
+    private final String name;
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    Snapshot(String name, long[] counts, long count, long totalNanos, long maxNanos) {
+      this.name = name;
+      this.counts = counts;
+      this.count = count;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMeanMicros() {
+      return count == 0L ? 0L : TimeUnit.NANOSECONDS.toMicros(totalNanos / count);
+    }
+
+    public long getMaxMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(maxNanos);
+    }
+
+    /**
+     * @param quantile between 0 and 1, such as 0.99 for the 99th percentile
+     * @return a value, in microseconds, that at least that fraction of the recorded values don't
+     *  exceed; 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double quantile) {
+      long total = 0L;
+      for (long bucketCount : counts) {
+        total += bucketCount;
+      }
+      if (total == 0L) {
+        return 0L;
+      }
+      long rank = (long) Math.ceil(quantile * total);
+      long seen = 0L;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0L) {
+          return Math.min(upperBoundOf(i), Math.max(1L, getMaxMicros()));
+        }
+      }
+      return getMaxMicros();
+    }
+
+    @Override
+    public String toString() {
+      return name + ": n=" + count + ", mean " + getMeanMicros() + " us, p50 " +
+          getPercentileMicros(0.5) + " us, p90 " + getPercentileMicros(0.9) + " us, p99 " +
+          getPercentileMicros(0.99) + " us, max " + getMaxMicros() + " us";
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Every histogram and counter of {@link ScanMetrics} at one point in time, by name.
+ */
+public final class MetricsSnapshot {
+
+  private final Map<String,LatencyHistogram.Snapshot> histograms;
+  private final Map<String,Long> counters;
+
+  MetricsSnapshot(Map<String,LatencyHistogram.Snapshot> histograms, Map<String,Long> counters) {
+    this.histograms = Collections.unmodifiableMap(histograms);
+    this.counters = Collections.unmodifiableMap(counters);
+  }
+
+  /**
+   * @return histograms by name, in name order
+   */
+  public Map<String,LatencyHistogram.Snapshot> getHistograms() {
+    return histograms;
+  }
+
+  /**
+   * @return the histogram, or null if nothing was ever recorded under that name
+   */
+  public LatencyHistogram.Snapshot getHistogram(String name) {
+    return histograms.get(name);
+  }
+
+  /**
+   * @return counters by name, in name order
+   */
+  public Map<String,Long> getCounters() {
+    return counters;
+  }
+
+  /**
+   * @return the counter's value, 0 if it was never incremented
+   */
+  public long getCounter(String name) {
+    Long value = counters.get(name);
+    return value == null ? 0L : value;
+  }
+
+  /**
+   * @return one line per histogram and counter
+   */
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    for (LatencyHistogram.Snapshot histogram : histograms.values()) {
+      result.append(histogram).append('\n');
+    }
+    for (Map.Entry<String,Long> counter : counters.entrySet()) {
+      result.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+    }
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms for each stage of the scan pipeline, and counters of what happened to frames,
+ * for the whole process. Recording is cheap enough to do for every frame. Take a
+ * {@link #snapshot()} or {@link #dump()} at any time; registered {@link Listener}s get one whenever
+ * a scan session ends, or {@link #publish()} is called.
+ */
+public final class ScanMetrics {
+
+  /**
+   * Receives snapshots of the metrics.
+   */
+  public interface Listener {
+    /**
+     * Called on whichever thread published the snapshot.
+     */
+    void onMetrics(MetricsSnapshot snapshot);
+  }
+
+  /** From asking the camera for a frame to the preview callback receiving it. */
+  public static final String FRAME_DELIVERY = "frame_delivery";
+  /** From the preview callback passing a frame on to a decoder starting on it. */
+  public static final String QUEUE_WAIT = "queue_wait";
+  /** Cropping the frame to a luminance source. */
+  public static final String LUMINANCE = "luminance";
+  /** Computing the black and white matrix of a luminance source. */
+  public static final String BINARIZATION = "binarization";
+  /** Prefix of the histogram of each reader, or group of readers, run on a frame. */
+  public static final String READER_PREFIX = "reader.";
+  /** Copying the thumbnail of a frame with a barcode. */
+  public static final String THUMBNAIL = "thumbnail";
+  /** From a decoder reporting a barcode to the activity having handled it. */
+  public static final String RESULT_DISPATCH = "result_dispatch";
+  /** Everything a decoder does with one frame. */
+  public static final String FRAME_DECODE = "frame_decode";
+
+  /** Frames the preview callback got with no decoder waiting and no buffer to recycle. */
+  public static final String FRAMES_DROPPED = "frames_dropped";
+  /** Frames handed straight back to the camera because every decoder was busy. */
+  public static final String FRAMES_UNUSED = "frames_unused";
+  public static final String DECODE_SUCCESSES = "decode_successes";
+  public static final String DECODE_FAILURES = "decode_failures";
+  /** Luminance sources made with their own crop buffer, rather than pointed at a new frame. */
+  public static final String LUMINANCE_SOURCES_ALLOCATED = "luminance_sources_allocated";
+  /** Binarizers made with their own working arrays, rather than reset for a new frame. */
+  public static final String BINARIZERS_ALLOCATED = "binarizers_allocated";
+
+  private static final ScanMetrics INSTANCE = new ScanMetrics();
+
+  private final ConcurrentMap<String,LatencyHistogram> histograms;
+  private final ConcurrentMap<String,AtomicLong> counters;
+  private final List<Listener> listeners;
+
+  private ScanMetrics() {
+    histograms = new ConcurrentHashMap<>();
+    counters = new ConcurrentHashMap<>();
+    listeners = new CopyOnWriteArrayList<>();
+  }
+
+  public static ScanMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the histogram of that name, created if need be; callers that record often may keep it
+   */
+  public LatencyHistogram histogram(String name) {
+    LatencyHistogram histogram = histograms.get(name);
+    if (histogram == null) {
+      LatencyHistogram newHistogram = new LatencyHistogram(name);
+      histogram = histograms.putIfAbsent(name, newHistogram);
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+    return histogram;
+  }
+
+  public void recordNanos(String histogramName, long nanos) {
+    histogram(histogramName).recordNanos(nanos);
+  }
+
+  public void increment(String counterName) {
+    AtomicLong counter = counters.get(counterName);
+    if (counter == null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = counters.putIfAbsent(counterName, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.incrementAndGet();
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  public MetricsSnapshot snapshot() {
+    Map<String,LatencyHistogram.Snapshot> histogramSnapshots = new TreeMap<>();
+    for (LatencyHistogram histogram : histograms.values()) {
+      histogramSnapshots.put(histogram.getName(), histogram.snapshot());
+    }
+    Map<String,Long> counterValues = new TreeMap<>();
+    for (Map.Entry<String,AtomicLong> counter : counters.entrySet()) {
+      counterValues.put(counter.getKey(), counter.getValue().get());
+    }
+    return new MetricsSnapshot(histogramSnapshots, counterValues);
+  }
+
+  /**
+   * Sends a snapshot to every listener.
+   *
+   * @return the snapshot sent
+   */
+  public MetricsSnapshot publish() {
+    MetricsSnapshot snapshot = snapshot();
+    for (Listener listener : listeners) {
+      listener.onMetrics(snapshot);
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return every histogram and counter as text, one per line
+   */
+  public String dump() {
+    return snapshot().toString();
+  }
+
+  /**
+   * Starts counting from zero again. Histograms kept by callers stay valid.
+   */
+  public void reset() {
+    for (LatencyHistogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+    for (AtomicLong counter : counters.values()) {
+      counter.set(0L);
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link BatchCollector}.
+ */
+public final class BatchCollectorTest {
+
+  private static final Result[] NOTHING = {};
+  private static final Result FIRST = new Result("first", null, null, BarcodeFormat.QR_CODE);
+  private static final Result SECOND = new Result("second", null, null, BarcodeFormat.QR_CODE);
+  // Same text as the first, but another format, so another barcode
+  private static final Result THIRD = new Result("first", null, null, BarcodeFormat.DATA_MATRIX);
+
+  @Test
+  public void testNothingFound() {
+    BatchCollector collector = new BatchCollector();
+    for (int i = 0; i < 10; i++) {
+      assertNull(collector.offer(NOTHING));
+    }
+    assertEquals(0L, collector.getBatchCount());
+  }
+
+  @Test
+  public void testCompleteAfterQuietFrames() {
+    BatchCollector collector = new BatchCollector();
+    assertNull(collector.offer(NOTHING));
+    assertNull(collector.offer(new Result[] {FIRST}));
+    assertNull(collector.offer(new Result[] {FIRST, SECOND}));
+    // The same barcodes again add nothing; three such frames complete the batch
+    assertNull(collector.offer(new Result[] {SECOND}));
+    assertNull(collector.offer(NOTHING));
+    assertNull(collector.offer(new Result[] {THIRD}));
+    assertNull(collector.offer(new Result[] {FIRST}));
+    assertNull(collector.offer(NOTHING));
+    Result[] batch = collector.offer(new Result[] {THIRD});
+    assertNotNull(batch);
+    assertArrayEquals(new Result[] {FIRST, SECOND, THIRD}, batch);
+    assertEquals(1L, collector.getBatchCount());
+
+    // The next batch starts from scratch
+    assertNull(collector.offer(new Result[] {SECOND}));
+    assertNull(collector.offer(NOTHING));
+    assertNull(collector.offer(NOTHING));
+    batch = collector.offer(NOTHING);
+    assertArrayEquals(new Result[] {SECOND}, batch);
+    assertEquals(2L, collector.getBatchCount());
+  }
+
+  @Test
+  public void testFirstSightingKept() {
+    BatchCollector collector = new BatchCollector();
+    Result again = new Result("first", null, null, BarcodeFormat.QR_CODE);
+    collector.offer(new Result[] {FIRST});
+    collector.offer(new Result[] {again});
+    collector.offer(NOTHING);
+    Result[] batch = collector.offer(NOTHING);
+    assertEquals(1, batch.length);
+    assertSame(FIRST, batch[0]);
+  }
+
+  @Test
+  public void testCompleteAfterTimeLimit() throws InterruptedException {
+    BatchCollector collector = new BatchCollector();
+    assertNull(collector.offer(new Result[] {FIRST}));
+    Thread.sleep(1100L);
+    // Still finding new barcodes, but the batch has taken long enough
+    assertArrayEquals(new Result[] {FIRST, SECOND}, collector.offer(new Result[] {SECOND}));
+  }
+
+  @Test
+  public void testReset() {
+    BatchCollector collector = new BatchCollector();
+    collector.offer(new Result[] {FIRST});
+    collector.offer(NOTHING);
+    collector.reset();
+    assertNull(collector.offer(NOTHING));
+    assertNull(collector.offer(new Result[] {SECOND}));
+    assertNull(collector.offer(NOTHING));
+    assertNull(collector.offer(NOTHING));
+    assertArrayEquals(new Result[] {SECOND}, collector.offer(NOTHING));
+  }
+
+}
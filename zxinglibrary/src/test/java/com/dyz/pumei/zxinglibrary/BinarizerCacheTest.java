@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link BinarizerCache} and the {@link RecyclableBinarizer}s it hands out.
+ */
+public final class BinarizerCacheTest {
+
+  private static final int WIDTH = 120;
+  private static final int HEIGHT = 80;
+
+  @Test
+  public void testSameSourceAllocatesOnce() throws Exception {
+    Random random = new Random(0xDEADBEEF);
+    byte[] data = new byte[WIDTH * HEIGHT];
+    PlanarYUVLuminanceSource source =
+        new PlanarYUVLuminanceSource(data, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false);
+    BinarizerCache cache = new BinarizerCache();
+    long instancesBefore = RecyclableBinarizer.getInstanceCount();
+    long allocatedBefore = allocatedBinarizers();
+    RecyclableBinarizer first = null;
+    for (int frame = 0; frame < 10; frame++) {
+      // The source is pointed at a new frame by overwriting its data in place
+      random.nextBytes(data);
+      RecyclableBinarizer binarizer = cache.get(source);
+      if (first == null) {
+        first = binarizer;
+      }
+      assertSame(first, binarizer);
+      assertEquals(new HybridBinarizer(source).getBlackMatrix(), binarizer.getBlackMatrix());
+      assertEquals(1, RecyclableBinarizer.getInstanceCount() - instancesBefore);
+      assertEquals(1, allocatedBinarizers() - allocatedBefore);
+    }
+  }
+
+  @Test
+  public void testKeepsRecentSources() {
+    byte[] data = new byte[WIDTH * HEIGHT];
+    PlanarYUVLuminanceSource whole =
+        new PlanarYUVLuminanceSource(data, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false);
+    PlanarYUVLuminanceSource crop =
+        new PlanarYUVLuminanceSource(data, WIDTH, HEIGHT, 8, 8, 64, 48, false);
+    BinarizerCache cache = new BinarizerCache();
+    RecyclableBinarizer wholeBinarizer = cache.get(whole);
+    RecyclableBinarizer cropBinarizer = cache.get(crop);
+    assertNotSame(wholeBinarizer, cropBinarizer);
+    long before = RecyclableBinarizer.getInstanceCount();
+    for (int frame = 0; frame < 5; frame++) {
+      assertSame(wholeBinarizer, cache.get(whole));
+      assertSame(cropBinarizer, cache.get(crop));
+    }
+    assertEquals(0, RecyclableBinarizer.getInstanceCount() - before);
+  }
+
+  @Test
+  public void testRowsMatchReference() throws Exception {
+    Random random = new Random(0x5EED);
+    byte[] data = new byte[WIDTH * HEIGHT];
+    PlanarYUVLuminanceSource source =
+        new PlanarYUVLuminanceSource(data, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false);
+    BinarizerCache cache = new BinarizerCache();
+    for (int frame = 0; frame < 3; frame++) {
+      drawBars(random, data, WIDTH, HEIGHT);
+      RecyclableBinarizer binarizer = cache.get(source);
+      assertSameOutput(new HybridBinarizer(source), binarizer, HEIGHT);
+      assertSameRows(new GlobalHistogramBinarizer(source), binarizer, HEIGHT);
+    }
+  }
+
+  @Test
+  public void testSmallCropMatchesGlobalHistogram() throws Exception {
+    Random random = new Random(0xC0FFEE);
+    byte[] data = new byte[WIDTH * HEIGHT];
+    // Under 40 pixels each way, so both fall back to the global histogram for the matrix too
+    PlanarYUVLuminanceSource crop =
+        new PlanarYUVLuminanceSource(data, WIDTH, HEIGHT, 20, 10, 36, 30, false);
+    BinarizerCache cache = new BinarizerCache();
+    for (int frame = 0; frame < 3; frame++) {
+      drawBars(random, data, WIDTH, HEIGHT);
+      RecyclableBinarizer binarizer = cache.get(crop);
+      assertSameOutput(new GlobalHistogramBinarizer(crop), binarizer, crop.getHeight());
+      assertSameOutput(new HybridBinarizer(crop), binarizer, crop.getHeight());
+    }
+  }
+
+  @Test
+  public void testResetOntoNewFrameSize() throws Exception {
+    Random random = new Random(0xBADF00D);
+    int cropWidth = 64;
+    int cropHeight = 48;
+    MovableSource source = new MovableSource(cropWidth, cropHeight);
+    BinarizerCache cache = new BinarizerCache();
+    RecyclableBinarizer first = null;
+    int[][] frameSizes = {{WIDTH, HEIGHT}, {2 * WIDTH, HEIGHT + 8}, {cropWidth, cropHeight}, {WIDTH, HEIGHT}};
+    for (int[] frameSize : frameSizes) {
+      int dataWidth = frameSize[0];
+      int dataHeight = frameSize[1];
+      byte[] data = new byte[dataWidth * dataHeight];
+      drawBars(random, data, dataWidth, dataHeight);
+      PlanarYUVLuminanceSource reference = new PlanarYUVLuminanceSource(
+          data, dataWidth, dataHeight, dataWidth - cropWidth, dataHeight - cropHeight,
+          cropWidth, cropHeight, false);
+      source.moveTo(reference);
+      RecyclableBinarizer binarizer = cache.get(source);
+      if (first == null) {
+        first = binarizer;
+      }
+      assertSame(first, binarizer);
+      assertSameOutput(new HybridBinarizer(reference), binarizer, cropHeight);
+    }
+  }
+
+  /**
+   * Asserts that both binarizers give the same matrix and the same rows, bit for bit, including
+   * when they find too little contrast in a row.
+   */
+  private static void assertSameOutput(Binarizer expected, Binarizer actual, int height) {
+    BitMatrix expectedMatrix = blackMatrixOrNull(expected);
+    // The frames are drawn with enough contrast that there is always something to compare
+    assertNotNull(expectedMatrix);
+    assertEquals(expectedMatrix, blackMatrixOrNull(actual));
+    assertSameRows(expected, actual, height);
+  }
+
+  private static void assertSameRows(Binarizer expected, Binarizer actual, int height) {
+    BitArray reused = null;
+    for (int y : new int[] {0, 1, height / 3, height / 2, height - 2, height - 1}) {
+      BitArray row = blackRowOrNull(actual, y, reused);
+      assertEquals("row " + y, blackRowOrNull(expected, y, null), row);
+      if (row != null) {
+        reused = row;
+      }
+    }
+  }
+
+  private static BitMatrix blackMatrixOrNull(Binarizer binarizer) {
+    try {
+      // Cloned, as the recyclable binarizer's matrix is overwritten by the next frame
+      return binarizer.getBlackMatrix().clone();
+    } catch (NotFoundException nfe) {
+      return null;
+    }
+  }
+
+  private static BitArray blackRowOrNull(Binarizer binarizer, int y, BitArray row) {
+    try {
+      return binarizer.getBlackRow(y, row);
+    } catch (NotFoundException nfe) {
+      return null;
+    }
+  }
+
+  /**
+   * Fills a frame with bars of random width and shade, plus a little noise, so that there is
+   * contrast both along the rows and within the binarizer's blocks.
+   */
+  private static void drawBars(Random random, byte[] data, int width, int height) {
+    int[] shades = new int[width];
+    for (int x = 0; x < width; ) {
+      int shade = random.nextBoolean() ? 20 + random.nextInt(60) : 170 + random.nextInt(80);
+      int end = Math.min(width, x + 1 + random.nextInt(6));
+      for (; x < end; x++) {
+        shades[x] = shade;
+      }
+    }
+    for (int y = 0; y < height; y++) {
+      // A gradient down the frame, like uneven lighting
+      int light = y * 16 / height;
+      for (int x = 0; x < width; x++) {
+        data[y * width + x] = (byte) Math.min(255, shades[x] - light + random.nextInt(8));
+      }
+    }
+  }
+
+  private static long allocatedBinarizers() {
+    return ScanMetrics.getInstance().snapshot().getCounter(ScanMetrics.BINARIZERS_ALLOCATED);
+  }
+
+  /**
+   * A source of fixed size that can be pointed at other frames, like the camera's recycled source.
+   */
+  private static final class MovableSource extends LuminanceSource {
+
+    private LuminanceSource frame;
+
+    MovableSource(int width, int height) {
+      super(width, height);
+    }
+
+    void moveTo(LuminanceSource frame) {
+      this.frame = frame;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+      return frame.getRow(y, row);
+    }
+
+    @Override
+    public byte[] getMatrix() {
+      return frame.getMatrix();
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link DecodeBudget}.
+ */
+public final class DecodeBudgetTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+  @Test
+  public void testDeadline() {
+    DecodeBudget budget = new DecodeBudget(40, 2);
+    assertEquals(1000L + 40 * MS, budget.getDeadline(1000L));
+    // nanoTime() may be negative
+    assertEquals(-5 * MS, budget.getDeadline(-45 * MS));
+  }
+
+  @Test
+  public void testPassDurations() {
+    DecodeBudget budget = new DecodeBudget(40, 2);
+    assertEquals(0L, budget.getTypicalPassMs(0));
+    budget.passTook(0, 8 * MS);
+    assertEquals(8L, budget.getTypicalPassMs(0));
+    // Three parts history, one part the latest pass
+    budget.passTook(0, 4 * MS);
+    assertEquals(7L, budget.getTypicalPassMs(0));
+    assertEquals(0L, budget.getTypicalPassMs(1));
+  }
+
+  @Test
+  public void testCanAffordPass() {
+    DecodeBudget budget = new DecodeBudget(40, 2);
+    long now = System.nanoTime();
+    // Nothing known about a pass yet, so it fits as long as the deadline hasn't passed
+    assertTrue(budget.canAffordPass(0, now + TimeUnit.SECONDS.toNanos(1L)));
+    assertFalse(budget.canAffordPass(0, now - MS));
+
+    budget.passTook(1, 500 * MS);
+    now = System.nanoTime();
+    assertFalse(budget.canAffordPass(1, now + 100 * MS));
+    assertTrue(budget.canAffordPass(1, now + TimeUnit.SECONDS.toNanos(10L)));
+    assertTrue(budget.canAffordPass(0, now + 100 * MS));
+  }
+
+  @Test
+  public void testEscalation() {
+    DecodeBudget budget = new DecodeBudget(40, 2);
+    budget.frameDone(false, false);
+    assertFalse(budget.isEscalated());
+
+    budget.frameDone(false, true);
+    assertTrue(budget.isEscalated());
+    budget.frameDone(false, true);
+    assertEquals(1L, budget.getEscalationCount());
+
+    // Stays escalated through a run of unpromising frames, then gives up
+    for (int i = 0; i < 10; i++) {
+      budget.frameDone(false, false);
+      assertTrue(budget.isEscalated());
+    }
+    budget.frameDone(false, false);
+    assertFalse(budget.isEscalated());
+
+    // A promising frame starts the run again
+    budget.frameDone(false, true);
+    for (int i = 0; i < 5; i++) {
+      budget.frameDone(false, false);
+    }
+    budget.frameDone(false, true);
+    for (int i = 0; i < 10; i++) {
+      budget.frameDone(false, false);
+    }
+    assertTrue(budget.isEscalated());
+    assertEquals(2L, budget.getEscalationCount());
+
+    budget.frameDone(true, false);
+    assertFalse(budget.isEscalated());
+  }
+
+}
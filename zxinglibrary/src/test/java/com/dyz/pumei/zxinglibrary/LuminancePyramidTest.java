@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link LuminancePyramid}.
+ */
+public final class LuminancePyramidTest {
+
+  private static PlanarYUVLuminanceSource randomSource(int dataWidth, int dataHeight,
+                                                       int left, int top, int width, int height) {
+    byte[] data = new byte[dataWidth * dataHeight];
+    new Random(width * 31 + height).nextBytes(data);
+    return new PlanarYUVLuminanceSource(data, dataWidth, dataHeight, left, top, width, height, false);
+  }
+
+  @Test
+  public void testDownsample() {
+    // A crop of a larger frame, with an odd width whose last column is left out
+    LuminanceSource source = randomSource(400, 300, 11, 7, 381, 240);
+    LuminanceSource half = new LuminancePyramid().downsample(source);
+    assertEquals(190, half.getWidth());
+    assertEquals(120, half.getHeight());
+    byte[] full = source.getMatrix();
+    byte[] expected = new byte[190 * 120];
+    for (int y = 0; y < 120; y++) {
+      for (int x = 0; x < 190; x++) {
+        int topLeft = 2 * y * 381 + 2 * x;
+        int sum = (full[topLeft] & 0xff) + (full[topLeft + 1] & 0xff) +
+            (full[topLeft + 381] & 0xff) + (full[topLeft + 382] & 0xff);
+        expected[y * 190 + x] = (byte) (sum / 4);
+      }
+    }
+    assertArrayEquals(expected, half.getMatrix());
+    byte[] row = new byte[190];
+    for (int y = 0; y < 120; y += 17) {
+      assertSame(row, half.getRow(y, row));
+      for (int x = 0; x < 190; x++) {
+        assertEquals(expected[y * 190 + x], row[x]);
+      }
+    }
+  }
+
+  @Test
+  public void testReusedWhileSizeStays() {
+    LuminancePyramid pyramid = new LuminancePyramid();
+    LuminanceSource first = pyramid.downsample(randomSource(640, 480, 0, 0, 640, 480));
+    LuminanceSource second = pyramid.downsample(randomSource(640, 480, 0, 0, 640, 480));
+    assertSame(first, second);
+    LuminanceSource other = pyramid.downsample(randomSource(640, 480, 0, 0, 480, 480));
+    assertNotSame(first, other);
+    assertEquals(240, other.getWidth());
+  }
+
+  @Test
+  public void testTooSmall() {
+    assertNull(new LuminancePyramid().downsample(randomSource(320, 240, 0, 0, 319, 240)));
+  }
+
+  @Test
+  public void testEscalation() {
+    LuminancePyramid pyramid = new LuminancePyramid();
+    // Without candidates, every third frame goes to full resolution anyway
+    assertFalse(pyramid.shouldEscalate(false));
+    assertFalse(pyramid.shouldEscalate(false));
+    assertTrue(pyramid.shouldEscalate(false));
+    assertTrue(pyramid.shouldEscalate(true));
+    assertFalse(pyramid.shouldEscalate(false));
+    assertTrue(pyramid.shouldEscalate(false));
+  }
+
+  @Test
+  public void testScaleResultPoints() {
+    ResultPoint[] points = {new ResultPoint(10.0f, 20.5f), null};
+    Result result = new Result("text", null, points, BarcodeFormat.QR_CODE);
+    LuminancePyramid.scaleResultPoints(result);
+    assertEquals(20.0f, result.getResultPoints()[0].getX(), 0.0f);
+    assertEquals(41.0f, result.getResultPoints()[0].getY(), 0.0f);
+    assertNull(result.getResultPoints()[1]);
+    // No points at all
+    LuminancePyramid.scaleResultPoints(new Result("text", null, null, BarcodeFormat.QR_CODE));
+  }
+
+}
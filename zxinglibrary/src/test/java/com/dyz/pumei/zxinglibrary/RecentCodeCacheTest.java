@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link RecentCodeCache}.
+ */
+public final class RecentCodeCacheTest {
+
+  private static final Result[] NOTHING = {};
+
+  private static Result code(String text) {
+    return new Result(text, null, null, BarcodeFormat.QR_CODE);
+  }
+
+  @Test
+  public void testReportedOnce() {
+    RecentCodeCache cache = new RecentCodeCache(60000L);
+    Result first = code("first");
+    Result second = code("second");
+    Result[] both = {first, second};
+    assertSame(both, cache.filter(both));
+    assertArrayEquals(NOTHING, cache.filter(new Result[] {code("first")}));
+    Result third = code("third");
+    assertArrayEquals(new Result[] {third}, cache.filter(new Result[] {second, third, first}));
+    // Same text in another format is another barcode
+    Result other = new Result("first", null, null, BarcodeFormat.DATA_MATRIX);
+    assertArrayEquals(new Result[] {other}, cache.filter(new Result[] {other}));
+    assertEquals(3L, cache.getSuppressedCount());
+  }
+
+  @Test
+  public void testExpiry() throws InterruptedException {
+    RecentCodeCache cache = new RecentCodeCache(500L);
+    Result code = code("code");
+    assertEquals(1, cache.filter(new Result[] {code}).length);
+    // Every sighting restarts the window, so a barcode kept in view is never reported again
+    for (int i = 0; i < 4; i++) {
+      Thread.sleep(100L);
+      assertEquals(0, cache.filter(new Result[] {code}).length);
+    }
+    // Out of sight for the whole window
+    Thread.sleep(700L);
+    assertEquals(1, cache.filter(new Result[] {code}).length);
+  }
+
+  @Test
+  public void testNoWindow() {
+    RecentCodeCache cache = new RecentCodeCache(0L);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(1, cache.filter(new Result[] {code("code")}).length);
+    }
+    assertEquals(0L, cache.getSuppressedCount());
+  }
+
+  @Test
+  public void testLeastRecentlySeenDropped() {
+    RecentCodeCache cache = new RecentCodeCache(60000L);
+    cache.filter(new Result[] {code("oldest")});
+    cache.filter(new Result[] {code("kept")});
+    for (int i = 0; i < 1022; i++) {
+      cache.filter(new Result[] {code("code " + i)});
+    }
+    // Full; seeing this one again moves it to the back
+    assertEquals(0, cache.filter(new Result[] {code("kept")}).length);
+    cache.filter(new Result[] {code("one more")});
+    assertEquals(1, cache.filter(new Result[] {code("oldest")}).length);
+    assertEquals(0, cache.filter(new Result[] {code("kept")}).length);
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ResultPointChannel}, on its own and with one channel per producer thread drained by
+ * a single consumer, the way {@link ViewfinderView} uses them.
+ */
+public final class ResultPointChannelTest {
+
+  private static final int CAPACITY = 32;
+
+  /**
+   * Keeps what it is given, as x, y and frame id triples.
+   */
+  private static final class ListSink implements ResultPointChannel.Sink {
+    private final List<float[]> points = new ArrayList<>();
+
+    @Override
+    public void accept(float x, float y, int frameId) {
+      points.add(new float[] {x, y, frameId});
+    }
+  }
+
+  @Test
+  public void testDrainOrder() {
+    ResultPointChannel channel = new ResultPointChannel(Thread.currentThread());
+    assertSame(Thread.currentThread(), channel.getProducer());
+    ListSink sink = new ListSink();
+    assertEquals(0, channel.drain(sink));
+    for (int i = 0; i < 5; i++) {
+      assertTrue(channel.offer(i, -i, 100 + i));
+    }
+    assertEquals(5, channel.drain(sink));
+    assertEquals(5, sink.points.size());
+    for (int i = 0; i < 5; i++) {
+      float[] point = sink.points.get(i);
+      assertEquals(i, point[0], 0.0f);
+      assertEquals(-i, point[1], 0.0f);
+      assertEquals(100 + i, point[2], 0.0f);
+    }
+    // Drained points aren't handed out again
+    assertEquals(0, channel.drain(sink));
+  }
+
+  @Test
+  public void testFullRingDropsNewPoints() {
+    ResultPointChannel channel = new ResultPointChannel(Thread.currentThread());
+    for (int i = 0; i < CAPACITY; i++) {
+      assertTrue(channel.offer(i, 0.0f, 0));
+    }
+    assertFalse(channel.offer(CAPACITY, 0.0f, 0));
+    ListSink sink = new ListSink();
+    assertEquals(CAPACITY, channel.drain(sink));
+    assertEquals(CAPACITY - 1, sink.points.get(CAPACITY - 1)[0], 0.0f);
+    // Room again once drained, and the ring wraps around
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < CAPACITY - 5; i++) {
+        assertTrue(channel.offer(i, round, 0));
+      }
+      sink.points.clear();
+      assertEquals(CAPACITY - 5, channel.drain(sink));
+      for (int i = 0; i < CAPACITY - 5; i++) {
+        assertEquals(i, sink.points.get(i)[0], 0.0f);
+        assertEquals(round, sink.points.get(i)[1], 0.0f);
+      }
+    }
+  }
+
+  @Test
+  public void testProducersDrainedInOrder() throws InterruptedException {
+    final int pointsPerProducer = 20000;
+    final ResultPointChannel[] channels = new ResultPointChannel[3];
+    Thread[] producers = new Thread[channels.length];
+    for (int p = 0; p < producers.length; p++) {
+      final int producerIndex = p;
+      producers[p] = new Thread() {
+        @Override
+        public void run() {
+          ResultPointChannel channel = channels[producerIndex];
+          for (int i = 0; i < pointsPerProducer; i++) {
+            // Retry rather than drop, so that the consumer can check nothing goes missing
+            while (!channel.offer(i, producerIndex, producerIndex)) {
+              Thread.yield();
+            }
+          }
+        }
+      };
+      channels[p] = new ResultPointChannel(producers[p]);
+    }
+    for (Thread producer : producers) {
+      producer.start();
+    }
+
+    // Each producer's points must come out in the order offered, none lost or repeated
+    final int[] expected = new int[channels.length];
+    final boolean[] inOrder = {true};
+    ResultPointChannel.Sink sink = new ResultPointChannel.Sink() {
+      @Override
+      public void accept(float x, float y, int frameId) {
+        if (x != expected[frameId] || y != frameId) {
+          inOrder[0] = false;
+        }
+        expected[frameId]++;
+      }
+    };
+    long deadline = System.currentTimeMillis() + 30000L;
+    int drained = 0;
+    while (drained < channels.length * pointsPerProducer && System.currentTimeMillis() < deadline) {
+      for (ResultPointChannel channel : channels) {
+        drained += channel.drain(sink);
+      }
+      Thread.yield();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    assertTrue(inOrder[0]);
+    assertEquals(channels.length * pointsPerProducer, drained);
+    for (int count : expected) {
+      assertEquals(pointsPerProducer, count);
+    }
+  }
+
+}
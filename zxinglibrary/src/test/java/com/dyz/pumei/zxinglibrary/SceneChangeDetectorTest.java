@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SceneChangeDetector}.
+ */
+public final class SceneChangeDetectorTest {
+
+  private static final int WIDTH = 128;
+  private static final int HEIGHT = 96;
+
+  private static LuminanceSource frame(int luminance) {
+    byte[] data = new byte[WIDTH * HEIGHT];
+    Arrays.fill(data, (byte) luminance);
+    return new PlanarYUVLuminanceSource(data, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false);
+  }
+
+  @Test
+  public void testNoReference() {
+    SceneChangeDetector detector = new SceneChangeDetector();
+    LuminanceSource source = frame(100);
+    for (int i = 0; i < 20; i++) {
+      assertTrue(detector.shouldDecode(source));
+    }
+  }
+
+  @Test
+  public void testUnchangedSceneSkipped() {
+    SceneChangeDetector detector = new SceneChangeDetector();
+    detector.setReference(frame(100));
+    assertFalse(detector.shouldDecode(frame(101)));
+    assertTrue(detector.shouldDecode(frame(140)));
+    // Letting a frame through doesn't make it the reference
+    assertFalse(detector.shouldDecode(frame(100)));
+    assertTrue(detector.shouldDecode(frame(140)));
+  }
+
+  @Test
+  public void testSkipsAreCapped() {
+    SceneChangeDetector detector = new SceneChangeDetector();
+    LuminanceSource source = frame(100);
+    detector.setReference(source);
+    int skipped = 0;
+    while (!detector.shouldDecode(source)) {
+      skipped++;
+    }
+    assertTrue(skipped > 0);
+    assertTrue(detector.shouldDecode(source));
+    // A failed decode starts the count again
+    detector.setReference(source);
+    assertFalse(detector.shouldDecode(source));
+  }
+
+  @Test
+  public void testReset() {
+    SceneChangeDetector detector = new SceneChangeDetector();
+    LuminanceSource source = frame(100);
+    detector.setReference(source);
+    assertFalse(detector.shouldDecode(source));
+    detector.reset();
+    assertTrue(detector.shouldDecode(source));
+  }
+
+  @Test
+  public void testTinyFrames() {
+    SceneChangeDetector detector = new SceneChangeDetector();
+    byte[] data = new byte[8 * 8];
+    LuminanceSource tiny = new PlanarYUVLuminanceSource(data, 8, 8, 0, 0, 8, 8, false);
+    detector.setReference(tiny);
+    assertTrue(detector.shouldDecode(tiny));
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.dyz.pumei.zxinglibrary.camera.frames.SyntheticFrameRenderer;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link ScheduledFormatReader}: which formats it tries on which frames.
+ */
+public final class ScheduledFormatReaderTest {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final int FRAMES = 8;
+
+  private static byte[] frame(BarcodeFormat format, String contents) {
+    SyntheticFrameRenderer renderer = new SyntheticFrameRenderer(WIDTH, HEIGHT, 0L);
+    renderer.setBarcode(format, contents);
+    if (format == BarcodeFormat.EAN_13 || format == BarcodeFormat.CODE_128) {
+      renderer.setCodeSize(0.5f);
+    }
+    byte[] frame = renderer.newFrame();
+    renderer.render(frame);
+    return frame;
+  }
+
+  private static final byte[] QR_FRAME = frame(BarcodeFormat.QR_CODE, "QR-0123456789");
+  private static final byte[] DATA_MATRIX_FRAME = frame(BarcodeFormat.DATA_MATRIX, "DM-0123456789");
+  private static final byte[] EAN_13_FRAME = frame(BarcodeFormat.EAN_13, "5901234123457");
+  private static final byte[] CODE_128_FRAME = frame(BarcodeFormat.CODE_128, "012345");
+
+  private static ScheduledFormatReader newReader(FormatStatistics statistics, int rareFormatInterval) {
+    Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE,
+        BarcodeFormat.DATA_MATRIX, BarcodeFormat.EAN_13, BarcodeFormat.CODE_128));
+    return new ScheduledFormatReader(hints, statistics, rareFormatInterval);
+  }
+
+  /**
+   * Scanned mostly QR codes and EAN-13, with Data Matrix and Code 128 never seen.
+   */
+  private static FormatStatistics skewedStatistics() {
+    FormatStatistics statistics = new FormatStatistics();
+    Map<BarcodeFormat,Integer> history = new EnumMap<>(BarcodeFormat.class);
+    history.put(BarcodeFormat.QR_CODE, 60);
+    history.put(BarcodeFormat.EAN_13, 40);
+    statistics.addHistory(history);
+    return statistics;
+  }
+
+  private static Result decode(ScheduledFormatReader reader, byte[] frame, long deadlineNanos) {
+    PlanarYUVLuminanceSource source =
+        new PlanarYUVLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false);
+    return reader.decode(new BinaryBitmap(new HybridBinarizer(source)), deadlineNanos);
+  }
+
+  /**
+   * @return on which of {@link #FRAMES} frames in a row the barcode was found, one bit each
+   */
+  private static int foundOn(ScheduledFormatReader reader, byte[] frame) {
+    int found = 0;
+    for (int i = 0; i < FRAMES; i++) {
+      if (decode(reader, frame, Long.MAX_VALUE) != null) {
+        found |= 1 << i;
+      }
+    }
+    return found;
+  }
+
+  @Test
+  public void testEveryFormatBeforeEnoughObservations() {
+    FormatStatistics statistics = new FormatStatistics();
+    for (int i = 0; i < 4; i++) {
+      statistics.record(BarcodeFormat.QR_CODE);
+    }
+    ScheduledFormatReader reader = newReader(statistics, 4);
+    int everyFrame = (1 << FRAMES) - 1;
+    assertEquals(everyFrame, foundOn(reader, QR_FRAME));
+    assertEquals(everyFrame, foundOn(reader, DATA_MATRIX_FRAME));
+    assertEquals(everyFrame, foundOn(reader, EAN_13_FRAME));
+    assertEquals(everyFrame, foundOn(reader, CODE_128_FRAME));
+  }
+
+  @Test
+  public void testRareFormatsTimeSliced() {
+    ScheduledFormatReader reader = newReader(skewedStatistics(), 4);
+    int everyFrame = (1 << FRAMES) - 1;
+    assertEquals(everyFrame, foundOn(reader, QR_FRAME));
+    assertEquals(everyFrame, foundOn(reader, EAN_13_FRAME));
+    // Each rare format once in every four frames, staggered
+    int dataMatrixFrames = foundOn(reader, DATA_MATRIX_FRAME);
+    int code128Frames = foundOn(reader, CODE_128_FRAME);
+    assertEquals(2, Integer.bitCount(dataMatrixFrames));
+    assertEquals(2, Integer.bitCount(code128Frames));
+    assertEquals((dataMatrixFrames & 0xF) * 0x11, dataMatrixFrames);
+    assertEquals((code128Frames & 0xF) * 0x11, code128Frames);
+  }
+
+  @Test
+  public void testIntervalOfOneTriesEveryFormat() {
+    ScheduledFormatReader reader = newReader(skewedStatistics(), 1);
+    int everyFrame = (1 << FRAMES) - 1;
+    assertEquals(everyFrame, foundOn(reader, DATA_MATRIX_FRAME));
+    assertEquals(everyFrame, foundOn(reader, CODE_128_FRAME));
+  }
+
+  @Test
+  public void testScheduleFollowsStatistics() {
+    FormatStatistics statistics = skewedStatistics();
+    ScheduledFormatReader reader = newReader(statistics, 4);
+    assertEquals(2, Integer.bitCount(foundOn(reader, DATA_MATRIX_FRAME)));
+    // Data Matrix suddenly gets scanned a lot
+    for (int i = 0; i < 25; i++) {
+      statistics.record(BarcodeFormat.DATA_MATRIX);
+    }
+    assertEquals((1 << FRAMES) - 1, foundOn(reader, DATA_MATRIX_FRAME));
+  }
+
+  @Test
+  public void testDeadline() {
+    ScheduledFormatReader reader = newReader(skewedStatistics(), 1);
+    // Past the deadline only the most scanned format is tried
+    Result result = decode(reader, QR_FRAME, Long.MIN_VALUE);
+    assertNotNull(result);
+    assertEquals(BarcodeFormat.QR_CODE, result.getBarcodeFormat());
+    assertNull(decode(reader, EAN_13_FRAME, Long.MIN_VALUE));
+    assertNull(decode(reader, DATA_MATRIX_FRAME, Long.MIN_VALUE));
+    assertNotNull(decode(reader, EAN_13_FRAME, Long.MAX_VALUE));
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SharpnessFilter}.
+ */
+public final class SharpnessFilterTest {
+
+  private static final int WIDTH = 96;
+  private static final int HEIGHT = 64;
+
+  /**
+   * @param blurRadius radius of the box blur applied to a checkerboard of 3-pixel squares
+   */
+  private static LuminanceSource checkerboard(int blurRadius) {
+    int[] sharp = new int[WIDTH * HEIGHT];
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        sharp[y * WIDTH + x] = (x / 3 + y / 3) % 2 == 0 ? 30 : 230;
+      }
+    }
+    byte[] data = new byte[WIDTH * HEIGHT];
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        int sum = 0;
+        int count = 0;
+        for (int dy = -blurRadius; dy <= blurRadius; dy++) {
+          for (int dx = -blurRadius; dx <= blurRadius; dx++) {
+            int sx = Math.min(WIDTH - 1, Math.max(0, x + dx));
+            int sy = Math.min(HEIGHT - 1, Math.max(0, y + dy));
+            sum += sharp[sy * WIDTH + sx];
+            count++;
+          }
+        }
+        data[y * WIDTH + x] = (byte) (sum / count);
+      }
+    }
+    return new PlanarYUVLuminanceSource(data, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false);
+  }
+
+  @Test
+  public void testScore() {
+    assertEquals(0.0f, SharpnessFilter.score(new PlanarYUVLuminanceSource(
+        new byte[WIDTH * HEIGHT], WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false)), 0.0f);
+    float sharp = SharpnessFilter.score(checkerboard(0));
+    float blurred = SharpnessFilter.score(checkerboard(1));
+    float veryBlurred = SharpnessFilter.score(checkerboard(3));
+    assertTrue(sharp > blurred);
+    assertTrue(blurred > veryBlurred);
+    // Too small to sample
+    assertEquals(0.0f, SharpnessFilter.score(new PlanarYUVLuminanceSource(
+        new byte[8 * 8], 8, 8, 0, 0, 8, 8, false)), 0.0f);
+  }
+
+  @Test
+  public void testWarmUp() {
+    SharpnessFilter filter = new SharpnessFilter();
+    assertTrue(filter.accept(1000.0f));
+    // Nothing counts as sharp until the filter has seen a few frames
+    assertFalse(filter.isSharp(1000.0f));
+    for (int i = 0; i < 4; i++) {
+      // Accepted however blurry, likewise
+      assertTrue(filter.accept(1.0f));
+    }
+    assertFalse(filter.accept(1.0f));
+    assertEquals(1L, filter.getRejectedFrameCount());
+    assertEquals(1.0f, filter.getLastScore(), 0.0f);
+  }
+
+  @Test
+  public void testThresholdDecays() {
+    SharpnessFilter filter = new SharpnessFilter();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(filter.accept(100.0f));
+    }
+    assertTrue(filter.isSharp(100.0f));
+    assertFalse(filter.isSharp(50.0f));
+    assertEquals(35.0f, filter.getThreshold(), 0.01f);
+
+    // A scene that never gets as sharp again is rejected only until the peak has decayed
+    int rejected = 0;
+    while (!filter.accept(20.0f)) {
+      rejected++;
+    }
+    assertEquals(10, rejected);
+    assertEquals(rejected, filter.getRejectedFrameCount());
+    assertTrue(filter.getThreshold() <= 20.0f);
+
+    // A sharper frame raises the peak again straight away
+    assertTrue(filter.accept(200.0f));
+    assertFalse(filter.accept(20.0f));
+  }
+
+}
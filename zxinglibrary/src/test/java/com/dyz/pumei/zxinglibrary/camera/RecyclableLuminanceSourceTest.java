@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera;
+
+import com.dyz.pumei.zxinglibrary.metrics.ScanMetrics;
+import com.google.zxing.Binarizer;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link RecyclableLuminanceSource}.
+ */
+public final class RecyclableLuminanceSourceTest {
+
+  private static final int DATA_WIDTH = 64;
+  private static final int DATA_HEIGHT = 48;
+
+  @Test
+  public void testSameSizeFramesAllocateOnce() {
+    Random random = new Random(0xDEADBEEF);
+    long instancesBefore = RecyclableLuminanceSource.getInstanceCount();
+    long allocatedBefore = allocatedSources();
+    RecyclableLuminanceSource first = null;
+    RecyclableLuminanceSource source = null;
+    for (int frame = 0; frame < 10; frame++) {
+      byte[] data = randomFrame(random);
+      source = RecyclableLuminanceSource.recycle(source, data, DATA_WIDTH, DATA_HEIGHT,
+                                                 8 + frame, 4, 32, 24);
+      if (first == null) {
+        first = source;
+      }
+      assertSame(first, source);
+      assertEquals(1, RecyclableLuminanceSource.getInstanceCount() - instancesBefore);
+      assertEquals(1, allocatedSources() - allocatedBefore);
+    }
+  }
+
+  @Test
+  public void testNewSizeAllocates() {
+    Random random = new Random(0xCAFEBABE);
+    RecyclableLuminanceSource source = RecyclableLuminanceSource.recycle(
+        null, randomFrame(random), DATA_WIDTH, DATA_HEIGHT, 0, 0, 32, 24);
+    long before = RecyclableLuminanceSource.getInstanceCount();
+    RecyclableLuminanceSource resized = RecyclableLuminanceSource.recycle(
+        source, randomFrame(random), DATA_WIDTH, DATA_HEIGHT, 0, 0, 40, 24);
+    assertNotSame(source, resized);
+    assertEquals(1, RecyclableLuminanceSource.getInstanceCount() - before);
+  }
+
+  @Test
+  public void testMatrixFollowsFrame() {
+    Random random = new Random(0xFEEDFACE);
+    RecyclableLuminanceSource source = null;
+    for (int frame = 0; frame < 3; frame++) {
+      byte[] data = randomFrame(random);
+      int left = 3 * frame;
+      int top = 5;
+      source = RecyclableLuminanceSource.recycle(source, data, DATA_WIDTH, DATA_HEIGHT,
+                                                 left, top, 20, 10);
+      byte[] expected = new byte[20 * 10];
+      for (int y = 0; y < 10; y++) {
+        System.arraycopy(data, (top + y) * DATA_WIDTH + left, expected, y * 20, 20);
+      }
+      assertArrayEquals(expected, source.getMatrix());
+    }
+  }
+
+  @Test
+  public void testBinarizesLikePlanarSource() throws NotFoundException {
+    Random random = new Random(0xB1A5ED);
+    RecyclableLuminanceSource source = null;
+    // Frames of different sizes, and a crop under 40 pixels high that falls back to the global
+    // histogram for the matrix
+    int[][] frames = {{DATA_WIDTH, DATA_HEIGHT, 48, 40}, {2 * DATA_WIDTH, DATA_HEIGHT + 16, 48, 40},
+                      {48, 40, 48, 40}, {DATA_WIDTH, DATA_HEIGHT, 48, 32}};
+    for (int[] frame : frames) {
+      int dataWidth = frame[0];
+      int dataHeight = frame[1];
+      byte[] data = stripedFrame(random, dataWidth, dataHeight);
+      int left = dataWidth - frame[2];
+      int top = dataHeight - frame[3];
+      source = RecyclableLuminanceSource.recycle(source, data, dataWidth, dataHeight,
+                                                 left, top, frame[2], frame[3]);
+      PlanarYUVLuminanceSource reference = new PlanarYUVLuminanceSource(
+          data, dataWidth, dataHeight, left, top, frame[2], frame[3], false);
+      Binarizer expected = new HybridBinarizer(reference);
+      Binarizer actual = new HybridBinarizer(source);
+      assertEquals(expected.getBlackMatrix(), actual.getBlackMatrix());
+      for (int y = 0; y < frame[3]; y += 7) {
+        assertEquals("row " + y, expected.getBlackRow(y, null), actual.getBlackRow(y, new BitArray(1)));
+      }
+    }
+  }
+
+  private static long allocatedSources() {
+    return ScanMetrics.getInstance().snapshot().getCounter(ScanMetrics.LUMINANCE_SOURCES_ALLOCATED);
+  }
+
+  private static byte[] randomFrame(Random random) {
+    byte[] data = new byte[DATA_WIDTH * DATA_HEIGHT * 3 / 2];
+    random.nextBytes(data);
+    return data;
+  }
+
+  /**
+   * @return an NV21-sized frame whose luminance is vertical stripes with a little noise, followed by
+   *  random chroma
+   */
+  private static byte[] stripedFrame(Random random, int dataWidth, int dataHeight) {
+    byte[] data = new byte[dataWidth * dataHeight * 3 / 2];
+    random.nextBytes(data);
+    for (int y = 0; y < dataHeight; y++) {
+      for (int x = 0; x < dataWidth; x++) {
+        int shade = (x / 3) % 2 == 0 ? 30 : 200;
+        data[y * dataWidth + x] = (byte) (shade + random.nextInt(16));
+      }
+    }
+    return data;
+  }
+
+}
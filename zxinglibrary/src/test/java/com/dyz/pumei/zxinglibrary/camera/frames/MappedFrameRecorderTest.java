@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.camera.frames;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link MappedFrameRecorder} and reading its recordings back with
+ * {@link FrameRecording.Reader}.
+ */
+public final class MappedFrameRecorderTest {
+
+  private static final int WIDTH = 32;
+  private static final int HEIGHT = 24;
+  private static final int FRAME_BYTES = WIDTH * HEIGHT;
+  private static final int RECORD_BYTES = FrameRecording.RECORD_HEADER_SIZE + FRAME_BYTES;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] frame(int seed) {
+    // A few spare bytes past the luminance plane, as a preview frame has, which aren't recorded
+    byte[] data = new byte[FRAME_BYTES + 16];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31 + seed);
+    }
+    return data;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    File file = folder.newFile();
+    int[] crop = {4, 2, 28, 20};
+    MappedFrameRecorder recorder = new MappedFrameRecorder(file, 1L << 20);
+    assertTrue(recorder.record(frame(1), WIDTH, HEIGHT, 1000L, crop, FrameRecording.OUTCOME_FOUND));
+    assertTrue(recorder.record(frame(2), WIDTH, HEIGHT, 2000L, null, FrameRecording.OUTCOME_SKIPPED));
+    assertEquals(2L, recorder.getRecordedFrameCount());
+    long used = recorder.getBytesUsed();
+    assertEquals(FrameRecording.HEADER_SIZE + 2L * RECORD_BYTES, used);
+    recorder.close();
+    assertFalse(recorder.record(frame(3), WIDTH, HEIGHT, 3000L, null, FrameRecording.OUTCOME_FOUND));
+
+    // Cut down to what was used, plus the end marker
+    assertEquals(used + 4, file.length());
+    try (RandomAccessFile raw = new RandomAccessFile(file, "r")) {
+      raw.seek(used);
+      assertEquals(0, raw.readInt());
+    }
+
+    try (FrameRecording.Reader reader = new FrameRecording.Reader(file)) {
+      assertEquals(WIDTH, reader.getWidth());
+      assertEquals(HEIGHT, reader.getHeight());
+      FrameRecording.Frame first = reader.next();
+      assertNotNull(first);
+      assertEquals(1000L, first.getTimestampNanos());
+      assertEquals(WIDTH, first.getDataWidth());
+      assertEquals(HEIGHT, first.getDataHeight());
+      assertArrayEquals(crop, first.getCrop());
+      assertEquals(FrameRecording.OUTCOME_FOUND, first.getOutcome());
+      byte[] expected = new byte[FRAME_BYTES];
+      System.arraycopy(frame(1), 0, expected, 0, FRAME_BYTES);
+      assertArrayEquals(expected, toArray(first.getData()));
+
+      FrameRecording.Frame second = reader.next();
+      assertNotNull(second);
+      assertEquals(2000L, second.getTimestampNanos());
+      assertNull(second.getCrop());
+      assertEquals(FrameRecording.OUTCOME_SKIPPED, second.getOutcome());
+      assertNull(reader.next());
+
+      reader.rewind();
+      assertEquals(1000L, reader.next().getTimestampNanos());
+    }
+  }
+
+  @Test
+  public void testFailedFramesOnlyPastHalfBudget() throws IOException {
+    File file = folder.newFile();
+    // Room for the header, ten records and the end marker
+    long budget = FrameRecording.HEADER_SIZE + 10L * RECORD_BYTES + 4;
+    int recorded = 0;
+    try (MappedFrameRecorder recorder = new MappedFrameRecorder(file, budget)) {
+      while (recorder.record(frame(recorded), WIDTH, HEIGHT, recorded, null,
+                             FrameRecording.OUTCOME_FOUND)) {
+        recorded++;
+      }
+      // Until the records pass half the budget
+      assertEquals(5, recorded);
+      assertEquals(1L, recorder.getSkippedFrameCount());
+      assertFalse(recorder.record(frame(0), WIDTH, HEIGHT, 0L, null, FrameRecording.OUTCOME_SKIPPED));
+
+      // Failed frames are still kept, until the budget runs out
+      int failed = 0;
+      while (recorder.record(frame(failed), WIDTH, HEIGHT, 100L + failed, null,
+                             FrameRecording.OUTCOME_NOT_FOUND)) {
+        failed++;
+      }
+      assertEquals(5, failed);
+      assertEquals(10L, recorder.getRecordedFrameCount());
+      assertEquals(budget - 4, recorder.getBytesUsed());
+    }
+
+    try (FrameRecording.Reader reader = new FrameRecording.Reader(file)) {
+      int frames = 0;
+      FrameRecording.Frame frame;
+      while ((frame = reader.next()) != null) {
+        assertEquals(frames < 5 ? FrameRecording.OUTCOME_FOUND : FrameRecording.OUTCOME_NOT_FOUND,
+                     frame.getOutcome());
+        frames++;
+      }
+      assertEquals(10, frames);
+    }
+  }
+
+  @Test
+  public void testRecordingCutShort() throws IOException {
+    File file = folder.newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      FrameRecording.Writer writer = new FrameRecording.Writer(out, WIDTH, HEIGHT);
+      writer.write(frame(1), WIDTH, HEIGHT, 1L, null, FrameRecording.OUTCOME_UNKNOWN);
+      writer.write(frame(2), WIDTH, HEIGHT, 2L, null, FrameRecording.OUTCOME_UNKNOWN);
+      // No end marker, as when the process dies while recording
+    }
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      // The second frame is only partly there
+      raw.setLength(raw.length() - FRAME_BYTES / 2);
+    }
+    try (FrameRecording.Reader reader = new FrameRecording.Reader(file)) {
+      assertEquals(1L, reader.next().getTimestampNanos());
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testNotARecording() throws IOException {
+    File file = folder.newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[FrameRecording.HEADER_SIZE * 2]);
+    }
+    try {
+      new FrameRecording.Reader(file).close();
+      fail("Read a file that isn't a recording");
+    } catch (IOException ioe) {
+      // good
+    }
+  }
+
+}
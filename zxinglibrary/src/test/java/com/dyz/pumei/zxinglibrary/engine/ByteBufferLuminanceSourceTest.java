@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BitMatrix;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ByteBufferLuminanceSource}'s crop, stride and rotation arithmetic against a plain
+ * copy of the same pixels, and {@link ScanEngine} decoding strided planes through it.
+ */
+public final class ByteBufferLuminanceSourceTest {
+
+  private static final int DATA_WIDTH = 13;
+  private static final int DATA_HEIGHT = 9;
+  private static final int ROW_STRIDE = 16;
+
+  private static final String QR_CONTENTS = "http://www.example.com/scan-engine";
+  private static final String CODE_128_CONTENTS = "PACKING-LINE-0042";
+
+  private final ScanEngine engine = new ScanEngine(null, null, null);
+
+  private static byte pixel(int x, int y) {
+    return (byte) (y * DATA_WIDTH + x);
+  }
+
+  private static ByteBuffer plane() {
+    ByteBuffer plane = ByteBuffer.allocate(ROW_STRIDE * DATA_HEIGHT);
+    for (int y = 0; y < DATA_HEIGHT; y++) {
+      for (int x = 0; x < ROW_STRIDE; x++) {
+        // Padding past the width reads as -1, which no real pixel here is
+        plane.put(y * ROW_STRIDE + x, x < DATA_WIDTH ? pixel(x, y) : (byte) -1);
+      }
+    }
+    return plane;
+  }
+
+  private static byte[] expected(int left, int top, int width, int height) {
+    byte[] expected = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        expected[y * width + x] = pixel(left + x, top + y);
+      }
+    }
+    return expected;
+  }
+
+  private static void assertRows(byte[] expected, LuminanceSource source) {
+    int width = source.getWidth();
+    for (int y = 0; y < source.getHeight(); y++) {
+      byte[] row = source.getRow(y, null);
+      for (int x = 0; x < width; x++) {
+        assertEquals("(" + x + ", " + y + ')', expected[y * width + x], row[x]);
+      }
+    }
+  }
+
+  @Test
+  public void testWholePlane() {
+    LuminanceSource source = new ByteBufferLuminanceSource(plane(), ROW_STRIDE, DATA_WIDTH, DATA_HEIGHT);
+    byte[] expected = expected(0, 0, DATA_WIDTH, DATA_HEIGHT);
+    assertRows(expected, source);
+    assertArrayEquals(expected, source.getMatrix());
+  }
+
+  @Test
+  public void testCrop() {
+    LuminanceSource source =
+        new ByteBufferLuminanceSource(plane(), ROW_STRIDE, DATA_WIDTH, DATA_HEIGHT, 3, 2, 7, 5);
+    assertEquals(7, source.getWidth());
+    assertEquals(5, source.getHeight());
+    byte[] expected = expected(3, 2, 7, 5);
+    assertRows(expected, source);
+    assertArrayEquals(expected, source.getMatrix());
+
+    LuminanceSource cropped = source.crop(1, 1, 4, 3);
+    byte[] expectedCrop = expected(4, 3, 4, 3);
+    assertRows(expectedCrop, cropped);
+    assertArrayEquals(expectedCrop, cropped.getMatrix());
+  }
+
+  @Test
+  public void testRotate() {
+    LuminanceSource source =
+        new ByteBufferLuminanceSource(plane(), ROW_STRIDE, DATA_WIDTH, DATA_HEIGHT, 3, 2, 7, 5);
+    byte[] unrotated = expected(3, 2, 7, 5);
+    LuminanceSource rotated = source;
+    byte[] expected = unrotated;
+    int width = 7;
+    int height = 5;
+    for (int turn = 0; turn < 4; turn++) {
+      rotated = rotated.rotateCounterClockwise();
+      expected = rotateCounterClockwise(expected, width, height);
+      int temp = width;
+      width = height;
+      height = temp;
+      assertEquals(width, rotated.getWidth());
+      assertEquals(height, rotated.getHeight());
+      assertRows(expected, rotated);
+      assertArrayEquals(expected, rotated.getMatrix());
+    }
+    assertArrayEquals(unrotated, expected);
+  }
+
+  @Test
+  public void testCropOfRotation() {
+    LuminanceSource source = new ByteBufferLuminanceSource(plane(), ROW_STRIDE, DATA_WIDTH, DATA_HEIGHT);
+    byte[] rotated = rotateCounterClockwise(expected(0, 0, DATA_WIDTH, DATA_HEIGHT), DATA_WIDTH, DATA_HEIGHT);
+    LuminanceSource cropped = source.rotateCounterClockwise().crop(2, 3, 5, 6);
+    byte[] expected = new byte[5 * 6];
+    for (int y = 0; y < 6; y++) {
+      System.arraycopy(rotated, (y + 3) * DATA_HEIGHT + 2, expected, y * 5, 5);
+    }
+    assertRows(expected, cropped);
+    assertArrayEquals(expected, cropped.getMatrix());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCropOutsidePlane() {
+    new ByteBufferLuminanceSource(plane(), ROW_STRIDE, DATA_WIDTH, DATA_HEIGHT, 8, 0, 6, 5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testStrideLessThanWidth() {
+    new ByteBufferLuminanceSource(plane(), DATA_WIDTH - 1, DATA_WIDTH, DATA_HEIGHT);
+  }
+
+  @Test
+  public void testDecodeByteBufferWithRowStride() {
+    BitMatrix qrCode = TestFrames.encode(QR_CONTENTS, BarcodeFormat.QR_CODE, 200, 200);
+    int rowStride = 512;
+    byte[] frame = TestFrames.render(qrCode, 480, 320, rowStride, 150, 60, 0);
+    ByteBuffer plane = ByteBuffer.allocateDirect(frame.length);
+    plane.put(frame);
+    // Position and limit don't matter
+    plane.position(17);
+    ScanResult result = engine.decode(plane, rowStride, 480, 320, 140, 50, 220, 220);
+    assertTrue(result.isFound());
+    assertEquals(QR_CONTENTS, result.getResult().getText());
+    assertEquals(17, plane.position());
+  }
+
+  @Test
+  public void testDecode1DByteBufferWithRowStride() {
+    BitMatrix code128 = TestFrames.encode(CODE_128_CONTENTS, BarcodeFormat.CODE_128, 300, 80);
+    int rowStride = 400;
+    byte[] frame = TestFrames.render(code128, 360, 120, rowStride, 30, 20, 0);
+    ScanResult result = engine.decode(ByteBuffer.wrap(frame), rowStride, 360, 120, 0, 0, 360, 120);
+    assertTrue(result.isFound());
+    assertEquals(CODE_128_CONTENTS, result.getResult().getText());
+    assertEquals(BarcodeFormat.CODE_128, result.getResult().getBarcodeFormat());
+  }
+
+  // The rotated image's (x, y) is the original's (width - 1 - y, x)
+  private static byte[] rotateCounterClockwise(byte[] pixels, int width, int height) {
+    byte[] rotated = new byte[pixels.length];
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < height; x++) {
+        rotated[y * height + x] = pixels[x * width + (width - 1 - y)];
+      }
+    }
+    return rotated;
+  }
+
+}
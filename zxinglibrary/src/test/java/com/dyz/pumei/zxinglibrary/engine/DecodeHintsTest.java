@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link DecodeHints}.
+ */
+public final class DecodeHintsTest {
+
+  @Test
+  public void testDefaults() {
+    Map<DecodeHintType,Object> hints = DecodeHints.build(null, null, null);
+    assertEquals(Collections.singleton(DecodeHintType.POSSIBLE_FORMATS), hints.keySet());
+    assertEquals(DecodeFormats.DEFAULT_FORMATS, hints.get(DecodeHintType.POSSIBLE_FORMATS));
+    assertEquals(EnumSet.of(BarcodeFormat.UPC_A,
+                            BarcodeFormat.UPC_E,
+                            BarcodeFormat.EAN_13,
+                            BarcodeFormat.EAN_8,
+                            BarcodeFormat.RSS_14,
+                            BarcodeFormat.RSS_EXPANDED,
+                            BarcodeFormat.CODE_39,
+                            BarcodeFormat.CODE_93,
+                            BarcodeFormat.CODE_128,
+                            BarcodeFormat.ITF,
+                            BarcodeFormat.CODABAR,
+                            BarcodeFormat.QR_CODE,
+                            BarcodeFormat.DATA_MATRIX),
+                 DecodeFormats.DEFAULT_FORMATS);
+
+    hints = DecodeHints.build(EnumSet.noneOf(BarcodeFormat.class), null, null);
+    assertEquals(DecodeFormats.DEFAULT_FORMATS, hints.get(DecodeHintType.POSSIBLE_FORMATS));
+  }
+
+  @Test
+  public void testBuild() {
+    Map<DecodeHintType,Object> baseHints = new EnumMap<>(DecodeHintType.class);
+    baseHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+    Map<DecodeHintType,Object> hints =
+        DecodeHints.build(DecodeFormats.QR_CODE_FORMATS, baseHints, "ISO-8859-1");
+    assertEquals(DecodeFormats.QR_CODE_FORMATS, hints.get(DecodeHintType.POSSIBLE_FORMATS));
+    assertEquals("ISO-8859-1", hints.get(DecodeHintType.CHARACTER_SET));
+    assertEquals(Boolean.TRUE, hints.get(DecodeHintType.TRY_HARDER));
+    // A copy, which the caller may add to
+    hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+    assertFalse(baseHints.containsKey(DecodeHintType.PURE_BARCODE));
+  }
+
+  @Test
+  public void testParse() {
+    Map<String,String> parameters = new HashMap<>();
+    parameters.put("TRY_HARDER", "");
+    parameters.put("PURE_BARCODE", "false");
+    parameters.put("ASSUME_GS1", "yes");
+    parameters.put("ALLOWED_LENGTHS", "6,8,10,");
+    parameters.put("ALLOWED_EAN_EXTENSIONS", "2,x");
+    parameters.put("CHARACTER_SET", "UTF-8");
+    parameters.put("POSSIBLE_FORMATS", "QR_CODE");
+    Map<DecodeHintType,Object> hints = DecodeHints.parse(parameters);
+    assertEquals(Boolean.TRUE, hints.get(DecodeHintType.TRY_HARDER));
+    // Flags are set whatever the value says
+    assertEquals(Boolean.TRUE, hints.get(DecodeHintType.PURE_BARCODE));
+    assertEquals(Boolean.TRUE, hints.get(DecodeHintType.ASSUME_GS1));
+    assertArrayEquals(new int[] {6, 8, 10}, (int[]) hints.get(DecodeHintType.ALLOWED_LENGTHS));
+    // Not a number, so dropped, as are hints given another way
+    assertFalse(hints.containsKey(DecodeHintType.ALLOWED_EAN_EXTENSIONS));
+    assertFalse(hints.containsKey(DecodeHintType.CHARACTER_SET));
+    assertFalse(hints.containsKey(DecodeHintType.POSSIBLE_FORMATS));
+    assertTrue(DecodeHints.parse(Collections.<String,String>emptyMap()).isEmpty());
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ScanEngine}.
+ */
+public final class ScanEngineTest {
+
+  private static final String QR_CONTENTS = "http://www.example.com/scan-engine";
+  private static final String CODE_128_CONTENTS = "PACKING-LINE-0042";
+
+  private final ScanEngine engine = new ScanEngine(null, null, null);
+
+  @Test
+  public void testDecodeWholeFrame() {
+    BitMatrix qrCode = TestFrames.encode(QR_CONTENTS, BarcodeFormat.QR_CODE, 200, 200);
+    byte[] frame = TestFrames.render(qrCode, 200, 200, 200, 0, 0, 0);
+    ScanResult result = engine.decode(frame, 200, 200);
+    assertTrue(result.isFound());
+    assertEquals(QR_CONTENTS, result.getResult().getText());
+    assertEquals(BarcodeFormat.QR_CODE, result.getResult().getBarcodeFormat());
+    assertTrue(result.getDecodeNanos() > 0);
+  }
+
+  @Test
+  public void testDecodeCropOfYuvFrame() {
+    BitMatrix qrCode = TestFrames.encode(QR_CONTENTS, BarcodeFormat.QR_CODE, 200, 200);
+    // Chroma after the luminance plane must be ignored
+    byte[] frame = TestFrames.render(qrCode, 480, 320, 480, 150, 60, 480 * 320 / 2);
+    ScanResult result = engine.decode(frame, 480, 320, 140, 50, 220, 220);
+    assertTrue(result.isFound());
+    assertEquals(QR_CONTENTS, result.getResult().getText());
+  }
+
+  @Test
+  public void testDecodeNothing() {
+    BitMatrix qrCode = TestFrames.encode(QR_CONTENTS, BarcodeFormat.QR_CODE, 200, 200);
+    byte[] frame = TestFrames.render(qrCode, 480, 320, 480, 250, 60, 0);
+    // The crop misses the barcode
+    ScanResult result = engine.decode(frame, 480, 320, 0, 0, 240, 320);
+    assertFalse(result.isFound());
+    assertNull(result.getResult());
+  }
+
+  @Test
+  public void testOnlyRequestedFormats() {
+    ScanEngine qrOnly = new ScanEngine(DecodeFormats.QR_CODE_FORMATS, null, null);
+    BitMatrix code128 = TestFrames.encode(CODE_128_CONTENTS, BarcodeFormat.CODE_128, 300, 80);
+    byte[] frame = TestFrames.render(code128, 360, 120, 360, 30, 20, 0);
+    assertFalse(qrOnly.decode(frame, 360, 120).isFound());
+    assertTrue(engine.decode(frame, 360, 120).isFound());
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Greyscale frames with a barcode drawn into them, for the tests.
+ */
+final class TestFrames {
+
+  static final byte WHITE = (byte) 0xFF;
+  static final byte BLACK = 0;
+
+  private TestFrames() {}
+
+  static BitMatrix encode(String contents, BarcodeFormat format, int width, int height) {
+    try {
+      return new MultiFormatWriter().encode(contents, format, width, height);
+    } catch (WriterException we) {
+      throw new IllegalStateException(we);
+    }
+  }
+
+  /**
+   * @return a white frame of {@code rowStride * dataHeight} bytes, plus {@code trailing} bytes of
+   *  noise such as an NV21 frame's chroma, with the barcode's top left corner at (left, top); the
+   *  padding at the end of each row is black, so that reading it by mistake spoils the barcode
+   */
+  static byte[] render(BitMatrix barcode, int dataWidth, int dataHeight, int rowStride,
+                       int left, int top, int trailing) {
+    byte[] frame = new byte[rowStride * dataHeight + trailing];
+    for (int y = 0; y < dataHeight; y++) {
+      Arrays.fill(frame, y * rowStride, y * rowStride + dataWidth, WHITE);
+    }
+    for (int y = 0; y < barcode.getHeight(); y++) {
+      for (int x = 0; x < barcode.getWidth(); x++) {
+        if (barcode.get(x, y)) {
+          frame[(top + y) * rowStride + left + x] = BLACK;
+        }
+      }
+    }
+    for (int i = rowStride * dataHeight; i < frame.length; i++) {
+      frame[i] = (byte) (i * 31);
+    }
+    return frame;
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dyz.pumei.zxinglibrary.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link LatencyHistogram}.
+ */
+public final class LatencyHistogramTest {
+
+  @Test
+  public void testBucketBoundaries() {
+    for (long micros = 0L; micros < 4L; micros++) {
+      assertEquals(micros, LatencyHistogram.bucketOf(micros));
+    }
+    assertEquals(4, LatencyHistogram.bucketOf(4L));
+    assertEquals(7, LatencyHistogram.bucketOf(7L));
+    assertEquals(8, LatencyHistogram.bucketOf(8L));
+    assertEquals(8, LatencyHistogram.bucketOf(9L));
+    assertEquals(9, LatencyHistogram.bucketOf(10L));
+    assertEquals(5L, LatencyHistogram.upperBoundOf(4));
+    assertEquals(10L, LatencyHistogram.upperBoundOf(8));
+    assertEquals(12L, LatencyHistogram.upperBoundOf(9));
+
+    // Every value falls between its bucket's bounds, and buckets are never more than 25% wide
+    int previous = 0;
+    for (long micros = 1L; micros < 10000000L; micros += 1 + micros / 97) {
+      int bucket = LatencyHistogram.bucketOf(micros);
+      assertTrue(bucket >= previous);
+      previous = bucket;
+      long upper = LatencyHistogram.upperBoundOf(bucket);
+      long lower = bucket == 0 ? 0L : LatencyHistogram.upperBoundOf(bucket - 1);
+      assertTrue(micros + " in [" + lower + ", " + upper + ")", lower <= micros && micros < upper);
+      assertTrue(upper - lower <= Math.max(1L, lower / 4));
+    }
+  }
+
+  @Test
+  public void testLastBucket() {
+    int last = LatencyHistogram.bucketOf(TimeUnit.MINUTES.toMicros(4L));
+    assertEquals(last, LatencyHistogram.bucketOf(TimeUnit.DAYS.toMicros(1L)));
+    assertEquals(last, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    assertTrue(last > LatencyHistogram.bucketOf(TimeUnit.MINUTES.toMicros(3L)));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    LatencyHistogram.Snapshot empty = histogram.snapshot();
+    assertEquals(0L, empty.getCount());
+    assertEquals(0L, empty.getMeanMicros());
+    assertEquals(0L, empty.getPercentileMicros(0.5));
+
+    for (int millis = 1; millis <= 100; millis++) {
+      histogram.recordMillis(millis);
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals("test", snapshot.getName());
+    assertEquals(100L, snapshot.getCount());
+    assertEquals(50500L, snapshot.getMeanMicros());
+    assertEquals(100000L, snapshot.getMaxMicros());
+    assertBetween(50000L, 62500L, snapshot.getPercentileMicros(0.5));
+    assertBetween(90000L, 100000L, snapshot.getPercentileMicros(0.9));
+    // Never above the largest value recorded
+    assertEquals(100000L, snapshot.getPercentileMicros(0.99));
+    assertEquals(100000L, snapshot.getPercentileMicros(1.0));
+    assertBetween(1000L, 1250L, snapshot.getPercentileMicros(0.0));
+
+    // Later values don't change a snapshot
+    histogram.recordMillis(1000L);
+    assertEquals(100L, snapshot.getCount());
+    assertEquals(101L, histogram.snapshot().getCount());
+  }
+
+  @Test
+  public void testSmallAndNegativeValues() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.recordNanos(-5000L);
+    histogram.recordNanos(500L);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(2L, snapshot.getCount());
+    assertEquals(0L, snapshot.getMaxMicros());
+    // Under a microsecond, but still reported as taking some time
+    assertEquals(1L, snapshot.getPercentileMicros(1.0));
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.recordMillis(5L);
+    histogram.reset();
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(0L, snapshot.getCount());
+    assertEquals(0L, snapshot.getMaxMicros());
+    assertEquals(0L, snapshot.getPercentileMicros(0.5));
+  }
+
+  @Test
+  public void testConcurrentRecording() throws InterruptedException {
+    final LatencyHistogram histogram = new LatencyHistogram("test");
+    final int perThread = 100000;
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final long micros = 10L * (i + 1);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < perThread; j++) {
+            histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(threads.length * (long) perThread, snapshot.getCount());
+    assertEquals(25L, snapshot.getMeanMicros());
+    assertEquals(40L, snapshot.getMaxMicros());
+  }
+
+  private static void assertBetween(long min, long max, long value) {
+    assertTrue(value + " not in [" + min + ", " + max + "]", min <= value && value <= max);
+  }
+
+}